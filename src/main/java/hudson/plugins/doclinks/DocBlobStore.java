@@ -0,0 +1,231 @@
+package hudson.plugins.doclinks;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+
+/**
+ * Content-addressed store of published document files shared among jobs and builds.
+ *
+ * Each file is stored once by the SHA-256 digest of its content,
+ * and published documents are replaced with hard links to the stored files.
+ * Documents are still served as plain directories,
+ * and disk usage and inodes scale with unique contents.
+ *
+ * Stored files no longer linked from any document are removed by {@link Collector}.
+ * Files are kept as copies when hard links are not available (e.g. the store is on another file system).
+ */
+public class DocBlobStore {
+
+    /**
+     * Whether to deduplicate published documents. Disabled by default.
+     */
+    public static final boolean ENABLED = SystemProperties.getBoolean(DocBlobStore.class.getName() + ".enabled");
+
+    private static DocBlobStore instance;
+
+    private final File root;
+
+    public DocBlobStore(final File root) {
+        this.root = root;
+    }
+
+    /**
+     * @return the store in $JENKINS_HOME/doclinks-blobs.
+     */
+    public static synchronized DocBlobStore get() {
+        if (instance == null) {
+            instance = new DocBlobStore(new File(Jenkins.get().getRootDir(), "doclinks-blobs"));
+        }
+        return instance;
+    }
+
+    public File getRoot() {
+        return root;
+    }
+
+    /**
+     * Replaces files in a directory with hard links to the stored files.
+     *
+     * Files not stored yet are added to the store.
+     *
+     * @param dir the directory of a published document.
+     * @return the number of files sharing contents with other documents.
+     */
+    public int deduplicate(final File dir) throws IOException {
+        final int[] shared = new int[1];
+        Files.walkFileTree(dir.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                if (attrs.isRegularFile() && store(file)) {
+                    ++shared[0];
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return shared[0];
+    }
+
+    /**
+     * Replaces specified files in a directory with hard links to the stored files.
+     *
+     * @param dir the directory of a published document.
+     * @param paths paths of files relative to the directory, separated with '/'.
+     * @return the number of files sharing contents with other documents.
+     */
+    public int deduplicate(final File dir, final Collection<String> paths) {
+        int shared = 0;
+        for (final String path : paths) {
+            final File file = new File(dir, path);
+            if (file.isFile() && store(file.toPath())) {
+                ++shared;
+            }
+        }
+        return shared;
+    }
+
+    /**
+     * @return true if the file is replaced with a link to the stored file.
+     */
+    private boolean store(final Path file) {
+        try {
+            return link(file);
+        } catch (final IOException e) {
+            // keeps the copy.
+            LOGGER.log(Level.FINE, String.format("Failed to store %s", file), e);
+        } catch (final UnsupportedOperationException e) {
+            // keeps the copy.
+            LOGGER.log(Level.FINE, String.format("Failed to store %s", file), e);
+        }
+        return false;
+    }
+
+    /**
+     * @param file a file in a published document.
+     * @return true if the file is replaced with a link to the stored file.
+     */
+    private boolean link(final Path file) throws IOException {
+        final Path blob = getBlob(digest(file.toFile())).toPath();
+        final Path dir = blob.getParent();
+        Files.createDirectories(dir);
+        final Path tmp = file.resolveSibling(file.getFileName() + ".doclinks-tmp");
+        Files.deleteIfExists(tmp);
+        // Retry when the stored file is removed or added concurrently.
+        for (int i = 0; i < 3; ++i) {
+            try {
+                Files.createLink(tmp, blob);
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            } catch (final NoSuchFileException e) {
+                // not stored yet.
+            }
+            try {
+                Files.createLink(blob, file);
+                return false;
+            } catch (final FileAlreadyExistsException e) {
+                // stored by another publisher.
+            }
+        }
+        return false;
+    }
+
+    File getBlob(final String digest) {
+        return new File(new File(root, digest.substring(0, 2)), digest);
+    }
+
+    static String digest(final File file) throws IOException {
+        final MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        final InputStream is = new FileInputStream(file);
+        try {
+            final byte[] buf = new byte[8192];
+            int len;
+            while ((len = is.read(buf)) >= 0) {
+                md.update(buf, 0, len);
+            }
+        } finally {
+            is.close();
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (final byte b : md.digest()) {
+            sb.append(String.format("%02x", b & 0xFF));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Removes stored files no longer linked from any document.
+     *
+     * A file removed while being linked stays in the document, only not shared any more.
+     *
+     * @return the number of removed files.
+     */
+    public int collect() throws IOException {
+        final int[] removed = new int[1];
+        if (!root.isDirectory()) {
+            return 0;
+        }
+        Files.walkFileTree(root.toPath(), new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+                final Object links = Files.getAttribute(file, "unix:nlink");
+                if (links instanceof Integer && (Integer) links <= 1) {
+                    Files.deleteIfExists(file);
+                    ++removed[0];
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return removed[0];
+    }
+
+    /**
+     * Removes stored files no longer linked from any document once a day.
+     */
+    @Extension
+    public static class Collector extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return DAY;
+        }
+
+        @Override
+        protected void doRun() throws Exception {
+            if (!get().getRoot().isDirectory()) {
+                return;
+            }
+            try {
+                final int removed = get().collect();
+                LOGGER.fine(String.format("Removed %d unused document files", removed));
+            } catch (final UnsupportedOperationException e) {
+                // The number of links is not available on this platform.
+                LOGGER.log(Level.FINE, "Cannot collect unused document files", e);
+            }
+        }
+    }
+
+    private static final Logger LOGGER = Logger.getLogger(DocBlobStore.class.getName());
+}
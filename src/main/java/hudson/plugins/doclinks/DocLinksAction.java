@@ -10,6 +10,7 @@ import java.util.Map;
 import java.util.logging.Logger;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
+import jenkins.util.VirtualFile;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
@@ -73,9 +74,15 @@ public class DocLinksAction implements Action {
             return null;
         }
 
-        final FilePath basePath = new FilePath(DocLinksPublisher.getDocLinksDir(project));
-        final DirectoryBrowserSupport dbs =
-                new DirectoryBrowserSupport(this, basePath, Constants.PLUGIN_NAME, null, false);
+        final VirtualFile archiveRoot = doc.getArchiveRoot(DocLinksPublisher.getDocLinksDir(project));
+        final DirectoryBrowserSupport dbs;
+        if (archiveRoot != null) {
+            // stored as an archive.
+            dbs = new DirectoryBrowserSupport(this, archiveRoot, Constants.PLUGIN_NAME, null, false);
+        } else {
+            final FilePath basePath = new FilePath(DocLinksPublisher.getDocLinksDir(project));
+            dbs = new DirectoryBrowserSupport(this, basePath, Constants.PLUGIN_NAME, null, false);
+        }
         // set indexfile
         if (doc.getFile() != null) {
             dbs.setIndexFileName(doc.getFile());
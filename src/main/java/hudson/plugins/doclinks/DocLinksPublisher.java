@@ -20,7 +20,6 @@ import hudson.tasks.Recorder;
 import hudson.util.FormValidation;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -82,8 +81,6 @@ public class DocLinksPublisher extends Recorder {
     public boolean perform(final AbstractBuild<?, ?> build, final Launcher launcher, final BuildListener listener)
             throws InterruptedException, IOException {
 
-        final PrintStream logger = listener.getLogger();
-
         if (build.getResult().isWorseOrEqualTo(Result.FAILURE)) {
             return true;
         }
@@ -93,9 +90,9 @@ public class DocLinksPublisher extends Recorder {
 
         try {
             synchronized (this) {
-                docLinksDir.deleteRecursive();
-                for (final Document doc : documents) {
-                    doc.publish(ws, docLinksDir, logger);
+                DocLinksUtils.deleteObsoleteDocuments(getDocLinksDir(build.getProject()), documents);
+                if (DocLinksUtils.publishAll(documents, ws, docLinksDir, listener) > 0) {
+                    build.setResult(Result.UNSTABLE);
                 }
             }
         } catch (final IOException e) {
@@ -3,11 +3,25 @@ package hudson.plugins.doclinks;
 import hudson.FilePath;
 import hudson.Util;
 import hudson.model.AbstractProject;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
 import hudson.util.FormValidation;
+import hudson.util.NamingThreadFactory;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import jenkins.util.SystemProperties;
 
 /**
  * Utilities.
@@ -20,6 +34,113 @@ public final class DocLinksUtils {
         //
     }
 
+    /**
+     * the number of threads to publish documents in parallel.
+     */
+    public static final int PUBLISH_THREADS = SystemProperties.getInteger(
+            DocLinksUtils.class.getName() + ".publishThreads",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    /**
+     * publish documents in parallel.
+     *
+     * Logs of each document are written in the order of documents,
+     * and a failed document does not stop the others.
+     * When interrupted, documents not published yet are cancelled.
+     *
+     * @return the number of documents failed to publish.
+     */
+    public static int publishAll(
+            final List<Document> documents,
+            final FilePath ws,
+            final FilePath docLinksDir,
+            final TaskListener listener)
+            throws InterruptedException {
+        final PrintStream logger = listener.getLogger();
+        final List<FutureTask<ByteArrayOutputStream>> tasks = new ArrayList<FutureTask<ByteArrayOutputStream>>();
+        for (final Document doc : documents) {
+            tasks.add(new FutureTask<ByteArrayOutputStream>(new Callable<ByteArrayOutputStream>() {
+                @Override
+                public ByteArrayOutputStream call() throws Exception {
+                    final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    final PrintStream docLogger = new PrintStream(out, true, "UTF-8");
+                    try {
+                        doc.publish(ws, docLinksDir, docLogger);
+                    } catch (final IOException e) {
+                        throw new PublishException(out, e);
+                    }
+                    return out;
+                }
+            }));
+        }
+
+        final int threads = Math.min(PUBLISH_THREADS, tasks.size());
+        if (threads > 1) {
+            final ExecutorService executor = Executors.newFixedThreadPool(
+                    threads, new NamingThreadFactory(new DaemonThreadFactory(), DocLinksUtils.class.getName()));
+            for (final FutureTask<ByteArrayOutputStream> task : tasks) {
+                executor.execute(task);
+            }
+            // threads exit after running the submitted tasks.
+            executor.shutdown();
+        }
+
+        int failed = 0;
+        try {
+            for (int i = 0; i < tasks.size(); ++i) {
+                final FutureTask<ByteArrayOutputStream> task = tasks.get(i);
+                // runs in this thread if not started yet.
+                task.run();
+                try {
+                    final ByteArrayOutputStream out = task.get();
+                    logger.write(out.toByteArray(), 0, out.size());
+                } catch (final ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof InterruptedException) {
+                        // the build is aborted. remaining documents are cancelled.
+                        throw (InterruptedException) cause;
+                    }
+                    if (cause instanceof Error) {
+                        throw (Error) cause;
+                    }
+                    ++failed;
+                    if (cause instanceof PublishException) {
+                        final PublishException pe = (PublishException) cause;
+                        logger.write(pe.out.toByteArray(), 0, pe.out.size());
+                        log(logger, Messages.DocLinksUtils_PublishFailed(
+                                documents.get(i).getTitle(), pe.error.getMessage()));
+                        Util.displayIOException(pe.error, listener);
+                    } else {
+                        log(logger, Messages.DocLinksUtils_PublishFailed(documents.get(i).getTitle(), cause));
+                    }
+                }
+            }
+        } finally {
+            for (final FutureTask<ByteArrayOutputStream> task : tasks) {
+                task.cancel(true);
+            }
+        }
+        log(logger, Messages.DocLinksUtils_PublishSummary(documents.size() - failed, failed));
+        return failed;
+    }
+
+    /**
+     * failure of a document with its logs.
+     */
+    private static class PublishException extends Exception {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient ByteArrayOutputStream out;
+        private final IOException error;
+
+        PublishException(final ByteArrayOutputStream out, final IOException error) {
+            super(error);
+            this.out = out;
+            this.error = error;
+        }
+    }
+
     public static void log(final PrintStream logger, final String message) {
         final StringBuilder builder = new StringBuilder();
         builder.append('[').append(Constants.PLUGIN_NAME).append("] ").append(message);
@@ -41,6 +162,30 @@ public final class DocLinksUtils {
         return String.valueOf(max + 1);
     }
 
+    /**
+     * delete documents no longer published, and their manifests.
+     */
+    public static void deleteObsoleteDocuments(final File docLinksDir, final List<Document> documents)
+            throws IOException {
+        final Set<String> ids = new HashSet<String>();
+        for (final Document doc : documents) {
+            ids.add(String.valueOf(doc.getId()));
+            ids.add(String.format("%s.manifest", doc.getId()));
+            ids.add(String.format("%s.zip", doc.getId()));
+        }
+        for (final File dir : new File[] {docLinksDir, Document.getManifestDir(docLinksDir)}) {
+            final File[] children = dir.listFiles();
+            if (children == null) {
+                continue;
+            }
+            for (final File child : children) {
+                if (!ids.contains(child.getName())) {
+                    Util.deleteRecursive(child);
+                }
+            }
+        }
+    }
+
     public static boolean isValidDirectory(final String dir) {
         if (dir == null) {
             return true;
@@ -0,0 +1,205 @@
+package hudson.plugins.doclinks;
+
+import hudson.remoting.VirtualChannel;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import jenkins.MasterToSlaveFileCallable;
+import org.apache.tools.ant.DirectoryScanner;
+
+/**
+ * Paths, sizes and SHA-256 digests of files in a document.
+ *
+ * Computed where the document is built, and compared with the manifest of the previous publish
+ * to transfer only added or changed files.
+ */
+public class DocManifest implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Map<String, Entry> entries = new TreeMap<String, Entry>();
+
+    /**
+     * Size and digest of a file.
+     */
+    public static class Entry implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long size;
+        private final String digest;
+
+        public Entry(final long size, final String digest) {
+            this.size = size;
+            this.digest = digest;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public String getDigest() {
+            return digest;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (!(obj instanceof Entry)) {
+                return false;
+            }
+            final Entry other = (Entry) obj;
+            return size == other.size && digest.equals(other.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return digest.hashCode();
+        }
+    }
+
+    public void put(final String path, final Entry entry) {
+        entries.put(path, entry);
+    }
+
+    public Entry get(final String path) {
+        return entries.get(path);
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return paths not in the previous manifest, or with different contents.
+     */
+    public List<String> getChangedPaths(final DocManifest previous) {
+        final List<String> paths = new ArrayList<String>();
+        for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+            if (!entry.getValue().equals(previous.get(entry.getKey()))) {
+                paths.add(entry.getKey());
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * @return paths in the previous manifest, but not in this manifest.
+     */
+    public List<String> getRemovedPaths(final DocManifest previous) {
+        final List<String> paths = new ArrayList<String>();
+        for (final String path : previous.entries.keySet()) {
+            if (!entries.containsKey(path)) {
+                paths.add(path);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Computes the manifest of files in a directory.
+     *
+     * @param dir the directory of a document.
+     * @param includes the pattern of files to publish, as {@link hudson.FilePath#copyRecursiveTo(String, hudson.FilePath)}.
+     */
+    public static DocManifest scan(final File dir, final String includes) throws IOException {
+        final DirectoryScanner ds = new DirectoryScanner();
+        ds.setBasedir(dir);
+        ds.setIncludes(new String[] {includes});
+        ds.addDefaultExcludes();
+        ds.scan();
+
+        final DocManifest manifest = new DocManifest();
+        for (final String path : ds.getIncludedFiles()) {
+            final File file = new File(dir, path);
+            manifest.put(path.replace(File.separatorChar, '/'), new Entry(file.length(), DocBlobStore.digest(file)));
+        }
+        return manifest;
+    }
+
+    /**
+     * Computes the manifest on the node the directory is on.
+     */
+    public static class Scanner extends MasterToSlaveFileCallable<DocManifest> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String includes;
+
+        public Scanner(final String includes) {
+            this.includes = includes;
+        }
+
+        @Override
+        public DocManifest invoke(final File f, final VirtualChannel channel) throws IOException, InterruptedException {
+            return scan(f, includes);
+        }
+    }
+
+    /**
+     * Reads a manifest saved with {@link #write(File)}.
+     *
+     * @return the manifest. null if not exists or broken.
+     */
+    public static DocManifest read(final File file) throws IOException {
+        if (!file.isFile()) {
+            return null;
+        }
+        final DocManifest manifest = new DocManifest();
+        final BufferedReader reader =
+                new BufferedReader(new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // digest size path
+                final String[] fields = line.split(" ", 3);
+                if (fields.length != 3) {
+                    return null;
+                }
+                manifest.put(fields[2], new Entry(Long.parseLong(fields[1]), fields[0]));
+            }
+        } catch (final NumberFormatException e) {
+            return null;
+        } finally {
+            reader.close();
+        }
+        return manifest;
+    }
+
+    /**
+     * Saves the manifest, one line for each file.
+     */
+    public void write(final File file) throws IOException {
+        final File dir = file.getParentFile();
+        if (!dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException(String.format("Failed to create %s", dir));
+        }
+        final File tmp = new File(dir, file.getName() + ".tmp");
+        final BufferedWriter writer =
+                new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmp), StandardCharsets.UTF_8));
+        try {
+            for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+                writer.write(String.format(
+                        "%s %d %s\n",
+                        entry.getValue().getDigest(),
+                        entry.getValue().getSize(),
+                        entry.getKey()));
+            }
+        } finally {
+            writer.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+}
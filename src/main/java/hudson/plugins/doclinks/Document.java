@@ -4,11 +4,24 @@ import hudson.FilePath;
 import hudson.Util;
 import hudson.maven.MavenModule;
 import hudson.model.AbstractItem;
+import hudson.plugins.doclinks.artifacts.ZipFileCache;
 import hudson.plugins.doclinks.m2.DocLinksMavenReporter;
+import hudson.util.DirScanner;
+import hudson.util.FileVisitor;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import jenkins.util.VirtualFile;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 /**
@@ -19,6 +32,14 @@ public class Document implements Serializable {
 
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Whether to store each document as a single zip archive instead of a directory.
+     *
+     * Documents are packed where they are built and transferred as a single stream,
+     * and entries are served from the archive.
+     */
+    public static final boolean ARCHIVE = SystemProperties.getBoolean(Document.class.getName() + ".archive");
+
     private final String title;
     private final String description;
     private final String directory;
@@ -81,7 +102,31 @@ public class Document implements Serializable {
         return isDocumentExits(docLinksDir);
     }
 
+    /**
+     * Copies the document to the controller.
+     *
+     * Only added or changed files are transferred when the manifest of the last publish is available.
+     * Packed into a single archive instead in {@link #ARCHIVE} mode.
+     * The document published before is deleted when the document is skipped or failed to publish.
+     *
+     * @param origin the workspace.
+     * @param dest the directory to publish documents in, on the controller.
+     */
     public void publish(FilePath origin, FilePath dest, PrintStream logger) throws IOException, InterruptedException {
+        boolean published = false;
+        try {
+            publishDocument(origin, dest, logger);
+            published = true;
+        } finally {
+            if (!published) {
+                // never serve a stale or partially copied document.
+                unpublish(dest);
+            }
+        }
+    }
+
+    private void publishDocument(FilePath origin, FilePath dest, PrintStream logger)
+            throws IOException, InterruptedException {
 
         String dir = getDirectory();
         if (!DocLinksUtils.isValidDirectory(dir)) {
@@ -98,16 +143,190 @@ public class Document implements Serializable {
         }
 
         FilePath targetDir = new FilePath(dest, String.valueOf(getId()));
+        final String includes = isRecursive() ? "**/*" : "*";
+        final File manifestFile = getManifestFile(dest);
+        final File archive = getArchiveFile(new File(dest.getRemote()));
+
+        if (ARCHIVE) {
+            DocLinksUtils.log(logger, Messages.Document_CopyDocument(getTitle(), archive.getName()));
+            final File tmp = new File(archive.getParentFile(), archive.getName() + ".tmp");
+            if (!archive.getParentFile().mkdirs() && !archive.getParentFile().isDirectory()) {
+                throw new IOException(String.format("Failed to create %s", archive.getParentFile()));
+            }
+            final OutputStream os = new FileOutputStream(tmp);
+            try {
+                docDir.zip(os, includes);
+            } finally {
+                os.close();
+            }
+            // an archive being served is replaced, not overwritten.
+            ZipFileCache.get().invalidate(archive);
+            Files.move(tmp.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            // published as a directory before.
+            targetDir.deleteRecursive();
+            if (manifestFile.exists() && !manifestFile.delete()) {
+                throw new IOException(String.format("Failed to delete %s", manifestFile));
+            }
+            return;
+        }
+
         DocLinksUtils.log(logger, Messages.Document_CopyDocument(getTitle(), targetDir.getName()));
+        // published as an archive before.
+        ZipFileCache.get().invalidate(archive);
+        if (archive.exists() && !archive.delete()) {
+            throw new IOException(String.format("Failed to delete %s", archive));
+        }
+        final DocManifest previous = targetDir.exists() ? DocManifest.read(manifestFile) : null;
+        final DocManifest current = docDir.act(new DocManifest.Scanner(includes));
+        // the target directory does not match the manifest until updated.
+        if (manifestFile.exists() && !manifestFile.delete()) {
+            throw new IOException(String.format("Failed to delete %s", manifestFile));
+        }
 
-        if (isRecursive()) {
-            docDir.copyRecursiveTo("**/*", targetDir);
+        // copies all files when most files are changed.
+        final List<String> changed = (previous != null) ? current.getChangedPaths(previous) : null;
+        final boolean incremental = changed != null && changed.size() * 2 <= current.size();
+        if (!incremental) {
+            targetDir.deleteRecursive();
+            docDir.copyRecursiveTo(includes, targetDir);
         } else {
-            docDir.copyRecursiveTo("*", targetDir);
+            final List<String> removed = current.getRemovedPaths(previous);
+            final File target = new File(targetDir.getRemote());
+            for (final String path : removed) {
+                deleteFile(target, path);
+            }
+            for (final String path : changed) {
+                // never write into files, which may be linked from other documents.
+                deleteFile(target, path);
+            }
+            docDir.copyRecursiveTo(new PathScanner(changed), targetDir, getTitle());
+            DocLinksUtils.log(logger, Messages.Document_UpdateDocument(getTitle(), changed.size(), removed.size()));
+        }
+
+        if (DocBlobStore.ENABLED) {
+            try {
+                final File target = new File(targetDir.getRemote());
+                final int shared = incremental
+                        ? DocBlobStore.get().deduplicate(target, changed)
+                        : DocBlobStore.get().deduplicate(target);
+                DocLinksUtils.log(logger, Messages.Document_DeduplicateDocument(getTitle(), shared));
+            } catch (final IOException e) {
+                // documents are still served from the copies.
+                DocLinksUtils.log(logger, Messages.Document_DeduplicateFailed(getTitle(), e.getMessage()));
+            }
+        }
+
+        current.write(manifestFile);
+    }
+
+    /**
+     * Deletes the published document, and its manifest.
+     */
+    private void unpublish(final FilePath dest) {
+        final File archive = getArchiveFile(new File(dest.getRemote()));
+        final File manifestFile = getManifestFile(dest);
+        try {
+            ZipFileCache.get().invalidate(archive);
+            Util.deleteRecursive(new File(dest.getRemote(), String.valueOf(getId())));
+            for (final File file : new File[] {archive, manifestFile}) {
+                if (file.exists() && !file.delete()) {
+                    throw new IOException(String.format("Failed to delete %s", file));
+                }
+            }
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, String.format("Failed to delete the document %s", getTitle()), e);
+        }
+    }
+
+    /**
+     * Scans the specified files only, to transfer them in a single stream.
+     */
+    private static class PathScanner extends DirScanner {
+
+        private static final long serialVersionUID = 1L;
+
+        private final List<String> paths;
+
+        PathScanner(final List<String> paths) {
+            this.paths = new ArrayList<String>(paths);
+        }
+
+        @Override
+        public void scan(final File dir, final FileVisitor visitor) throws IOException {
+            for (final String path : paths) {
+                final File file = new File(dir, path);
+                if (file.isFile()) {
+                    scanSingle(file, path, visitor);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the file to save {@link DocManifest} of the last publish,
+     * which is placed out of the directory serving documents.
+     */
+    private File getManifestFile(final FilePath dest) {
+        return new File(getManifestDir(new File(dest.getRemote())), String.format("%s.manifest", getId()));
+    }
+
+    File getArchiveFile(final File docLinksDir) {
+        return new File(docLinksDir, String.format("%s.zip", getId()));
+    }
+
+    static File getManifestDir(final File docLinksDir) {
+        return new File(docLinksDir.getParentFile(), docLinksDir.getName() + "-manifests");
+    }
+
+    /**
+     * Deletes a file, and parent directories left empty.
+     */
+    private static void deleteFile(final File dir, final String path) throws IOException {
+        File file = new File(dir, path);
+        if (file.exists() && !file.delete()) {
+            throw new IOException(String.format("Failed to delete %s", file));
+        }
+        for (file = file.getParentFile(); !file.equals(dir); file = file.getParentFile()) {
+            final String[] children = file.list();
+            if (children == null || children.length > 0 || !file.delete()) {
+                break;
+            }
         }
     }
 
+    /**
+     * Returns the directory of published documents to serve the document stored as an archive from.
+     *
+     * Entries are served with {@link hudson.model.DirectoryBrowserSupport} like documents stored as directories.
+     *
+     * @param docLinksDir the directory documents are published in.
+     * @return the directory with the archive. null if the document is not stored as an archive.
+     */
+    public VirtualFile getArchiveRoot(final File docLinksDir) {
+        final File archive = getArchiveFile(docLinksDir);
+        if (!archive.isFile()) {
+            return null;
+        }
+        return new DocumentArchiveFile(archive, String.valueOf(getId()));
+    }
+
     private boolean isDocumentExits(final File docLinksDir) {
+        final File archive = getArchiveFile(docLinksDir);
+        if (archive.isFile()) {
+            if (file == null) {
+                return true;
+            }
+            try {
+                final ZipFileCache.Handle handle = ZipFileCache.get().acquire(archive);
+                try {
+                    return handle.getDirectory().isFile(file);
+                } finally {
+                    handle.close();
+                }
+            } catch (final IOException e) {
+                return false;
+            }
+        }
         final File docDir = new File(docLinksDir, String.valueOf(getId()));
         if (file == null) {
             return docDir.exists();
@@ -115,4 +334,6 @@ public class Document implements Serializable {
         final File indexFile = new File(docDir, file);
         return indexFile.exists();
     }
+
+    private static final Logger LOGGER = Logger.getLogger(Document.class.getName());
 }
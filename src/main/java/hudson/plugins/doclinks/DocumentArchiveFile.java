@@ -0,0 +1,232 @@
+package hudson.plugins.doclinks;
+
+import hudson.plugins.doclinks.artifacts.ZipFileCache;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import jenkins.util.VirtualFile;
+
+/**
+ * Directory of published documents viewed with a document stored as an archive.
+ *
+ * Lets {@link hudson.model.DirectoryBrowserSupport} serve entries of the archive
+ * in the same way as documents published as directories,
+ * with the same Content-Security-Policy and resource root URL.
+ *
+ * Paths are relative to the directory documents are published in,
+ * and the archive appears as the directory named with the id of the document.
+ */
+public class DocumentArchiveFile extends VirtualFile {
+
+    private static final long serialVersionUID = 1L;
+
+    private final File archive;
+    private final String id;
+    /**
+     * the path relative to the directory documents are published in, separated with '/'.
+     */
+    private final String path;
+
+    /**
+     * @param archive the archive of the document.
+     * @param id the id of the document.
+     */
+    public DocumentArchiveFile(final File archive, final String id) {
+        this(archive, id, "");
+    }
+
+    private DocumentArchiveFile(final File archive, final String id, final String path) {
+        this.archive = archive;
+        this.id = id;
+        this.path = path;
+    }
+
+    /**
+     * @return the name of the entry in the archive. null if not in the archive.
+     */
+    private String getEntryName() {
+        if (path.equals(id)) {
+            return "";
+        }
+        return path.startsWith(id + "/") ? path.substring(id.length() + 1) : null;
+    }
+
+    @Override
+    public String getName() {
+        return path.isEmpty() ? archive.getParentFile().getName() : path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    @Override
+    public URI toURI() {
+        final String name = getEntryName();
+        if (name == null) {
+            return archive.getParentFile().toURI();
+        }
+        try {
+            return new URI("jar", String.format("%s!/%s", archive.toURI(), name), null);
+        } catch (final URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public VirtualFile getParent() {
+        if (path.isEmpty()) {
+            return VirtualFile.forFile(archive.getParentFile()).getParent();
+        }
+        final int pos = path.lastIndexOf('/');
+        return new DocumentArchiveFile(archive, id, (pos >= 0) ? path.substring(0, pos) : "");
+    }
+
+    @Override
+    public boolean isDirectory() throws IOException {
+        final String name = getEntryName();
+        if (name == null) {
+            return path.isEmpty();
+        }
+        if (name.isEmpty()) {
+            return true;
+        }
+        final ZipFileCache.Handle handle = ZipFileCache.get().acquire(archive);
+        try {
+            return handle.getDirectory().isDirectory(name);
+        } finally {
+            handle.close();
+        }
+    }
+
+    @Override
+    public boolean isFile() throws IOException {
+        final String name = getEntryName();
+        if (name == null || name.isEmpty()) {
+            return false;
+        }
+        final ZipFileCache.Handle handle = ZipFileCache.get().acquire(archive);
+        try {
+            return handle.getDirectory().isFile(name);
+        } finally {
+            handle.close();
+        }
+    }
+
+    @Override
+    public boolean exists() throws IOException {
+        return isDirectory() || isFile();
+    }
+
+    @Override
+    public VirtualFile[] list() throws IOException {
+        final String name = getEntryName();
+        if (name == null) {
+            return path.isEmpty() ? new VirtualFile[] {new DocumentArchiveFile(archive, id, id)} : new VirtualFile[0];
+        }
+        if (!isDirectory()) {
+            return new VirtualFile[0];
+        }
+        final String prefix = name.isEmpty() ? "" : name + "/";
+        final TreeSet<String> children = new TreeSet<String>();
+        final ZipFileCache.Handle handle = ZipFileCache.get().acquire(archive);
+        try {
+            final Enumeration<? extends ZipEntry> entries = handle.getZipFile().entries();
+            while (entries.hasMoreElements()) {
+                final String entryName = entries.nextElement().getName();
+                if (!entryName.startsWith(prefix) || entryName.length() == prefix.length()) {
+                    continue;
+                }
+                final int pos = entryName.indexOf('/', prefix.length());
+                children.add(entryName.substring(prefix.length(), (pos >= 0) ? pos : entryName.length()));
+            }
+        } finally {
+            handle.close();
+        }
+        final List<VirtualFile> files = new ArrayList<VirtualFile>();
+        for (final String child : children) {
+            files.add(child(child));
+        }
+        return files.toArray(new VirtualFile[0]);
+    }
+
+    @Override
+    public VirtualFile child(final String name) {
+        String child = name.replace('\\', '/');
+        while (child.startsWith("/")) {
+            child = child.substring(1);
+        }
+        while (child.endsWith("/")) {
+            child = child.substring(0, child.length() - 1);
+        }
+        if (child.isEmpty()) {
+            return this;
+        }
+        return new DocumentArchiveFile(archive, id, path.isEmpty() ? child : String.format("%s/%s", path, child));
+    }
+
+    @Override
+    public long length() throws IOException {
+        final ZipEntry entry = isFile() ? getEntry() : null;
+        return (entry != null && entry.getSize() >= 0) ? entry.getSize() : 0;
+    }
+
+    /**
+     * @return the time the archive is modified, as entries are replaced only with the whole archive.
+     */
+    @Override
+    public long lastModified() throws IOException {
+        return exists() ? archive.lastModified() : 0;
+    }
+
+    @Override
+    public boolean canRead() throws IOException {
+        return exists();
+    }
+
+    @Override
+    public InputStream open() throws IOException {
+        final ZipFileCache.Handle handle = ZipFileCache.get().acquire(archive);
+        try {
+            final String name = getEntryName();
+            ZipEntry entry = null;
+            if (name != null && !name.isEmpty() && handle.getDirectory().isFile(name)) {
+                entry = handle.getEntry(name);
+            }
+            if (entry == null) {
+                throw new FileNotFoundException(String.format("%s!/%s", archive, name));
+            }
+            // the archive is kept open until the entry is read.
+            return new FilterInputStream(handle.getInputStream(entry)) {
+                @Override
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        handle.close();
+                    }
+                }
+            };
+        } catch (final IOException e) {
+            handle.close();
+            throw e;
+        } catch (final RuntimeException e) {
+            handle.close();
+            throw e;
+        }
+    }
+
+    private ZipEntry getEntry() throws IOException {
+        final ZipFileCache.Handle handle = ZipFileCache.get().acquire(archive);
+        try {
+            return handle.getEntry(getEntryName());
+        } finally {
+            handle.close();
+        }
+    }
+}
@@ -0,0 +1,323 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Logger;
+import jenkins.model.Jenkins;
+import jenkins.util.SystemProperties;
+import jenkins.util.VirtualFile;
+
+/**
+ * Local copies of artifacts kept in external storages with {@link jenkins.model.ArtifactManager}.
+ *
+ * Archives are read with random access, which {@link VirtualFile} does not provide.
+ * Artifacts on the local file system (including ones of the standard artifact manager) are used as they are,
+ * and other artifacts are downloaded to the cache directory when first accessed.
+ * Copies get the last modified time of the artifact,
+ * so {@link ZipEntryIndexFile} written for a copy stays valid for the later copies.
+ *
+ * Copies are removed in least recently used order when exceeding {@link #MAX_BYTES} bytes in total.
+ *
+ * Artifacts of completed builds never change, so files resolved for them are memoized
+ * with {@link #getFile(String, VirtualFile)}, and later requests only check that the local file still exists
+ * without accessing the external storage.
+ */
+public final class ArtifactFileCache {
+    private static final Logger LOGGER = Logger.getLogger(ArtifactFileCache.class.getName());
+
+    /**
+     * The maximum total size of copies.
+     */
+    public static final long MAX_BYTES =
+            SystemProperties.getLong(ArtifactFileCache.class.getName() + ".maxBytes", 1024L * 1024 * 1024);
+
+    /**
+     * The number of artifacts whose files are memoized.
+     */
+    private static final int MAX_RESOLVED = 1024;
+
+    private static ArtifactFileCache instance;
+
+    /**
+     * @return the cache shared in the controller.
+     */
+    public static synchronized ArtifactFileCache get() {
+        if (instance == null) {
+            File dir = new File(new File(Jenkins.get().getRootDir(), "caches"), "doclinks");
+            instance = new ArtifactFileCache(dir, MAX_BYTES);
+        }
+        return instance;
+    }
+
+    private final File dir;
+    private final long maxBytes;
+
+    /**
+     * Sizes of copies in access order.
+     */
+    private final LinkedHashMap<String, Long> copies = new LinkedHashMap<String, Long>(16, 0.75f, true);
+
+    /**
+     * Names of copies being downloaded.
+     */
+    private final Set<String> downloading = new HashSet<String>();
+
+    /**
+     * Files of artifacts in access order, keyed by callers.
+     */
+    private final LinkedHashMap<String, File> resolved = new LinkedHashMap<String, File>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, File> eldest) {
+            return size() > MAX_RESOLVED;
+        }
+    };
+
+    private long totalBytes;
+
+    /**
+     * @param dir the directory to store copies.
+     * @param maxBytes
+     */
+    ArtifactFileCache(File dir, long maxBytes) {
+        this.dir = dir;
+        this.maxBytes = maxBytes;
+        // Copies left by the previous run.
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (file.getName().endsWith(".tmp")) {
+                    file.delete();
+                } else if (file.isFile()) {
+                    copies.put(file.getName(), file.length());
+                    totalBytes += file.length();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the local file of an artifact.
+     *
+     * @param artifact the artifact.
+     * @return the artifact itself if on the local file system, the copy otherwise.
+     * @throws IOException failed to download the artifact.
+     */
+    public File getFile(VirtualFile artifact) throws IOException {
+        File local = toLocalFile(artifact);
+        if (local != null) {
+            return local;
+        }
+
+        long length = artifact.length();
+        long lastModified = artifact.lastModified();
+        String name = getCopyName(artifact.toURI(), length, lastModified);
+        File copy = new File(dir, name);
+        synchronized (this) {
+            while (downloading.contains(name)) {
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(String.format("Interrupted while downloading %s", artifact.toURI()), e);
+                }
+            }
+            if (copies.get(name) != null && copy.isFile()) {
+                return copy;
+            }
+            downloading.add(name);
+        }
+
+        boolean succeeded = false;
+        try {
+            download(artifact, copy, lastModified);
+            succeeded = true;
+        } finally {
+            synchronized (this) {
+                downloading.remove(name);
+                if (succeeded) {
+                    Long old = copies.put(name, copy.length());
+                    totalBytes += copy.length() - ((old != null) ? old : 0L);
+                    evict(name);
+                }
+                notifyAll();
+            }
+        }
+        return copy;
+    }
+
+    /**
+     * Returns the local file of an artifact never modified, memoizing it.
+     *
+     * The artifact is accessed only when first resolved, or when the file is removed.
+     *
+     * @param key identifies the artifact. e.g. the build and the path of the artifact.
+     * @param artifact the artifact.
+     * @return the artifact itself if on the local file system, the copy otherwise.
+     * @throws IOException failed to download the artifact.
+     */
+    public File getFile(String key, VirtualFile artifact) throws IOException {
+        File file;
+        synchronized (this) {
+            file = resolved.get(key);
+            if (file != null && dir.equals(file.getParentFile())) {
+                // Keeps frequently viewed copies from being evicted first.
+                copies.get(file.getName());
+            }
+        }
+        if (file != null && file.isFile()) {
+            return file;
+        }
+        file = getFile(artifact);
+        synchronized (this) {
+            resolved.put(key, file);
+        }
+        return file;
+    }
+
+    /**
+     * @return the total size of copies.
+     */
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * @return the number of copies.
+     */
+    public synchronized int size() {
+        return copies.size();
+    }
+
+    /**
+     * @param artifact
+     * @return the file if the artifact is on the local file system. null otherwise.
+     */
+    static File toLocalFile(VirtualFile artifact) {
+        URI uri = artifact.toURI();
+        if (uri == null || !"file".equals(uri.getScheme())) {
+            return null;
+        }
+        try {
+            return new File(uri);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    private void download(VirtualFile artifact, File copy, long lastModified) throws IOException {
+        if (!dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException(String.format("Failed to create %s", dir));
+        }
+        File tmp = File.createTempFile(copy.getName(), ".tmp", dir);
+        try {
+            InputStream is = artifact.open();
+            try {
+                OutputStream os = new FileOutputStream(tmp);
+                try {
+                    byte[] buf = new byte[64 * 1024];
+                    int len;
+                    while ((len = is.read(buf)) >= 0) {
+                        os.write(buf, 0, len);
+                    }
+                } finally {
+                    os.close();
+                }
+            } finally {
+                is.close();
+            }
+            if (lastModified > 0 && !tmp.setLastModified(lastModified)) {
+                LOGGER.fine(String.format("Failed to set the last modified time of %s", tmp));
+            }
+            Files.move(tmp.toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            if (tmp.exists()) {
+                tmp.delete();
+            }
+        }
+    }
+
+    /**
+     * Removes least recently used copies exceeding the limit.
+     *
+     * Must be called in synchronized block.
+     * Opened archives are still readable after removed on most platforms,
+     * and a copy failed to remove is retried at the next eviction.
+     *
+     * @param keep the copy not to remove.
+     */
+    private void evict(String keep) {
+        for (Iterator<Map.Entry<String, Long>> it = copies.entrySet().iterator();
+                totalBytes > maxBytes && it.hasNext(); ) {
+            Map.Entry<String, Long> entry = it.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            File file = new File(dir, entry.getKey());
+            if (file.exists() && !file.delete()) {
+                continue;
+            }
+            totalBytes -= entry.getValue();
+            it.remove();
+        }
+    }
+
+    /**
+     * @param uri
+     * @param length
+     * @param lastModified
+     * @return the file name of the copy, which changes when the artifact is replaced.
+     */
+    private static String getCopyName(URI uri, long length, long lastModified) {
+        String key = String.format("%s\n%d\n%d", uri, length, lastModified);
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            StringBuilder sb = new StringBuilder();
+            for (byte b : md.digest(key.getBytes(StandardCharsets.UTF_8))) {
+                sb.append(String.format("%02x", b & 0xFF));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
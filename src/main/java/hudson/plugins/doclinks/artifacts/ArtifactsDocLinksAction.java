@@ -24,14 +24,32 @@
 
 package hudson.plugins.doclinks.artifacts;
 
+import hudson.model.AbstractBuild;
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.SystemProperties;
+import org.codehaus.plexus.util.StringUtils;
+import org.kohsuke.stapler.StaplerRequest;
 
 /**
  * An action to hold the link to artifact documents.
  */
 public class ArtifactsDocLinksAction extends ArtifactsDocsLinksActionBase {
+    private static final Logger LOGGER = Logger.getLogger(ArtifactsDocLinksAction.class.getName());
+
+    /**
+     * The maximum number of entries to show as search results.
+     */
+    public static final int MAX_SEARCH_HITS =
+            SystemProperties.getInteger(ArtifactsDocLinksAction.class.getName() + ".maxSearchHits", 50);
+
     private List<ArtifactsDocLinksDocument> artifactsDocLinksDocumentList = new ArrayList<ArtifactsDocLinksDocument>();
     /**
      * @return the list of artifact documents.
@@ -65,6 +83,110 @@ public class ArtifactsDocLinksAction extends ArtifactsDocsLinksActionBase {
         return Messages.ArtifactsDocLinksAction_DisplayName();
     }
 
+    /**
+     * @param req
+     * @return true if any document has {@link SearchIndexFile}.
+     */
+    public boolean isSearchable(StaplerRequest req) {
+        AbstractBuild<?, ?> build = getBuild(req);
+        if (build == null) {
+            return false;
+        }
+        for (ArtifactsDocLinksDocument doc : getArtifactsDocLinksDocumentList()) {
+            if (ArtifactsDocLinksDocument.getSearchIndexFile(build, doc.getArtifactName()).isFile()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * An entry in a document matching a query.
+     */
+    public static class SearchResult {
+        private final ArtifactsDocLinksDocument document;
+        private final SearchIndexFile.Hit hit;
+
+        private SearchResult(ArtifactsDocLinksDocument document, SearchIndexFile.Hit hit) {
+            this.document = document;
+            this.hit = hit;
+        }
+
+        /**
+         * @return the document containing the entry.
+         */
+        public ArtifactsDocLinksDocument getDocument() {
+            return document;
+        }
+
+        /**
+         * @return the URL of the entry relative to the action.
+         */
+        public String getUrl() {
+            return document.getEntryUrl(hit.getName());
+        }
+
+        /**
+         * @return the title of the entry, or the name if the entry has no title.
+         */
+        public String getTitle() {
+            return StringUtils.isEmpty(hit.getTitle()) ? hit.getName() : hit.getTitle();
+        }
+
+        /**
+         * @return the name of the entry.
+         */
+        public String getName() {
+            return hit.getName();
+        }
+
+        /**
+         * @return the relevance of the entry.
+         */
+        public double getScore() {
+            return hit.getScore();
+        }
+    }
+
+    /**
+     * Searches entries in documents with {@link SearchIndexFile} written when published.
+     *
+     * Archives are not opened.
+     *
+     * @param req
+     * @param query words to search.
+     * @return matching entries in the order of relevance.
+     */
+    public List<SearchResult> search(StaplerRequest req, String query) {
+        AbstractBuild<?, ?> build = getBuild(req);
+        if (build == null || StringUtils.isBlank(query)) {
+            return Collections.emptyList();
+        }
+        List<SearchResult> results = new ArrayList<SearchResult>();
+        for (ArtifactsDocLinksDocument doc : getArtifactsDocLinksDocumentList()) {
+            File indexFile = ArtifactsDocLinksDocument.getSearchIndexFile(build, doc.getArtifactName());
+            try {
+                SearchIndexFile index = SearchIndexCache.get().open(indexFile);
+                if (index == null) {
+                    continue;
+                }
+                for (SearchIndexFile.Hit hit : index.search(query, MAX_SEARCH_HITS)) {
+                    results.add(new SearchResult(doc, hit));
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, String.format("Failed to read %s", indexFile), e);
+            }
+        }
+        // Scores are comparable among documents as long as they have similar term statistics.
+        Collections.sort(results, new Comparator<SearchResult>() {
+            @Override
+            public int compare(SearchResult o1, SearchResult o2) {
+                return Double.compare(o2.getScore(), o1.getScore());
+            }
+        });
+        return (results.size() > MAX_SEARCH_HITS) ? results.subList(0, MAX_SEARCH_HITS) : results;
+    }
+
     /**
      * @param token
      * @return
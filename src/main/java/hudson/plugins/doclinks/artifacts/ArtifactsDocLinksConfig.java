@@ -36,12 +36,12 @@ import hudson.util.FormValidation;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.zip.ZipFile;
-import org.apache.tools.ant.DirectoryScanner;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import jenkins.util.VirtualFile;
 import org.codehaus.plexus.util.StringUtils;
 import org.kohsuke.stapler.AncestorInPath;
 import org.kohsuke.stapler.DataBoundConstructor;
@@ -51,6 +51,8 @@ import org.kohsuke.stapler.QueryParameter;
  * An entry for artifact documents configured by a user.
  */
 public class ArtifactsDocLinksConfig implements Describable<ArtifactsDocLinksConfig> {
+    private static final Logger LOGGER = Logger.getLogger(ArtifactsDocLinksConfig.class.getName());
+
     private String title;
     /**
      * @return the title
@@ -130,17 +132,31 @@ public class ArtifactsDocLinksConfig implements Describable<ArtifactsDocLinksCon
             return "Configuration Entry for ArtifactsDocLinksPublisher";
         }
 
+        /**
+         * Lists artifacts through {@link jenkins.model.ArtifactManager},
+         * so that artifacts in external storages are also found.
+         *
+         * @param build
+         * @param artifactsPattern
+         * @return paths to artifacts relative to the artifacts directory.
+         */
         public Collection<String> scanArtifacts(AbstractBuild<?, ?> build, String artifactsPattern) {
-            File dir = build.getArtifactsDir();
-            if (!dir.exists() || !dir.isDirectory()) {
+            VirtualFile root = build.getArtifactManager().root();
+            try {
+                if (!root.isDirectory()) {
+                    return Collections.emptyList();
+                }
+                String includes = StringUtils.join(artifactsPattern.split("\\s*,\\s*"), ",");
+                List<String> artifacts = new ArrayList<String>(root.list(includes, null, false));
+                Collections.sort(artifacts);
+                return artifacts;
+            } catch (IOException e) {
+                LOGGER.log(
+                        Level.WARNING,
+                        String.format("Failed to list artifacts of %s", build.getFullDisplayName()),
+                        e);
                 return Collections.emptyList();
             }
-            DirectoryScanner ds = new DirectoryScanner();
-            ds.setBasedir(dir);
-            ds.setIncludes(artifactsPattern.split("\\s*,\\s*"));
-            ds.scan();
-
-            return Arrays.asList(ds.getIncludedFiles());
         }
 
         public FormValidation doCheckTitle(@QueryParameter String value) {
@@ -168,12 +184,7 @@ public class ArtifactsDocLinksConfig implements Describable<ArtifactsDocLinksCon
                         buildList.add(b);
                         break;
                     }
-                    File dir = b.getArtifactsDir();
-                    if (!dir.exists() || !dir.isDirectory()) {
-                        continue;
-                    }
-                    File[] files = dir.listFiles();
-                    if (files == null || files.length <= 0) {
+                    if (!b.getHasArtifacts()) {
                         continue;
                     }
                     buildList.add(b);
@@ -202,20 +213,20 @@ public class ArtifactsDocLinksConfig implements Describable<ArtifactsDocLinksCon
                     Collection<String> artifacts = scanArtifacts(build, pattern);
                     if (artifacts.size() > 0) {
                         for (String artifact : artifacts) {
-                            ZipFile file = null;
+                            if (TarArchive.isTar(artifact)) {
+                                // Converted to a zip archive when published.
+                                continue;
+                            }
+                            File archive = ArtifactsDocLinksDocument.getLocalArchiveFile(build, artifact);
+                            if (archive == null) {
+                                // Not worth downloading the whole artifact to validate a form.
+                                continue;
+                            }
                             try {
-                                file = new ZipFile(new File(build.getArtifactsDir(), artifact));
+                                ZipCentralDirectory.probe(archive);
                             } catch (IOException e) {
                                 return FormValidation.warning(Messages.ArtifactsDocLinksConfig_artifactsPattern_invalid(
                                         artifact, build.getFullDisplayName()));
-                            } finally {
-                                if (file != null) {
-                                    try {
-                                        file.close();
-                                    } catch (IOException e) {
-                                        // ignore
-                                    }
-                                }
                             }
                         }
                         continue OUTER;
@@ -246,23 +257,24 @@ public class ArtifactsDocLinksConfig implements Describable<ArtifactsDocLinksCon
             for (AbstractBuild<?, ?> build : buildList) {
                 Collection<String> artifactNames = scanArtifacts(build, artifactsPattern);
                 for (String artifactName : artifactNames) {
-                    File artifact = new File(build.getArtifactsDir(), artifactName);
-                    ZipFile file = null;
+                    File artifact = ArtifactsDocLinksDocument.getLocalArchiveFile(build, artifactName);
+                    if (artifact == null) {
+                        // Not worth downloading the whole artifact to validate a form.
+                        continue;
+                    }
+                    ZipFileCache.Handle handle = null;
                     try {
-                        file = new ZipFile(artifact);
-                        if (!ArtifactsDocLinksDocument.isDirectory(file, value) && file.getEntry(value) == null) {
+                        handle = ZipFileCache.get()
+                                .acquire(artifact, ArtifactsDocLinksDocument.getEntryIndexFile(build, artifactName));
+                        if (!handle.getDirectory().isDirectory(value) && handle.getEntry(value) == null) {
                             return FormValidation.warning(Messages.ArtifactsDocLinksConfig_initialPath_notfound(
                                     artifactName, build.getFullDisplayName()));
                         }
                     } catch (IOException e) {
                         // ignore if file is not zip.
                     } finally {
-                        if (file != null) {
-                            try {
-                                file.close();
-                            } catch (IOException e) {
-                                // ignore
-                            }
+                        if (handle != null) {
+                            handle.close();
                         }
                     }
                 }
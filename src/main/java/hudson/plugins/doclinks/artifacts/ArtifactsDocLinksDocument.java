@@ -28,17 +28,21 @@ import hudson.Util;
 import hudson.model.AbstractBuild;
 import hudson.model.AbstractProject;
 import hudson.model.ModelObject;
+import java.io.EOFException;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Enumeration;
+import java.util.List;
 import java.util.logging.Logger;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
+import jenkins.util.VirtualFile;
 import org.codehaus.plexus.util.StringUtils;
+import org.kohsuke.stapler.Ancestor;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
@@ -90,6 +94,21 @@ public class ArtifactsDocLinksDocument implements ModelObject {
         return id;
     }
 
+    private ArtifactsDocLinksManifest manifest;
+    /**
+     * @return the summary of the archive recorded when published. null for documents published by older versions.
+     */
+    public ArtifactsDocLinksManifest getManifest() {
+        return manifest;
+    }
+
+    /**
+     * @param manifest
+     */
+    public void setManifest(ArtifactsDocLinksManifest manifest) {
+        this.manifest = manifest;
+    }
+
     /**
      * @return the URL for the initial path.
      */
@@ -99,6 +118,37 @@ public class ArtifactsDocLinksDocument implements ModelObject {
                 : Util.rawEncode(getId());
     }
 
+    /**
+     * Returns the URL of the entry served for the initial path,
+     * which saves redirects to directories.
+     *
+     * @return the URL of the landing entry. {@link #getUrl()} if not resolved when published.
+     */
+    public String getLandingUrl() {
+        if (manifest == null || manifest.getLandingEntry() == null || manifest.getLandingEntry().isEmpty()) {
+            return getUrl();
+        }
+        StringBuilder url = new StringBuilder(getEntryUrl(manifest.getLandingEntry()));
+        String initialPath = StringUtils.defaultString(getInitialPath());
+        int fragment = initialPath.indexOf('#');
+        if (fragment >= 0) {
+            url.append(initialPath.substring(fragment));
+        }
+        return url.toString();
+    }
+
+    /**
+     * @param entry the name of an entry in the archive.
+     * @return the URL of the entry relative to the action.
+     */
+    public String getEntryUrl(String entry) {
+        StringBuilder url = new StringBuilder(Util.rawEncode(getId()));
+        for (String segment : entry.split("/")) {
+            url.append('/').append(Util.rawEncode(segment));
+        }
+        return url.toString();
+    }
+
     /**
      * @param id
      * @param artifactName
@@ -124,6 +174,99 @@ public class ArtifactsDocLinksDocument implements ModelObject {
         return getTitle();
     }
 
+    /**
+     * Returns the file to persist {@link ZipEntryIndexFile} of an artifact.
+     *
+     * @param build the build containing the artifact.
+     * @param artifactName the path to the artifact relative to the artifacts directory.
+     * @return the index file.
+     */
+    public static File getEntryIndexFile(AbstractBuild<?, ?> build, String artifactName) {
+        return new File(new File(build.getRootDir(), "artifactsDocLinks"), String.format("%s.idx", artifactName));
+    }
+
+    /**
+     * Returns an artifact through {@link jenkins.model.ArtifactManager} of the build.
+     *
+     * @param build the build containing the artifact.
+     * @param artifactName the path to the artifact relative to the artifacts directory.
+     * @return the artifact.
+     */
+    public static VirtualFile getArtifact(AbstractBuild<?, ?> build, String artifactName) {
+        return build.getArtifactManager().root().child(artifactName);
+    }
+
+    /**
+     * Returns the zip archive to serve an artifact.
+     *
+     * Tar archives are converted to zip archives with {@link TarArchive} when published.
+     * Artifacts in external storages are copied to the local disk with {@link ArtifactFileCache}.
+     * Files for completed builds are memoized, and the artifact is accessed only for the first time.
+     *
+     * @param build the build containing the artifact.
+     * @param artifactName the path to the artifact relative to the artifacts directory.
+     * @return the artifact itself, or the converted archive for a tar archive.
+     * @throws IOException failed to copy the artifact.
+     */
+    public static File getArchiveFile(AbstractBuild<?, ?> build, String artifactName) throws IOException {
+        if (TarArchive.isTar(artifactName)) {
+            return new File(new File(build.getRootDir(), "artifactsDocLinks"), String.format("%s.zip", artifactName));
+        }
+        if (build.isBuilding()) {
+            return ArtifactFileCache.get().getFile(getArtifact(build, artifactName));
+        }
+        String key = String.format("%s\n%s", build.getRootDir().getAbsolutePath(), artifactName);
+        return ArtifactFileCache.get().getFile(key, getArtifact(build, artifactName));
+    }
+
+    /**
+     * Returns the zip archive of an artifact only if it is available without downloading.
+     *
+     * @param build the build containing the artifact.
+     * @param artifactName the path to the artifact relative to the artifacts directory.
+     * @return the artifact itself, or the converted archive for a tar archive.
+     *     null if the artifact is in an external storage.
+     */
+    public static File getLocalArchiveFile(AbstractBuild<?, ?> build, String artifactName) {
+        if (TarArchive.isTar(artifactName)) {
+            return new File(new File(build.getRootDir(), "artifactsDocLinks"), String.format("%s.zip", artifactName));
+        }
+        return ArtifactFileCache.toLocalFile(getArtifact(build, artifactName));
+    }
+
+    /**
+     * Returns the file to persist {@link PrecompressedArchive} of an artifact.
+     *
+     * @param build the build containing the artifact.
+     * @param artifactName the path to the artifact relative to the artifacts directory.
+     * @return the companion archive.
+     */
+    public static File getPrecompressedFile(AbstractBuild<?, ?> build, String artifactName) {
+        return new File(new File(build.getRootDir(), "artifactsDocLinks"), String.format("%s.gz.zip", artifactName));
+    }
+
+    /**
+     * Returns the file to persist {@link ZipEntryIndexFile} of {@link PrecompressedArchive} of an artifact.
+     *
+     * @param build the build containing the artifact.
+     * @param artifactName the path to the artifact relative to the artifacts directory.
+     * @return the index file.
+     */
+    public static File getPrecompressedIndexFile(AbstractBuild<?, ?> build, String artifactName) {
+        return new File(new File(build.getRootDir(), "artifactsDocLinks"), String.format("%s.gz.idx", artifactName));
+    }
+
+    /**
+     * Returns the file to persist {@link SearchIndexFile} of an artifact.
+     *
+     * @param build the build containing the artifact.
+     * @param artifactName the path to the artifact relative to the artifacts directory.
+     * @return the search index file.
+     */
+    public static File getSearchIndexFile(AbstractBuild<?, ?> build, String artifactName) {
+        return new File(new File(build.getRootDir(), "artifactsDocLinks"), String.format("%s.search", artifactName));
+    }
+
     /**
      * Resolves the build containing the artifact by {@link StaplerRequest#findAncestorObject(Class)}
      *
@@ -144,6 +287,34 @@ public class ArtifactsDocLinksDocument implements ModelObject {
         return null;
     }
 
+    /**
+     * Tests whether the request is for the artifact of a specific build.
+     *
+     * Such contents never change once the build finishes,
+     * while ones accessed via a project or a permalink (e.g. lastSuccessfulBuild) change with new builds.
+     *
+     * @param req
+     * @param build the build resolved by {@link #getBuild(StaplerRequest)}.
+     * @return true if the contents for the URL never change.
+     */
+    protected boolean isPinned(StaplerRequest req, AbstractBuild<?, ?> build) {
+        if (build.isBuilding()) {
+            return false;
+        }
+        for (Ancestor ancestor : req.getAncestors()) {
+            if (ancestor.getObject() != build) {
+                continue;
+            }
+            // only the URL with the build number keeps pointing the build.
+            String url = ancestor.getUrl();
+            while (url.endsWith("/")) {
+                url = url.substring(0, url.length() - 1);
+            }
+            return url.substring(url.lastIndexOf('/') + 1).equals(String.valueOf(build.getNumber()));
+        }
+        return false;
+    }
+
     /**
      * Send a contents of the artifact that is requested via HTTP.
      *
@@ -160,25 +331,37 @@ public class ArtifactsDocLinksDocument implements ModelObject {
             return;
         }
 
-        File artifact = new File(build.getArtifactsDir(), getArtifactName());
-        if (!artifact.exists()) {
-            LOGGER.warning(String.format(
-                    "Artifact does not exists: %s for %s", getArtifactName(), build.getFullDisplayName()));
-            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
-            return;
-        }
-        if (!artifact.isFile()) {
-            LOGGER.warning(
-                    String.format("Artifact is not a file: %s for %s", getArtifactName(), build.getFullDisplayName()));
-            resp.sendError(HttpServletResponse.SC_FORBIDDEN);
-            return;
+        // Tar archives are served from the zip archive converted when published.
+        // The artifact is accessed only when the archive is not resolved yet.
+        File artifact;
+        IOException failure = null;
+        try {
+            artifact = getArchiveFile(build, getArtifactName());
+        } catch (IOException e) {
+            artifact = null;
+            failure = e;
         }
-
-        if (req.getDateHeader("If-Modified-Since") >= 0) {
-            if (req.getDateHeader("If-Modified-Since") >= artifact.lastModified()) {
-                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+        if (artifact == null || !artifact.isFile()) {
+            VirtualFile source = getArtifact(build, getArtifactName());
+            if (!source.exists()) {
+                LOGGER.warning(String.format(
+                        "Artifact does not exists: %s for %s", getArtifactName(), build.getFullDisplayName()));
+                resp.sendError(HttpServletResponse.SC_NOT_FOUND);
                 return;
             }
+            if (!source.isFile()) {
+                LOGGER.warning(String.format(
+                        "Artifact is not a file: %s for %s", getArtifactName(), build.getFullDisplayName()));
+                resp.sendError(HttpServletResponse.SC_FORBIDDEN);
+                return;
+            }
+            if (failure != null) {
+                throw failure;
+            }
+            LOGGER.warning(String.format(
+                    "Artifact is not converted: %s for %s", getArtifactName(), build.getFullDisplayName()));
+            resp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
         }
 
         String path = req.getRestOfPath();
@@ -188,33 +371,144 @@ public class ArtifactsDocLinksDocument implements ModelObject {
         if (path.endsWith("/")) {
             path = path.substring(0, path.length() - 1);
         }
-        ZipFile zip = null;
+        ZipFileCache.Handle handle = null;
         try {
             try {
-                zip = new ZipFile(artifact);
+                handle = ZipFileCache.get().acquire(artifact, getEntryIndexFile(build, getArtifactName()));
             } catch (ZipException e) {
                 LOGGER.warning(String.format(
                         "Artifact is not a zip file: %s for %s", getArtifactName(), build.getFullDisplayName()));
                 resp.sendError(HttpServletResponse.SC_FORBIDDEN);
                 return;
             }
-
-            if (path.length() > 0 && !req.getRequestURI().endsWith("/") && isDirectory(zip, path)) {
+            ZipPathCache.Resolution resolution = resolve(handle, path, req.getRequestURI().endsWith("/"));
+            if (resolution == ZipPathCache.Resolution.REDIRECT) {
                 // It seems that getRestOfPath() never contains trailing slash.
                 // So we should see getRequestURI().
                 resp.sendRedirect(String.format("%s/", req.getRequestURI()));
                 return;
             }
-
-            ZipEntry entry = getFileEntry(zip, path);
-            if (entry == null) {
+            if (resolution == ZipPathCache.Resolution.NOT_FOUND) {
                 resp.sendError(HttpServletResponse.SC_NOT_FOUND);
                 return;
             }
 
+            ZipEntry entry = resolution.getEntry();
+            long dataOffset = resolution.getDataOffset();
+            boolean gzipAvailable = dataOffset >= 0 && entry.getMethod() == ZipEntry.DEFLATED;
+            File precompressed = null;
+            if (PrecompressedArchive.isCompressible(entry.getName())) {
+                precompressed = getPrecompressedFile(build, getArtifactName());
+                if (!PrecompressedArchive.isUpToDate(precompressed, artifact)) {
+                    // Not published, or outdated.
+                    precompressed = null;
+                }
+            }
+            if (gzipAvailable || precompressed != null) {
+                // The response differs by Accept-Encoding.
+                resp.setHeader("Vary", "Accept-Encoding");
+            }
+
+            ZipEntryServer.setCacheControl(resp, isPinned(req, build));
+
+            // Conditional requests are answered only from the metadata of the entry.
+            String etag = ZipEntryServer.getETag(artifact, entry);
+            if (ZipEntryServer.isNotModified(req, etag, artifact.lastModified())) {
+                if (etag != null) {
+                    resp.setHeader("ETag", etag);
+                }
+                resp.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+                return;
+            }
+
+            resp.setHeader("Accept-Ranges", "bytes");
+            List<long[]> ranges = ZipEntryServer.getRanges(req, entry.getSize(), artifact.lastModified(), etag);
+            if (ranges != null) {
+                if (etag != null) {
+                    resp.setHeader("ETag", etag);
+                }
+                serveRanges(req, resp, handle, entry, dataOffset, ranges, artifact.lastModified());
+                return;
+            }
+            if (precompressed != null
+                    && ZipEntryServer.acceptsGzip(req)
+                    && servePrecompressed(
+                            req,
+                            resp,
+                            precompressed,
+                            getPrecompressedIndexFile(build, getArtifactName()),
+                            entry,
+                            gzipAvailable ? entry.getCompressedSize() : entry.getSize(),
+                            etag,
+                            artifact.lastModified())) {
+                return;
+            }
+            if (gzipAvailable && ZipEntryServer.acceptsGzip(req)) {
+                if (etag != null) {
+                    resp.setHeader("ETag", ZipEntryServer.getGzipETag(etag));
+                }
+                if (ZipEntryServer.serveDeflatedAsGzip(
+                        req,
+                        resp,
+                        handle.getChannel(),
+                        dataOffset,
+                        entry.getCompressedSize(),
+                        entry.getCrc(),
+                        entry.getSize(),
+                        artifact.lastModified(),
+                        entry.getName(),
+                        handle)) {
+                    // Closed when sent.
+                    handle = null;
+                }
+                return;
+            }
+
+            if (etag != null) {
+                resp.setHeader("ETag", etag);
+            }
+            if (dataOffset >= 0 && entry.getMethod() == ZipEntry.STORED) {
+                if (ZipEntryServer.serveStored(
+                        req,
+                        resp,
+                        handle.getChannel(),
+                        dataOffset,
+                        entry.getSize(),
+                        artifact.lastModified(),
+                        entry.getName(),
+                        handle)) {
+                    // Closed when sent.
+                    handle = null;
+                }
+                return;
+            }
+            if (ZipEntryServer.isHead(req)) {
+                // No need to open the entry.
+                ZipEntryServer.setHeaders(req, resp, artifact.lastModified(), entry.getSize(), entry.getName());
+                return;
+            }
+
+            ZipEntryContentCache.Content content = getCachedContent(artifact, handle, entry);
+            if (content != null) {
+                try {
+                    ZipEntryServer.serveContent(req, resp, content, artifact.lastModified(), entry.getName());
+                } finally {
+                    content.close();
+                }
+                return;
+            }
+
             InputStream is = null;
             try {
-                is = zip.getInputStream(entry);
+                is = handle.getInputStream(entry);
+                if (AsyncEntryWriter.isApplicable(req, entry.getSize())) {
+                    ZipEntryServer.setHeaders(req, resp, artifact.lastModified(), entry.getSize(), entry.getName());
+                    AsyncEntryWriter.start(req, resp, new AsyncEntryWriter.StreamSource(is, handle));
+                    // Closed when sent.
+                    is = null;
+                    handle = null;
+                    return;
+                }
                 resp.serveFile(req, is, artifact.lastModified(), entry.getSize(), entry.getName());
             } finally {
                 if (is != null) {
@@ -223,41 +517,257 @@ public class ArtifactsDocLinksDocument implements ModelObject {
             }
             return;
         } finally {
-            if (zip != null) {
-                zip.close();
+            if (handle != null) {
+                handle.close();
             }
         }
     }
 
     /**
-     * @param zip
+     * Sends an entry in {@link PrecompressedArchive} as a gzip encoded response.
+     *
+     * @param req
+     * @param resp
+     * @param precompressed the companion archive.
+     * @param precompressedIndex the index of the companion archive.
+     * @param entry the entry in the artifact.
+     * @param sizeToSend bytes to send the entry without the companion.
+     * @param etag the entity tag of the entry. may be null.
+     * @param lastModified
+     * @return false if the entry in the companion is not available or not smaller.
+     * @throws IOException
+     */
+    private boolean servePrecompressed(
+            StaplerRequest req,
+            StaplerResponse resp,
+            File precompressed,
+            File precompressedIndex,
+            ZipEntry entry,
+            long sizeToSend,
+            String etag,
+            long lastModified)
+            throws IOException {
+        ZipFileCache.Handle handle = ZipFileCache.get().acquire(precompressed, precompressedIndex);
+        try {
+            ZipEntry compressed = handle.getEntry(entry.getName());
+            if (compressed == null
+                    || compressed.getMethod() != ZipEntry.DEFLATED
+                    || compressed.getCompressedSize() >= sizeToSend) {
+                return false;
+            }
+            long dataOffset = handle.getDataOffset(compressed);
+            if (dataOffset < 0) {
+                return false;
+            }
+            if (etag != null) {
+                resp.setHeader("ETag", ZipEntryServer.getPrecompressedETag(etag, compressed.getCompressedSize()));
+            }
+            if (ZipEntryServer.serveDeflatedAsGzip(
+                    req,
+                    resp,
+                    handle.getChannel(),
+                    dataOffset,
+                    compressed.getCompressedSize(),
+                    compressed.getCrc(),
+                    compressed.getSize(),
+                    lastModified,
+                    entry.getName(),
+                    handle)) {
+                // Closed when sent.
+                handle = null;
+            }
+            return true;
+        } finally {
+            if (handle != null) {
+                handle.close();
+            }
+        }
+    }
+
+    /**
+     * Sends parts of an entry.
+     *
+     * Entries stored without compression are read directly at the requested positions.
+     * Other entries are decompressed skipping bytes before the requested positions.
+     *
+     * @param req
+     * @param resp
+     * @param handle
+     * @param entry
+     * @param dataOffset
+     * @param ranges
+     * @param lastModified
+     * @throws IOException
+     */
+    private void serveRanges(
+            StaplerRequest req,
+            StaplerResponse resp,
+            ZipFileCache.Handle handle,
+            ZipEntry entry,
+            long dataOffset,
+            List<long[]> ranges,
+            long lastModified)
+            throws IOException {
+        if (dataOffset >= 0 && entry.getMethod() == ZipEntry.STORED) {
+            ZipEntryServer.serveRanges(
+                    req,
+                    resp,
+                    ranges,
+                    entry.getSize(),
+                    lastModified,
+                    entry.getName(),
+                    new ZipEntryServer.ChannelEntryContent(handle.getChannel(), dataOffset));
+            return;
+        }
+
+        if (ZipEntryServer.isHead(req)) {
+            // No need to open the entry.
+            ZipEntryServer.serveRanges(req, resp, ranges, entry.getSize(), lastModified, entry.getName(), null);
+            return;
+        }
+
+        ZipEntryContentCache.Content content = getCachedContent(handle.getFile(), handle, entry);
+        if (content != null) {
+            try {
+                ZipEntryServer.serveRanges(
+                        req, resp, ranges, entry.getSize(), lastModified, entry.getName(), content);
+            } finally {
+                content.close();
+            }
+            return;
+        }
+
+        InputStream is = null;
+        try {
+            is = handle.getInputStream(entry);
+            ZipEntryServer.serveRanges(
+                    req,
+                    resp,
+                    ranges,
+                    entry.getSize(),
+                    lastModified,
+                    entry.getName(),
+                    new ZipEntryServer.StreamEntryContent(is));
+        } finally {
+            if (is != null) {
+                is.close();
+            }
+        }
+    }
+
+    /**
+     * Returns decompressed contents of an entry from {@link ZipEntryContentCache},
+     * reading and caching them if not cached yet.
+     *
+     * The returned contents must be closed after sent.
+     *
+     * @param artifact
+     * @param handle
+     * @param entry
+     * @return the contents. null if the entry is too large to cache.
+     * @throws IOException
+     */
+    private static ZipEntryContentCache.Content getCachedContent(
+            File artifact, final ZipFileCache.Handle handle, final ZipEntry entry) throws IOException {
+        ZipEntryContentCache cache = ZipEntryContentCache.get();
+        if (!cache.isCacheable(entry.getSize())) {
+            return null;
+        }
+        // Concurrent requests for the same entry inflate it only once.
+        return cache.getOrLoad(artifact, entry.getName(), new ZipEntryContentCache.Loader() {
+            @Override
+            public byte[] load() throws IOException {
+                byte[] data = new byte[(int) entry.getSize()];
+                InputStream is = handle.getInputStream(entry);
+                try {
+                    int pos = 0;
+                    while (pos < data.length) {
+                        int n = is.read(data, pos, data.length - pos);
+                        if (n < 0) {
+                            throw new EOFException(String.format("Unexpected end of %s", entry.getName()));
+                        }
+                        pos += n;
+                    }
+                } finally {
+                    is.close();
+                }
+                return data;
+            }
+        });
+    }
+
+    /**
+     * Resolves a request path to an entry, remembering the result in {@link ZipPathCache}.
+     *
+     * @param handle
+     * @param path the path in the archive requested.
+     * @param trailingSlash whether the request URI ends with a slash.
+     * @return the resolution.
+     * @throws IOException
+     */
+    private ZipPathCache.Resolution resolve(ZipFileCache.Handle handle, String path, boolean trailingSlash)
+            throws IOException {
+        ZipPathCache pathCache = handle.getPathCache();
+        String key = ZipPathCache.keyOf(path, trailingSlash, getIndexFile());
+        ZipPathCache.Resolution resolution = pathCache.get(key);
+        if (resolution != null) {
+            return resolution;
+        }
+
+        ZipDirectory directory = handle.getDirectory();
+        if (path.length() > 0 && !trailingSlash && directory.isDirectory(path)) {
+            resolution = ZipPathCache.Resolution.REDIRECT;
+        } else {
+            ZipEntry entry = getFileEntry(handle, directory, path);
+            resolution = (entry != null)
+                    ? ZipPathCache.Resolution.of(entry, handle.getDataOffset(entry))
+                    : ZipPathCache.Resolution.NOT_FOUND;
+        }
+        pathCache.put(key, resolution);
+        return resolution;
+    }
+
+    /**
+     * @param handle
+     * @param directory
      * @param path
      * @return
      * @throws IOException
      */
-    private ZipEntry getFileEntry(ZipFile zip, String path) throws IOException {
-        if (!isDirectory(zip, path)) {
-            ZipEntry entry = zip.getEntry(path);
+    private ZipEntry getFileEntry(ZipFileCache.Handle handle, ZipDirectory directory, String path)
+            throws IOException {
+        if (directory.isFile(path)) {
+            ZipEntry entry = handle.getEntry(path);
             if (entry != null) {
                 return entry;
             }
         }
 
-        String indexFile = getIndexFile();
+        String indexFilePath = directory.resolveIndexFile(path, getIndexFiles());
+        return (indexFilePath != null) ? handle.getEntry(indexFilePath) : null;
+    }
+
+    /**
+     * @return names of files used for access to a directory.
+     */
+    private String[] getIndexFiles() {
+        return getIndexFiles(getIndexFile());
+    }
+
+    /**
+     * @param indexFile the configured index files separated with commas. can be null.
+     * @return names of files used for access to a directory.
+     */
+    static String[] getIndexFiles(String indexFile) {
         if (StringUtils.isEmpty(indexFile)) {
             indexFile = "index.html,index.htm";
         }
 
-        for (String file : StringUtils.split(indexFile, ",")) {
-            file = StringUtils.trim(file);
-            String filePath = StringUtils.isEmpty(path) ? file : String.format("%s/%s", path, file);
-            ZipEntry entry = zip.getEntry(filePath);
-            if (entry != null && !isDirectory(zip, entry)) {
-                return entry;
-            }
+        String[] indexFiles = StringUtils.split(indexFile, ",");
+        for (int i = 0; i < indexFiles.length; ++i) {
+            indexFiles[i] = StringUtils.trim(indexFiles[i]);
         }
-
-        return null;
+        return indexFiles;
     }
 
     /**
@@ -0,0 +1,117 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+/**
+ * Summary of an archive recorded when published.
+ *
+ * Displayed in the list of documents without opening the archive.
+ */
+public class ArtifactsDocLinksManifest {
+    private final int entryCount;
+    private final long totalSize;
+    private final String landingEntry;
+
+    /**
+     * @param entryCount
+     * @param totalSize
+     * @param landingEntry
+     */
+    public ArtifactsDocLinksManifest(int entryCount, long totalSize, String landingEntry) {
+        this.entryCount = entryCount;
+        this.totalSize = totalSize;
+        this.landingEntry = landingEntry;
+    }
+
+    /**
+     * Summarizes an archive.
+     *
+     * @param index the index of the archive.
+     * @param initialPath the initial path of the document. can be null.
+     * @param indexFiles names of files used for access to a directory.
+     * @return the manifest.
+     */
+    public static ArtifactsDocLinksManifest of(ZipEntryIndexFile index, String initialPath, String[] indexFiles) {
+        long totalSize = 0;
+        for (int i = 0; i < index.size(); ++i) {
+            totalSize += Math.max(index.getSize(i), 0L);
+        }
+        return new ArtifactsDocLinksManifest(
+                index.size(), totalSize, resolveLandingEntry(index, initialPath, indexFiles));
+    }
+
+    /**
+     * Resolves the entry served for the initial path in the same way as {@link ArtifactsDocLinksDocument}.
+     *
+     * @param directory
+     * @param initialPath
+     * @param indexFiles
+     * @return the name of the entry. null if the initial path cannot be resolved.
+     */
+    static String resolveLandingEntry(ZipDirectory directory, String initialPath, String[] indexFiles) {
+        String path = (initialPath != null) ? initialPath : "";
+        // Fragments and queries are for the browser.
+        for (char c : new char[] {'#', '?'}) {
+            int pos = path.indexOf(c);
+            if (pos >= 0) {
+                path = path.substring(0, pos);
+            }
+        }
+        while (path.startsWith("/")) {
+            path = path.substring(1);
+        }
+        while (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (directory.isFile(path)) {
+            return path;
+        }
+        if (!directory.isDirectory(path)) {
+            return null;
+        }
+        return directory.resolveIndexFile(path, indexFiles);
+    }
+
+    /**
+     * @return the number of entries in the archive, including directories.
+     */
+    public int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return the total uncompressed size of files in the archive.
+     */
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    /**
+     * @return the entry served for the initial path. null if not resolved.
+     */
+    public String getLandingEntry() {
+        return landingEntry;
+    }
+}
@@ -35,14 +35,23 @@ import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Publisher;
 import hudson.tasks.Recorder;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
 import java.util.zip.ZipException;
-import java.util.zip.ZipFile;
+import jenkins.util.SystemProperties;
+import org.codehaus.plexus.util.StringUtils;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 
 /**
  *
@@ -57,6 +66,51 @@ public class ArtifactsDocLinksPublisher extends Recorder {
         return artifactsDocLinksConfigList;
     }
 
+    /**
+     * The number of threads to prepare artifacts in parallel.
+     */
+    public static final int PUBLISH_THREADS = SystemProperties.getInteger(
+            ArtifactsDocLinksPublisher.class.getName() + ".publishThreads",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private boolean precompress;
+
+    /**
+     * Whether to write {@link PrecompressedArchive} for each artifact.
+     *
+     * @return the precompress
+     */
+    public boolean isPrecompress() {
+        return precompress;
+    }
+
+    /**
+     * @param precompress
+     */
+    @DataBoundSetter
+    public void setPrecompress(boolean precompress) {
+        this.precompress = precompress;
+    }
+
+    private boolean searchIndex;
+
+    /**
+     * Whether to write {@link SearchIndexFile} for each artifact.
+     *
+     * @return the searchIndex
+     */
+    public boolean isSearchIndex() {
+        return searchIndex;
+    }
+
+    /**
+     * @param searchIndex
+     */
+    @DataBoundSetter
+    public void setSearchIndex(boolean searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
     /**
      * @param artifactsDocLinksConfigList
      */
@@ -91,27 +145,36 @@ public class ArtifactsDocLinksPublisher extends Recorder {
                     return true;
                 }
 
-                for (String file : files) {
-                    ZipFile zip = null;
-                    try {
-                        zip = new ZipFile(new File(build.getArtifactsDir(), file));
-                    } catch (ZipException e) {
-                        listener.getLogger().println(String.format("ERROR: %s seems not a zip file", file));
-                        build.setResult(Result.FAILURE);
-                        return true;
-                    } finally {
-                        if (zip != null) {
-                            zip.close();
+                List<FutureTask<Preparation>> tasks = prepareAll(build, config, files);
+                List<Preparation> preparations = new ArrayList<Preparation>();
+                try {
+                    for (FutureTask<Preparation> task : tasks) {
+                        Preparation preparation = getPreparation(task);
+                        for (String message : preparation.messages) {
+                            listener.getLogger().println(message);
                         }
+                        if (preparation.failed) {
+                            build.setResult(Result.FAILURE);
+                            return true;
+                        }
+                        preparations.add(preparation);
+                    }
+                } finally {
+                    for (FutureTask<Preparation> task : tasks) {
+                        task.cancel(true);
                     }
+                }
 
-                    listener.getLogger().println(file);
-                    docList.add(new ArtifactsDocLinksDocument(
+                for (Preparation preparation : preparations) {
+                    String file = preparation.file;
+                    ArtifactsDocLinksDocument doc = new ArtifactsDocLinksDocument(
                             String.format("%d", docList.size() + 1),
                             file,
                             (files.size() <= 1) ? config.getTitle() : String.format("%s(%s)", config.getTitle(), file),
                             config.getInitialPath(),
-                            config.getIndexFile()));
+                            config.getIndexFile());
+                    doc.setManifest(preparation.manifest);
+                    docList.add(doc);
                 }
             }
         }
@@ -134,6 +197,174 @@ public class ArtifactsDocLinksPublisher extends Recorder {
         return true;
     }
 
+    /**
+     * Starts preparing artifacts to serve in parallel.
+     *
+     * @param build
+     * @param config
+     * @param files
+     * @return preparations in the order of files.
+     */
+    private List<FutureTask<Preparation>> prepareAll(
+            final AbstractBuild<?, ?> build, final ArtifactsDocLinksConfig config, Collection<String> files) {
+        List<FutureTask<Preparation>> preparations = new ArrayList<FutureTask<Preparation>>();
+        for (final String file : files) {
+            preparations.add(new FutureTask<Preparation>(new Callable<Preparation>() {
+                @Override
+                public Preparation call() throws IOException {
+                    return prepare(build, config, file);
+                }
+            }));
+        }
+
+        int threads = Math.min(PUBLISH_THREADS, preparations.size());
+        if (threads > 1) {
+            ExecutorService executor = Executors.newFixedThreadPool(
+                    threads,
+                    new NamingThreadFactory(new DaemonThreadFactory(), ArtifactsDocLinksPublisher.class.getName()));
+            for (FutureTask<Preparation> preparation : preparations) {
+                executor.execute(preparation);
+            }
+            // Threads exit after running the submitted preparations.
+            executor.shutdown();
+        }
+        return preparations;
+    }
+
+    /**
+     * Waits for the preparation of an artifact.
+     *
+     * Runs the preparation in the current thread if no worker has started it yet,
+     * so artifacts are also prepared one by one when not parallelized.
+     *
+     * @param task
+     * @return the result of the preparation.
+     * @throws InterruptedException
+     * @throws IOException
+     */
+    private static Preparation getPreparation(FutureTask<Preparation> task) throws InterruptedException, IOException {
+        task.run();
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    /**
+     * Prepares an artifact to serve.
+     *
+     * Converts a tar archive, tests the archive is a zip file, and writes the index, the precompressed archive and the search index.
+     * The index is also used to record {@link ArtifactsDocLinksManifest}
+     * and to verify the initial path and the index file.
+     *
+     * @param build
+     * @param config
+     * @param file the path to the artifact relative to the artifacts directory.
+     * @return the result.
+     * @throws IOException
+     */
+    private Preparation prepare(AbstractBuild<?, ?> build, ArtifactsDocLinksConfig config, String file)
+            throws IOException {
+        Preparation preparation = new Preparation(file);
+        File archive = ArtifactsDocLinksDocument.getArchiveFile(build, file);
+        if (TarArchive.isTar(file)) {
+            try {
+                TarArchive.convert(
+                        ArtifactFileCache.get().getFile(ArtifactsDocLinksDocument.getArtifact(build, file)),
+                        archive);
+            } catch (ZipException e) {
+                preparation.fail(String.format("ERROR: %s seems not a tar file", file));
+                return preparation;
+            }
+        }
+
+        ZipEntryIndexFile index = null;
+        try {
+            // Parsing the central directory also tests the archive is a zip file.
+            File indexFile = ArtifactsDocLinksDocument.getEntryIndexFile(build, file);
+            ZipEntryIndexFile.write(archive, indexFile);
+            index = ZipEntryIndexFile.open(indexFile, archive);
+        } catch (ZipException e) {
+            preparation.fail(String.format("ERROR: %s seems not a zip file", file));
+            return preparation;
+        } catch (IOException e) {
+            // Documents are still served without the index.
+            preparation.messages.add(String.format("WARNING: Failed to index %s: %s", file, e.getMessage()));
+        }
+        if (index == null) {
+            try {
+                index = ZipEntryIndexFile.build(archive);
+            } catch (ZipException e) {
+                preparation.fail(String.format("ERROR: %s seems not a zip file", file));
+                return preparation;
+            }
+        }
+        String[] indexFiles = ArtifactsDocLinksDocument.getIndexFiles(config.getIndexFile());
+        preparation.manifest = ArtifactsDocLinksManifest.of(index, config.getInitialPath(), indexFiles);
+        if (preparation.manifest.getLandingEntry() == null) {
+            // Served documents are not affected, but links to them are broken.
+            preparation.messages.add(String.format(
+                    "WARNING: Neither the initial path '%s' nor the index file %s is found in %s",
+                    StringUtils.defaultString(config.getInitialPath()),
+                    StringUtils.join(indexFiles, ","),
+                    file));
+        }
+
+        if (isPrecompress()) {
+            try {
+                File companion = ArtifactsDocLinksDocument.getPrecompressedFile(build, file);
+                PrecompressedArchive.write(archive, companion);
+                ZipEntryIndexFile.write(companion, ArtifactsDocLinksDocument.getPrecompressedIndexFile(build, file));
+            } catch (IOException e) {
+                // Documents are still served without precompressed files.
+                preparation.messages.add(String.format("WARNING: Failed to precompress %s: %s", file, e.getMessage()));
+            }
+        }
+
+        if (isSearchIndex()) {
+            try {
+                SearchIndexFile.write(archive, ArtifactsDocLinksDocument.getSearchIndexFile(build, file));
+            } catch (IOException e) {
+                // Documents are still served, but not searchable.
+                preparation.messages.add(
+                        String.format("WARNING: Failed to index texts in %s: %s", file, e.getMessage()));
+            }
+        }
+
+        preparation.messages.add(file);
+        return preparation;
+    }
+
+    /**
+     * The result of preparing an artifact, logged in the order of artifacts.
+     */
+    private static final class Preparation {
+        private final String file;
+        private final List<String> messages = new ArrayList<String>();
+        private ArtifactsDocLinksManifest manifest;
+        private boolean failed;
+
+        private Preparation(String file) {
+            this.file = file;
+        }
+
+        private void fail(String message) {
+            messages.add(message);
+            failed = true;
+        }
+    }
+
     /**
      * @param project
      * @return
@@ -0,0 +1,387 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import jenkins.util.SystemProperties;
+import jenkins.util.Timer;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Sends a large entry with non-blocking servlet I/O.
+ *
+ * Sending a large entry to a slow client holds a request thread for a long time,
+ * and many of them can exhaust the request threads of the controller.
+ * With this writer, the request thread only looks up the entry and sets headers,
+ * and the contents are written by the container when the client can receive more.
+ *
+ * The transfer is aborted when no data can be written for {@link #WRITE_TIMEOUT} milliseconds.
+ * The source is read and closed under {@link #sourceLock},
+ * as the watchdog can abort the transfer while the container thread is reading it.
+ */
+final class AsyncEntryWriter implements WriteListener, AsyncListener {
+    private static final Logger LOGGER = Logger.getLogger(AsyncEntryWriter.class.getName());
+
+    /**
+     * Entries of this size or larger are sent asynchronously. Negative to disable.
+     */
+    static final long ASYNC_THRESHOLD =
+            SystemProperties.getLong(AsyncEntryWriter.class.getName() + ".threshold", 1024L * 1024);
+
+    /**
+     * Milliseconds to wait for the client to receive more data.
+     */
+    static final long WRITE_TIMEOUT =
+            SystemProperties.getLong(AsyncEntryWriter.class.getName() + ".writeTimeout", 60 * 1000L);
+
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final AsyncContext context;
+    private final ServletOutputStream out;
+    private final Source source;
+    private final byte[] buf = new byte[CHUNK_SIZE];
+    private final AtomicBoolean finished = new AtomicBoolean(false);
+    private final Object sourceLock = new Object();
+    /**
+     * Guarded by {@link #sourceLock}.
+     */
+    private boolean sourceClosed = false;
+    private volatile long lastWritten = System.currentTimeMillis();
+    private volatile ScheduledFuture<?> watchdog;
+
+    private AsyncEntryWriter(AsyncContext context, ServletOutputStream out, Source source) {
+        this.context = context;
+        this.out = out;
+        this.source = source;
+    }
+
+    /**
+     * @param req
+     * @param length bytes to send.
+     * @return whether the response should be sent asynchronously.
+     */
+    static boolean isApplicable(StaplerRequest req, long length) {
+        return ASYNC_THRESHOLD >= 0
+                && length >= ASYNC_THRESHOLD
+                && !ZipEntryServer.isHead(req)
+                && req.isAsyncSupported();
+    }
+
+    /**
+     * Starts sending contents.
+     *
+     * Headers must be set before.
+     * The source is closed when finished, even if failed.
+     *
+     * @param req
+     * @param rsp
+     * @param source the contents to send.
+     * @throws IOException
+     */
+    static void start(StaplerRequest req, StaplerResponse rsp, Source source) throws IOException {
+        AsyncEntryWriter writer;
+        try {
+            AsyncContext context = req.startAsync();
+            // Timeouts are handled by the watchdog, as the transfer of a large entry can take long.
+            context.setTimeout(0);
+            writer = new AsyncEntryWriter(context, rsp.getOutputStream(), source);
+            context.addListener(writer);
+        } catch (IOException e) {
+            closeQuietly(source);
+            throw e;
+        } catch (RuntimeException e) {
+            closeQuietly(source);
+            throw e;
+        }
+        if (WRITE_TIMEOUT > 0) {
+            long interval = Math.max(WRITE_TIMEOUT / 4, 1000L);
+            writer.watchdog = Timer.get()
+                    .scheduleWithFixedDelay(
+                            new Runnable() {
+                                @Override
+                                public void run() {
+                                    writer.checkTimeout();
+                                }
+                            },
+                            interval,
+                            interval,
+                            TimeUnit.MILLISECONDS);
+        }
+        writer.out.setWriteListener(writer);
+    }
+
+    @Override
+    public void onWritePossible() throws IOException {
+        try {
+            while (!finished.get() && out.isReady()) {
+                int n;
+                synchronized (sourceLock) {
+                    if (sourceClosed) {
+                        return;
+                    }
+                    n = source.read(buf);
+                }
+                if (n < 0) {
+                    finish();
+                    return;
+                }
+                out.write(buf, 0, n);
+                lastWritten = System.currentTimeMillis();
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to send an entry", e);
+            finish();
+        }
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        LOGGER.log(Level.FINE, "Failed to send an entry", t);
+        finish();
+    }
+
+    @Override
+    public void onComplete(AsyncEvent event) {
+        finish();
+    }
+
+    @Override
+    public void onTimeout(AsyncEvent event) {
+        finish();
+    }
+
+    @Override
+    public void onError(AsyncEvent event) {
+        onError(event.getThrowable());
+    }
+
+    @Override
+    public void onStartAsync(AsyncEvent event) {}
+
+    private void checkTimeout() {
+        if (System.currentTimeMillis() - lastWritten > WRITE_TIMEOUT) {
+            LOGGER.fine("Aborted sending an entry as the client does not receive data");
+            finish();
+        }
+    }
+
+    private void finish() {
+        if (!finished.compareAndSet(false, true)) {
+            return;
+        }
+        ScheduledFuture<?> watchdog = this.watchdog;
+        if (watchdog != null) {
+            watchdog.cancel(false);
+        }
+        // Waits for the read in progress, not to close the source under it.
+        synchronized (sourceLock) {
+            sourceClosed = true;
+            closeQuietly(source);
+        }
+        try {
+            context.complete();
+        } catch (IllegalStateException e) {
+            // already completed.
+        }
+    }
+
+    private static void closeQuietly(Closeable c) {
+        try {
+            c.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Failed to close", e);
+        }
+    }
+
+    /**
+     * Contents to send.
+     */
+    interface Source extends Closeable {
+        /**
+         * @param buf
+         * @return bytes read. -1 if no more contents.
+         * @throws IOException
+         */
+        int read(byte[] buf) throws IOException;
+    }
+
+    /**
+     * Contents in a file, read with positional reads.
+     */
+    static final class ChannelSource implements Source {
+        private final FileChannel ch;
+        private final Closeable owner;
+        private long position;
+        private final long end;
+
+        /**
+         * @param ch
+         * @param offset
+         * @param length
+         * @param owner closed when finished. may be null.
+         */
+        ChannelSource(FileChannel ch, long offset, long length, Closeable owner) {
+            this.ch = ch;
+            this.owner = owner;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read(byte[] buf) throws IOException {
+            if (position >= end) {
+                return -1;
+            }
+            ByteBuffer dst = ByteBuffer.wrap(buf, 0, (int) Math.min(buf.length, end - position));
+            int n = ch.read(dst, position);
+            if (n < 0) {
+                throw new EOFException(String.format("Unexpected end of archive at %d", position));
+            }
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (owner != null) {
+                owner.close();
+            }
+        }
+    }
+
+    /**
+     * Contents read from a stream.
+     */
+    static final class StreamSource implements Source {
+        private final InputStream is;
+        private final Closeable owner;
+
+        /**
+         * @param is closed when finished.
+         * @param owner closed when finished. may be null.
+         */
+        StreamSource(InputStream is, Closeable owner) {
+            this.is = is;
+            this.owner = owner;
+        }
+
+        @Override
+        public int read(byte[] buf) throws IOException {
+            return is.read(buf);
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                is.close();
+            } finally {
+                if (owner != null) {
+                    owner.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Contents of sources one after another.
+     */
+    static final class SequenceSource implements Source {
+        private final Source[] sources;
+        private int current = 0;
+
+        SequenceSource(Source... sources) {
+            this.sources = sources;
+        }
+
+        @Override
+        public int read(byte[] buf) throws IOException {
+            while (current < sources.length) {
+                int n = sources[current].read(buf);
+                if (n >= 0) {
+                    return n;
+                }
+                ++current;
+            }
+            return -1;
+        }
+
+        @Override
+        public void close() throws IOException {
+            IOException failure = null;
+            for (Source source : sources) {
+                try {
+                    source.close();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Contents in the memory.
+     */
+    static final class BytesSource implements Source {
+        private final byte[] bytes;
+        private int position = 0;
+
+        BytesSource(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read(byte[] buf) {
+            if (position >= bytes.length) {
+                return -1;
+            }
+            int n = Math.min(buf.length, bytes.length - position);
+            System.arraycopy(bytes, position, buf, 0, n);
+            position += n;
+            return n;
+        }
+
+        @Override
+        public void close() {}
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Companion archive holding text files of a document compressed with the best compression.
+ *
+ * Documents are often archived without compression or with poor compression.
+ * Text files are recompressed once when published,
+ * and sent to clients accepting gzip without compressing for each request,
+ * as deflate data in the companion can be sent as gzip streams just like the original archive.
+ *
+ * The companion gets the last modified time of the archive it is written from,
+ * and is used only while the archive has the same time, see {@link #isUpToDate(File, File)}.
+ */
+final class PrecompressedArchive {
+    /**
+     * Files smaller than this are not worth compressing.
+     */
+    static final int MIN_SIZE = 256;
+
+    private static final String[] TEXT_EXTENSIONS = {
+        ".html", ".htm", ".xhtml", ".css", ".js", ".mjs", ".json", ".map", ".xml", ".svg", ".txt", ".md", ".csv",
+    };
+
+    private PrecompressedArchive() {}
+
+    /**
+     * @param name the name of an entry.
+     * @return whether the entry is a text file worth compressing.
+     */
+    static boolean isCompressible(String name) {
+        String lower = name.toLowerCase(Locale.ENGLISH);
+        for (String extension : TEXT_EXTENSIONS) {
+            if (lower.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param companion the companion archive.
+     * @param archive the archive of a document.
+     * @return whether the companion is written from the archive as it is now.
+     */
+    static boolean isUpToDate(File companion, File archive) {
+        return companion.isFile() && companion.lastModified() == archive.lastModified();
+    }
+
+    /**
+     * Writes a companion archive.
+     *
+     * Text files are deflated with the best compression regardless of how they are stored in the archive.
+     * Callers should send an entry from the companion only if it is smaller than the original one.
+     *
+     * @param archive the archive of a document.
+     * @param companion the file to write.
+     * @return the number of entries written.
+     * @throws IOException
+     */
+    static int write(File archive, File companion) throws IOException {
+        File dir = companion.getParentFile();
+        if (dir != null && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException(String.format("Failed to create %s", dir));
+        }
+        File tmp = new File(dir, companion.getName() + ".tmp");
+        int count = 0;
+        ZipFile zip = new ZipFile(archive);
+        try {
+            ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                zos.setLevel(Deflater.BEST_COMPRESSION);
+                byte[] buf = new byte[8192];
+                Enumeration<? extends ZipEntry> entries = zip.entries();
+                while (entries.hasMoreElements()) {
+                    ZipEntry entry = entries.nextElement();
+                    if (entry.isDirectory() || entry.getSize() < MIN_SIZE || !isCompressible(entry.getName())) {
+                        continue;
+                    }
+                    ZipEntry compressed = new ZipEntry(entry.getName());
+                    compressed.setMethod(ZipEntry.DEFLATED);
+                    zos.putNextEntry(compressed);
+                    InputStream is = zip.getInputStream(entry);
+                    try {
+                        int len;
+                        while ((len = is.read(buf)) >= 0) {
+                            zos.write(buf, 0, len);
+                        }
+                    } finally {
+                        is.close();
+                    }
+                    zos.closeEntry();
+                    ++count;
+                }
+            } finally {
+                zos.close();
+            }
+        } finally {
+            zip.close();
+        }
+        if (!tmp.setLastModified(archive.lastModified())) {
+            throw new IOException(String.format("Failed to set the last modified time of %s", tmp));
+        }
+        Files.move(tmp.toPath(), companion.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return count;
+    }
+}
@@ -0,0 +1,151 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import jenkins.util.SystemProperties;
+
+/**
+ * Controller-wide cache of opened {@link SearchIndexFile}.
+ *
+ * Every search queries the indexes of all documents of a build,
+ * so reading them for each query is expensive.
+ * Indexes are keyed by the path, the last modified time and the size of the file,
+ * and a rewritten index never hits a stale one.
+ *
+ * Indexes are immutable and shared among searches without reference counting.
+ * Indexes are dropped in least recently used order when they exceed {@link #MAX_BYTES} in total.
+ */
+final class SearchIndexCache {
+    /**
+     * The total size in bytes of indexes kept in memory.
+     */
+    static final long MAX_BYTES =
+            SystemProperties.getLong(SearchIndexCache.class.getName() + ".maxBytes", 64L * 1024 * 1024);
+
+    private static final SearchIndexCache INSTANCE = new SearchIndexCache(MAX_BYTES);
+
+    /**
+     * @return the cache shared in the controller.
+     */
+    static SearchIndexCache get() {
+        return INSTANCE;
+    }
+
+    private final long maxBytes;
+
+    /**
+     * Indexes in access order.
+     */
+    private final LinkedHashMap<Key, SearchIndexFile> cache = new LinkedHashMap<Key, SearchIndexFile>(16, 0.75f, true);
+
+    private long bytes;
+
+    /**
+     * @param maxBytes
+     */
+    SearchIndexCache(long maxBytes) {
+        this.maxBytes = Math.max(maxBytes, 0);
+    }
+
+    /**
+     * Reads an index, or reuses an index already read.
+     *
+     * @param indexFile the index file.
+     * @return the index. null if not exists or not valid.
+     * @throws IOException
+     */
+    SearchIndexFile open(File indexFile) throws IOException {
+        Key key = new Key(indexFile);
+        synchronized (this) {
+            SearchIndexFile index = cache.get(key);
+            if (index != null) {
+                return index;
+            }
+        }
+
+        // Read outside the lock not to block searches in other documents.
+        SearchIndexFile index = SearchIndexFile.open(indexFile);
+        if (index == null || index.getByteSize() > maxBytes) {
+            return index;
+        }
+        synchronized (this) {
+            SearchIndexFile current = cache.get(key);
+            if (current != null) {
+                // read concurrently.
+                return current;
+            }
+            cache.put(key, index);
+            bytes += index.getByteSize();
+            for (Iterator<SearchIndexFile> it = cache.values().iterator(); bytes > maxBytes && it.hasNext(); ) {
+                bytes -= it.next().getByteSize();
+                it.remove();
+            }
+        }
+        return index;
+    }
+
+    /**
+     * @return the number of indexes in the cache.
+     */
+    synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * Identifies the contents of an index file.
+     */
+    private static final class Key {
+        private final String path;
+        private final long lastModified;
+        private final long length;
+
+        public Key(File file) {
+            this.path = file.getAbsolutePath();
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return path.equals(other.path) && lastModified == other.lastModified && length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = path.hashCode();
+            hash = hash * 31 + Long.hashCode(lastModified);
+            hash = hash * 31 + Long.hashCode(length);
+            return hash;
+        }
+    }
+}
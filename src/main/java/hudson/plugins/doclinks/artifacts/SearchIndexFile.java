@@ -0,0 +1,654 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import jenkins.util.SystemProperties;
+
+/**
+ * Full-text index of text entries in an archive persisted next to the build records.
+ *
+ * Written when the archive is published,
+ * and read into the heap when searching documents without opening the archive.
+ * Opened indexes are kept in {@link SearchIndexCache}.
+ * Terms are sorted and looked up with binary search,
+ * and matching entries are ranked with BM25.
+ *
+ * Texts are split into runs of letters and digits, and lower-cased.
+ * Runs of CJK characters are split into overlapping bigrams as they have no spaces between words.
+ *
+ * The file consists of a header, fixed-size records of entries, terms and postings, and the pool of strings:
+ * <pre>
+ * header (32 bytes):
+ *   int magic, int version, int entry count, int term count,
+ *   int posting count, int reserved, long total number of tokens
+ * entry (20 bytes):
+ *   int offset of the name, int length of the name,
+ *   int offset of the title, int length of the title, int number of tokens
+ * term (16 bytes):
+ *   int offset of the term, int length of the term,
+ *   int position of the first posting, int number of postings
+ * posting (8 bytes):
+ *   int position of the entry, int term frequency
+ * strings:
+ *   names, titles and terms encoded in UTF-8
+ * </pre>
+ */
+public final class SearchIndexFile {
+    private static final int MAGIC = 0x444C5358; // "DLSX"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int ENTRY_SIZE = 20;
+    private static final int TERM_SIZE = 16;
+    private static final int POSTING_SIZE = 8;
+
+    private static final double K1 = 1.2;
+    private static final double B = 0.75;
+
+    /**
+     * Entries larger than this are not indexed.
+     */
+    public static final long MAX_ENTRY_SIZE =
+            SystemProperties.getLong(SearchIndexFile.class.getName() + ".maxEntrySize", 4L * 1024 * 1024);
+
+    /**
+     * Terms longer than this are not indexed.
+     */
+    static final int MAX_TERM_LENGTH = 32;
+
+    private static final String[] HTML_EXTENSIONS = {".html", ".htm", ".xhtml"};
+    private static final String[] TEXT_EXTENSIONS = {".txt", ".md", ".rst"};
+
+    private final ByteBuffer buf;
+    private final int entryCount;
+    private final int termCount;
+    private final long totalTokens;
+    private final int termsOffset;
+    private final int postingsOffset;
+    private final int stringsOffset;
+
+    private SearchIndexFile(ByteBuffer buf, int entryCount, int termCount, int postingCount, long totalTokens) {
+        this.buf = buf;
+        this.entryCount = entryCount;
+        this.termCount = termCount;
+        this.totalTokens = totalTokens;
+        this.termsOffset = HEADER_SIZE + ENTRY_SIZE * entryCount;
+        this.postingsOffset = termsOffset + TERM_SIZE * termCount;
+        this.stringsOffset = postingsOffset + POSTING_SIZE * postingCount;
+    }
+
+    /**
+     * @param name the name of an entry.
+     * @return true if the entry is indexed.
+     */
+    public static boolean isIndexable(String name) {
+        return isHtml(name) || hasExtension(name, TEXT_EXTENSIONS);
+    }
+
+    private static boolean isHtml(String name) {
+        return hasExtension(name, HTML_EXTENSIONS);
+    }
+
+    private static boolean hasExtension(String name, String[] extensions) {
+        String lowerName = name.toLowerCase(Locale.ENGLISH);
+        for (String extension : extensions) {
+            if (lowerName.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Growable list of postings of a term.
+     */
+    private static final class Postings {
+        private int[] data = new int[4];
+        private int size;
+
+        public void add(int entry, int frequency) {
+            if (size + 2 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = entry;
+            data[size++] = frequency;
+        }
+    }
+
+    /**
+     * Writes the index of an archive.
+     *
+     * @param archive the archive to index.
+     * @param indexFile the file to write the index to.
+     * @throws java.util.zip.ZipException the archive does not seem a zip file.
+     * @throws IOException
+     */
+    public static void write(File archive, File indexFile) throws IOException {
+        List<String> names = new ArrayList<String>();
+        List<String> titles = new ArrayList<String>();
+        List<Integer> tokenCounts = new ArrayList<Integer>();
+        TreeMap<String, Postings> terms = new TreeMap<String, Postings>();
+        long totalTokens = 0;
+
+        ZipFile zip = new ZipFile(archive);
+        try {
+            Enumeration<? extends ZipEntry> entries = zip.entries();
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (entry.isDirectory() || !isIndexable(entry.getName()) || entry.getSize() > MAX_ENTRY_SIZE) {
+                    continue;
+                }
+                String content = read(zip, entry);
+                if (content == null) {
+                    continue;
+                }
+                String title = null;
+                if (isHtml(entry.getName())) {
+                    title = extractTitle(content);
+                    content = extractText(content);
+                }
+
+                List<String> tokens = new ArrayList<String>();
+                tokenize(content, tokens);
+                if (tokens.isEmpty()) {
+                    continue;
+                }
+                Map<String, int[]> frequencies = new HashMap<String, int[]>();
+                for (String token : tokens) {
+                    int[] frequency = frequencies.get(token);
+                    if (frequency == null) {
+                        frequency = new int[1];
+                        frequencies.put(token, frequency);
+                    }
+                    ++frequency[0];
+                }
+                int position = names.size();
+                for (Map.Entry<String, int[]> frequency : frequencies.entrySet()) {
+                    Postings postings = terms.get(frequency.getKey());
+                    if (postings == null) {
+                        postings = new Postings();
+                        terms.put(frequency.getKey(), postings);
+                    }
+                    postings.add(position, frequency.getValue()[0]);
+                }
+                names.add(entry.getName());
+                titles.add((title != null) ? title : "");
+                tokenCounts.add(tokens.size());
+                totalTokens += tokens.size();
+            }
+        } finally {
+            zip.close();
+        }
+
+        File dir = indexFile.getParentFile();
+        if (dir != null && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException(String.format("Failed to create %s", dir));
+        }
+        File tmp = new File(dir, indexFile.getName() + ".tmp");
+        DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            int postingCount = 0;
+            for (Postings postings : terms.values()) {
+                postingCount += postings.size / 2;
+            }
+            os.writeInt(MAGIC);
+            os.writeInt(VERSION);
+            os.writeInt(names.size());
+            os.writeInt(terms.size());
+            os.writeInt(postingCount);
+            os.writeInt(0);
+            os.writeLong(totalTokens);
+
+            ByteArrayOutputStream strings = new ByteArrayOutputStream();
+            for (int i = 0; i < names.size(); ++i) {
+                writeString(os, strings, names.get(i));
+                writeString(os, strings, titles.get(i));
+                os.writeInt(tokenCounts.get(i));
+            }
+            int position = 0;
+            for (Map.Entry<String, Postings> term : terms.entrySet()) {
+                writeString(os, strings, term.getKey());
+                os.writeInt(position);
+                os.writeInt(term.getValue().size / 2);
+                position += term.getValue().size / 2;
+            }
+            for (Postings postings : terms.values()) {
+                for (int i = 0; i < postings.size; ++i) {
+                    os.writeInt(postings.data[i]);
+                }
+            }
+            strings.writeTo(os);
+        } finally {
+            os.close();
+        }
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void writeString(DataOutputStream os, ByteArrayOutputStream strings, String value)
+            throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        os.writeInt(strings.size());
+        os.writeInt(bytes.length);
+        strings.write(bytes);
+    }
+
+    private static String read(ZipFile zip, ZipEntry entry) throws IOException {
+        InputStream is = zip.getInputStream(entry);
+        if (is == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buf = new byte[8192];
+            int len;
+            while ((len = is.read(buf)) >= 0) {
+                if (os.size() + len > MAX_ENTRY_SIZE) {
+                    return null;
+                }
+                os.write(buf, 0, len);
+            }
+            return new String(os.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Reads the index.
+     *
+     * @param indexFile the index file.
+     * @return the index. null if not exists or not valid.
+     * @throws IOException
+     */
+    public static SearchIndexFile open(File indexFile) throws IOException {
+        if (!indexFile.isFile() || indexFile.length() < HEADER_SIZE || indexFile.length() > Integer.MAX_VALUE) {
+            return null;
+        }
+        ByteBuffer buf;
+        FileChannel ch = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+        try {
+            // Read into the heap not to keep mappings no one can release.
+            buf = ByteBuffer.allocate((int) ch.size());
+            while (buf.hasRemaining() && ch.read(buf) >= 0) {
+                // read to the end.
+            }
+            if (buf.hasRemaining()) {
+                // truncated while reading.
+                return null;
+            }
+        } finally {
+            ch.close();
+        }
+
+        if (buf.getInt(0) != MAGIC || buf.getInt(4) != VERSION) {
+            return null;
+        }
+        int entryCount = buf.getInt(8);
+        int termCount = buf.getInt(12);
+        int postingCount = buf.getInt(16);
+        long totalTokens = buf.getLong(24);
+        if (entryCount < 0
+                || termCount < 0
+                || postingCount < 0
+                || HEADER_SIZE
+                                + (long) ENTRY_SIZE * entryCount
+                                + (long) TERM_SIZE * termCount
+                                + (long) POSTING_SIZE * postingCount
+                        > buf.capacity()) {
+            return null;
+        }
+        return new SearchIndexFile(buf, entryCount, termCount, postingCount, totalTokens);
+    }
+
+    /**
+     * @return the size of the index in bytes.
+     */
+    long getByteSize() {
+        return buf.capacity();
+    }
+
+    /**
+     * @return the number of indexed entries.
+     */
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * An entry matching a query.
+     */
+    public static final class Hit {
+        private final String name;
+        private final String title;
+        private final double score;
+
+        Hit(String name, String title, double score) {
+            this.name = name;
+            this.title = title;
+            this.score = score;
+        }
+
+        /**
+         * @return the name of the entry.
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the title of the entry. empty if not available.
+         */
+        public String getTitle() {
+            return title;
+        }
+
+        /**
+         * @return the relevance of the entry. higher is better.
+         */
+        public double getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * Searches entries containing all terms in a query.
+     *
+     * @param query the query.
+     * @param maxHits the maximum number of hits to return.
+     * @return matching entries in the order of relevance.
+     */
+    public List<Hit> search(String query, int maxHits) {
+        List<String> tokens = new ArrayList<String>();
+        tokenize(query, tokens);
+        Set<String> queryTerms = new LinkedHashSet<String>(tokens);
+        if (queryTerms.isEmpty() || entryCount == 0) {
+            return Collections.emptyList();
+        }
+
+        double averageTokens = (double) totalTokens / entryCount;
+        Map<Integer, double[]> scores = null;
+        for (String queryTerm : queryTerms) {
+            int term = findTerm(queryTerm);
+            if (term < 0) {
+                return Collections.emptyList();
+            }
+            int first = buf.getInt(termsOffset + TERM_SIZE * term + 8);
+            int count = buf.getInt(termsOffset + TERM_SIZE * term + 12);
+            double idf = Math.log(1.0 + (entryCount - count + 0.5) / (count + 0.5));
+
+            Map<Integer, double[]> matched = new HashMap<Integer, double[]>();
+            for (int i = 0; i < count; ++i) {
+                int posting = postingsOffset + POSTING_SIZE * (first + i);
+                int entry = buf.getInt(posting);
+                int frequency = buf.getInt(posting + 4);
+                double[] score = (scores != null) ? scores.get(entry) : new double[1];
+                if (score == null) {
+                    // Not containing the previous terms.
+                    continue;
+                }
+                int tokenCount = buf.getInt(HEADER_SIZE + ENTRY_SIZE * entry + 16);
+                score[0] += idf
+                        * frequency
+                        * (K1 + 1)
+                        / (frequency + K1 * (1 - B + B * tokenCount / averageTokens));
+                matched.put(entry, score);
+            }
+            scores = matched;
+            if (scores.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+
+        List<Map.Entry<Integer, double[]>> ranked = new ArrayList<Map.Entry<Integer, double[]>>(scores.entrySet());
+        Collections.sort(ranked, new Comparator<Map.Entry<Integer, double[]>>() {
+            @Override
+            public int compare(Map.Entry<Integer, double[]> o1, Map.Entry<Integer, double[]> o2) {
+                int c = Double.compare(o2.getValue()[0], o1.getValue()[0]);
+                return (c != 0) ? c : o1.getKey().compareTo(o2.getKey());
+            }
+        });
+        List<Hit> hits = new ArrayList<Hit>();
+        for (Map.Entry<Integer, double[]> entry : ranked.subList(0, Math.min(maxHits, ranked.size()))) {
+            int record = HEADER_SIZE + ENTRY_SIZE * entry.getKey();
+            hits.add(new Hit(getString(record), getString(record + 8), entry.getValue()[0]));
+        }
+        return hits;
+    }
+
+    /**
+     * @param term
+     * @return the position of the term. -1 if not found.
+     */
+    private int findTerm(String term) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int c = getString(termsOffset + TERM_SIZE * mid).compareTo(term);
+            if (c < 0) {
+                low = mid + 1;
+            } else if (c > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param record the position of the pair of the offset and the length of a string.
+     * @return the string.
+     */
+    private String getString(int record) {
+        byte[] bytes = new byte[buf.getInt(record + 4)];
+        ByteBuffer dup = buf.duplicate();
+        dup.position(stringsOffset + buf.getInt(record));
+        dup.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Splits a text into terms.
+     *
+     * @param text
+     * @param tokens the list to add terms to.
+     */
+    static void tokenize(String text, List<String> tokens) {
+        int length = text.length();
+        int pos = 0;
+        while (pos < length) {
+            int c = text.codePointAt(pos);
+            if (!Character.isLetterOrDigit(c)) {
+                pos += Character.charCount(c);
+                continue;
+            }
+            int start = pos;
+            boolean cjk = isCjk(c);
+            while (pos < length) {
+                c = text.codePointAt(pos);
+                if (!Character.isLetterOrDigit(c) || isCjk(c) != cjk) {
+                    break;
+                }
+                pos += Character.charCount(c);
+            }
+            String word = text.substring(start, pos).toLowerCase(Locale.ENGLISH);
+            if (!cjk) {
+                if (word.length() <= MAX_TERM_LENGTH) {
+                    tokens.add(word);
+                }
+                continue;
+            }
+            if (word.codePointCount(0, word.length()) == 1) {
+                tokens.add(word);
+                continue;
+            }
+            for (int i = 0; i < word.length(); ) {
+                int next = word.offsetByCodePoints(i, 1);
+                if (next >= word.length()) {
+                    break;
+                }
+                tokens.add(word.substring(i, word.offsetByCodePoints(next, 1)));
+                i = next;
+            }
+        }
+    }
+
+    private static boolean isCjk(int c) {
+        Character.UnicodeScript script = Character.UnicodeScript.of(c);
+        return script == Character.UnicodeScript.HAN
+                || script == Character.UnicodeScript.HIRAGANA
+                || script == Character.UnicodeScript.KATAKANA
+                || script == Character.UnicodeScript.HANGUL;
+    }
+
+    /**
+     * @param html
+     * @return the contents of the title element. null if not exists.
+     */
+    static String extractTitle(String html) {
+        String lowerHtml = html.toLowerCase(Locale.ENGLISH);
+        int start = lowerHtml.indexOf("<title");
+        if (start < 0) {
+            return null;
+        }
+        start = lowerHtml.indexOf('>', start);
+        int end = lowerHtml.indexOf("</title", start + 1);
+        if (start < 0 || end < 0) {
+            return null;
+        }
+        return decodeEntities(html.substring(start + 1, end)).replaceAll("\\s+", " ").trim();
+    }
+
+    /**
+     * Extracts texts from HTML, skipping tags, comments, scripts and styles.
+     *
+     * @param html
+     * @return the texts.
+     */
+    static String extractText(String html) {
+        String lowerHtml = html.toLowerCase(Locale.ENGLISH);
+        StringBuilder sb = new StringBuilder(html.length());
+        int pos = 0;
+        while (pos < html.length()) {
+            int tag = html.indexOf('<', pos);
+            if (tag < 0) {
+                sb.append(decodeEntities(html.substring(pos)));
+                break;
+            }
+            sb.append(decodeEntities(html.substring(pos, tag))).append(' ');
+            if (lowerHtml.startsWith("<!--", tag)) {
+                pos = skipTo(lowerHtml, "-->", tag);
+            } else if (lowerHtml.startsWith("<script", tag)) {
+                pos = skipTo(lowerHtml, "</script>", tag);
+            } else if (lowerHtml.startsWith("<style", tag)) {
+                pos = skipTo(lowerHtml, "</style>", tag);
+            } else {
+                pos = skipTo(lowerHtml, ">", tag);
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int skipTo(String html, String end, int from) {
+        int pos = html.indexOf(end, from + 1);
+        return (pos >= 0) ? pos + end.length() : html.length();
+    }
+
+    private static String decodeEntities(String text) {
+        if (text.indexOf('&') < 0) {
+            return text;
+        }
+        StringBuilder sb = new StringBuilder(text.length());
+        int pos = 0;
+        while (pos < text.length()) {
+            int amp = text.indexOf('&', pos);
+            int semicolon = (amp >= 0) ? text.indexOf(';', amp) : -1;
+            if (amp < 0 || semicolon < 0 || semicolon - amp > 10) {
+                sb.append(text, pos, (amp >= 0) ? amp + 1 : text.length());
+                pos = (amp >= 0) ? amp + 1 : text.length();
+                continue;
+            }
+            sb.append(text, pos, amp);
+            String entity = text.substring(amp + 1, semicolon);
+            String decoded = decodeEntity(entity);
+            sb.append((decoded != null) ? decoded : text.substring(amp, semicolon + 1));
+            pos = semicolon + 1;
+        }
+        return sb.toString();
+    }
+
+    private static String decodeEntity(String entity) {
+        if ("amp".equals(entity)) {
+            return "&";
+        } else if ("lt".equals(entity)) {
+            return "<";
+        } else if ("gt".equals(entity)) {
+            return ">";
+        } else if ("quot".equals(entity)) {
+            return "\"";
+        } else if ("apos".equals(entity)) {
+            return "'";
+        } else if ("nbsp".equals(entity)) {
+            return " ";
+        } else if (entity.startsWith("#")) {
+            try {
+                int c = (entity.startsWith("#x") || entity.startsWith("#X"))
+                        ? Integer.parseInt(entity.substring(2), 16)
+                        : Integer.parseInt(entity.substring(1));
+                return Character.isValidCodePoint(c) ? new String(Character.toChars(c)) : null;
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Allocates fixed size chunks from direct buffers outside the Java heap.
+ *
+ * Memory is reserved in slabs of the same size.
+ * Each slab is assigned to a size class (powers of two from {@link #MIN_CHUNK_SIZE} to the slab size)
+ * and split into chunks of that size.
+ * Freed chunks are reused for the same class,
+ * and a slab whose chunks are all freed can be reassigned to another class,
+ * either when a class runs out of chunks or explicitly with {@link #reassign(Chunk, int)}.
+ *
+ * Not thread safe.
+ */
+final class SlabAllocator {
+    /**
+     * The smallest chunk.
+     */
+    static final int MIN_CHUNK_SIZE = 1024;
+
+    private final int slabSize;
+    private final int maxSlabs;
+    private final List<Slab> slabs = new ArrayList<Slab>();
+    private final List<ArrayDeque<Chunk>> freeLists = new ArrayList<ArrayDeque<Chunk>>();
+    private long usedBytes = 0;
+
+    /**
+     * @param maxBytes bytes reserved at most.
+     * @param slabSize bytes of a slab. rounded up to a power of two.
+     */
+    SlabAllocator(long maxBytes, int slabSize) {
+        this.slabSize = Math.max(Integer.highestOneBit(Math.max(slabSize, MIN_CHUNK_SIZE) - 1) << 1, MIN_CHUNK_SIZE);
+        this.maxSlabs = (int) Math.min(Math.max(maxBytes, 0) / this.slabSize, Integer.MAX_VALUE);
+        for (int size = MIN_CHUNK_SIZE; size <= this.slabSize; size <<= 1) {
+            freeLists.add(new ArrayDeque<Chunk>());
+        }
+    }
+
+    /**
+     * @return the largest chunk.
+     */
+    int getSlabSize() {
+        return slabSize;
+    }
+
+    /**
+     * @return bytes reserved for slabs.
+     */
+    long getReservedBytes() {
+        return (long) slabs.size() * slabSize;
+    }
+
+    /**
+     * @return bytes of chunks in use.
+     */
+    long getUsedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * @param size bytes to store.
+     * @return the size class for the size. -1 if larger than a slab.
+     */
+    int classOf(int size) {
+        if (size < 0 || size > slabSize) {
+            return -1;
+        }
+        int cls = 0;
+        for (int chunkSize = MIN_CHUNK_SIZE; chunkSize < size; chunkSize <<= 1) {
+            ++cls;
+        }
+        return cls;
+    }
+
+    /**
+     * @param cls
+     * @return bytes of chunks of the class.
+     */
+    int chunkSizeOf(int cls) {
+        return MIN_CHUNK_SIZE << cls;
+    }
+
+    /**
+     * Allocates a chunk.
+     *
+     * @param cls the size class.
+     * @return the chunk. null if no memory is available for the class.
+     */
+    Chunk allocate(int cls) {
+        ArrayDeque<Chunk> freeList = freeLists.get(cls);
+        if (freeList.isEmpty() && !assignSlab(cls)) {
+            return null;
+        }
+        Chunk chunk = freeList.pop();
+        chunk.slab.used++;
+        usedBytes += chunk.buffer.capacity();
+        return chunk;
+    }
+
+    /**
+     * Returns a chunk for reuse.
+     *
+     * @param chunk
+     */
+    void free(Chunk chunk) {
+        chunk.slab.used--;
+        usedBytes -= chunk.buffer.capacity();
+        freeLists.get(chunk.slab.cls).push(chunk);
+    }
+
+    /**
+     * @param cls
+     * @return the number of slabs assigned to the class.
+     */
+    int getSlabCount(int cls) {
+        int count = 0;
+        for (Slab slab : slabs) {
+            if (slab.cls == cls) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @param except the class not to return.
+     * @return the class with the most slabs. -1 if no slab is assigned to other classes.
+     */
+    int getLargestClass(int except) {
+        int largest = -1;
+        int largestCount = 0;
+        for (int cls = 0; cls < freeLists.size(); ++cls) {
+            int count = getSlabCount(cls);
+            if (cls != except && count > largestCount) {
+                largest = cls;
+                largestCount = count;
+            }
+        }
+        return largest;
+    }
+
+    /**
+     * @param a
+     * @param b
+     * @return whether the chunks are parts of the same slab.
+     */
+    static boolean isSameSlab(Chunk a, Chunk b) {
+        return a.slab == b.slab;
+    }
+
+    /**
+     * Reassigns the slab of a chunk to another class.
+     *
+     * @param chunk a chunk of the slab. must be freed.
+     * @param cls the new class.
+     * @return false if any chunk of the slab is still in use.
+     */
+    boolean reassign(Chunk chunk, int cls) {
+        if (chunk.slab.used > 0) {
+            return false;
+        }
+        if (chunk.slab.cls != cls) {
+            assign(chunk.slab, cls);
+        }
+        return true;
+    }
+
+    private boolean assignSlab(int cls) {
+        Slab slab = null;
+        if (slabs.size() < maxSlabs) {
+            slab = new Slab(ByteBuffer.allocateDirect(slabSize));
+            slabs.add(slab);
+        } else {
+            // Reuse an empty slab of another class.
+            for (Slab s : slabs) {
+                if (s.used == 0 && s.cls != cls) {
+                    slab = s;
+                    break;
+                }
+            }
+            if (slab == null) {
+                return false;
+            }
+        }
+        assign(slab, cls);
+        return true;
+    }
+
+    private void assign(Slab slab, int cls) {
+        if (slab.cls >= 0) {
+            for (Iterator<Chunk> it = freeLists.get(slab.cls).iterator(); it.hasNext(); ) {
+                if (it.next().slab == slab) {
+                    it.remove();
+                }
+            }
+        }
+
+        slab.cls = cls;
+        int chunkSize = chunkSizeOf(cls);
+        ArrayDeque<Chunk> freeList = freeLists.get(cls);
+        for (int offset = 0; offset + chunkSize <= slabSize; offset += chunkSize) {
+            ByteBuffer buffer = slab.memory.duplicate();
+            buffer.position(offset).limit(offset + chunkSize);
+            freeList.add(new Chunk(slab, buffer.slice()));
+        }
+    }
+
+    private static final class Slab {
+        private final ByteBuffer memory;
+        private int cls = -1;
+        private int used = 0;
+
+        public Slab(ByteBuffer memory) {
+            this.memory = memory;
+        }
+    }
+
+    /**
+     * A part of a slab.
+     */
+    static final class Chunk {
+        private final Slab slab;
+        private final ByteBuffer buffer;
+
+        private Chunk(Slab slab, ByteBuffer buffer) {
+            this.slab = slab;
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return the memory of this chunk. The position and the limit are not shared.
+         */
+        ByteBuffer getBuffer() {
+            return buffer.duplicate();
+        }
+    }
+}
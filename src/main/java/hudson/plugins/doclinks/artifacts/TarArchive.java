@@ -0,0 +1,402 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Converts tar archives (optionally compressed with gzip) to zip archives.
+ *
+ * A gzip stream can be read only from the beginning,
+ * and {@link java.util.zip.Inflater} cannot restart at a bit position in the middle of a stream.
+ * So a tar archive is converted once when published,
+ * into a zip archive where each member is compressed separately and can be read directly.
+ * The converted archive is served just like zip artifacts.
+ */
+final class TarArchive {
+    private static final int BLOCK_SIZE = 512;
+
+    private static final String[] TAR_EXTENSIONS = {".tar", ".tar.gz", ".tgz"};
+
+    private TarArchive() {}
+
+    /**
+     * @param name the name of an artifact.
+     * @return whether the artifact is a tar archive.
+     */
+    static boolean isTar(String name) {
+        String lower = name.toLowerCase(Locale.ENGLISH);
+        for (String extension : TAR_EXTENSIONS) {
+            if (lower.endsWith(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param name the name of an artifact.
+     * @return whether the artifact is compressed with gzip.
+     */
+    static boolean isGzip(String name) {
+        String lower = name.toLowerCase(Locale.ENGLISH);
+        return lower.endsWith(".gz") || lower.endsWith(".tgz");
+    }
+
+    /**
+     * Converts a tar archive to a zip archive.
+     *
+     * Regular files and directories are converted. Links and special files are ignored.
+     *
+     * @param tar the tar archive. Decompressed with gzip if the name ends with .gz or .tgz.
+     * @param zip the zip archive to write.
+     * @return the number of entries written.
+     * @throws ZipException the file is not a tar archive.
+     * @throws IOException
+     */
+    static int convert(File tar, File zip) throws IOException {
+        File dir = zip.getParentFile();
+        if (dir != null && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException(String.format("Failed to create %s", dir));
+        }
+
+        // Later members overwrite earlier ones of the same name in tar, but zip cannot hold both.
+        // Find the last ones first, as a gzip stream can be read only once.
+        final Map<String, Integer> lastMembers = new HashMap<String, Integer>();
+        InputStream is = open(tar);
+        try {
+            readMembers(is, new MemberVisitor() {
+                @Override
+                public long visit(int index, String name, boolean directory, long mtime, long size, InputStream is) {
+                    lastMembers.put(name, index);
+                    return 0;
+                }
+            });
+        } finally {
+            is.close();
+        }
+
+        File tmp = new File(dir, zip.getName() + ".tmp");
+        final int[] count = new int[1];
+        is = open(tar);
+        try {
+            final ZipOutputStream zos = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+            try {
+                final byte[] buf = new byte[64 * 1024];
+                readMembers(is, new MemberVisitor() {
+                    @Override
+                    public long visit(int index, String name, boolean directory, long mtime, long size, InputStream is)
+                            throws IOException {
+                        Integer last = lastMembers.get(name);
+                        if (last == null || last != index) {
+                            return 0;
+                        }
+                        ZipEntry entry = new ZipEntry(name);
+                        if (mtime > 0) {
+                            entry.setTime(mtime * 1000L);
+                        }
+                        zos.putNextEntry(entry);
+                        long remaining = directory ? 0 : size;
+                        while (remaining > 0) {
+                            int n = is.read(buf, 0, (int) Math.min(buf.length, remaining));
+                            if (n < 0) {
+                                throw new EOFException(String.format("Unexpected end of tar archive in %s", name));
+                            }
+                            zos.write(buf, 0, n);
+                            remaining -= n;
+                        }
+                        zos.closeEntry();
+                        ++count[0];
+                        return directory ? 0 : size;
+                    }
+                });
+            } finally {
+                zos.close();
+            }
+        } finally {
+            is.close();
+        }
+        Files.move(tmp.toPath(), zip.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return count[0];
+    }
+
+    private static InputStream open(File tar) throws IOException {
+        InputStream is = new BufferedInputStream(new FileInputStream(tar));
+        if (isGzip(tar.getName())) {
+            try {
+                is = new GZIPInputStream(is, 64 * 1024);
+            } catch (IOException e) {
+                is.close();
+                throw e;
+            }
+        }
+        return is;
+    }
+
+    /**
+     * Receives regular files and directories in a tar archive.
+     */
+    private interface MemberVisitor {
+        /**
+         * @param index the position of the member among regular files and directories.
+         * @param name the normalized name. Ends with "/" for directories.
+         * @param directory
+         * @param mtime the modification time in seconds.
+         * @param size the size of the data.
+         * @param is the stream positioned at the data.
+         * @return bytes of the data read.
+         * @throws IOException
+         */
+        long visit(int index, String name, boolean directory, long mtime, long size, InputStream is)
+                throws IOException;
+    }
+
+    private static void readMembers(InputStream is, MemberVisitor visitor) throws IOException {
+        byte[] header = new byte[BLOCK_SIZE];
+        String longName = null;
+        String paxPath = null;
+        boolean first = true;
+        int index = 0;
+        while (true) {
+            if (!readBlock(is, header)) {
+                if (first) {
+                    throw new ZipException("Empty tar archive");
+                }
+                break;
+            }
+            if (isZeroBlock(header)) {
+                // End of archive.
+                break;
+            }
+            if (!isValidChecksum(header)) {
+                throw new ZipException(first ? "Not a tar archive" : "Broken tar header");
+            }
+            first = false;
+
+            long size = parseOctal(header, 124, 12);
+            char type = (char) header[156];
+            if (type == 'L' || type == 'x') {
+                // GNU long name, or pax extended header for the next member.
+                byte[] data = readData(is, size);
+                if (type == 'L') {
+                    longName = trimNul(new String(data, StandardCharsets.UTF_8));
+                } else {
+                    String path = parsePaxPath(data);
+                    if (path != null) {
+                        paxPath = path;
+                    }
+                }
+                continue;
+            }
+
+            String name = (paxPath != null) ? paxPath : (longName != null) ? longName : getName(header);
+            longName = null;
+            paxPath = null;
+            name = normalize(name);
+
+            boolean directory = type == '5' || (name.endsWith("/") && (type == '0' || type == 0));
+            boolean file = !directory && (type == '0' || type == 0 || type == '7');
+            if (name.length() == 0 || !(directory || file) || name.startsWith("../") || name.contains("/../")) {
+                skip(is, padded(size));
+                continue;
+            }
+            if (directory && !name.endsWith("/")) {
+                name = name + "/";
+            }
+
+            long read = visitor.visit(index++, name, directory, parseOctal(header, 136, 12), size, is);
+            skip(is, padded(size) - read);
+        }
+    }
+
+    private static String getName(byte[] header) {
+        String name = trimNul(new String(header, 0, 100, StandardCharsets.UTF_8));
+        if (new String(header, 257, 5, StandardCharsets.US_ASCII).equals("ustar")) {
+            String prefix = trimNul(new String(header, 345, 155, StandardCharsets.UTF_8));
+            if (prefix.length() > 0) {
+                name = prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    private static String normalize(String name) {
+        while (name.startsWith("./")) {
+            name = name.substring(2);
+        }
+        while (name.startsWith("/")) {
+            name = name.substring(1);
+        }
+        return name.equals(".") ? "" : name;
+    }
+
+    /**
+     * @param data records of a pax extended header: "length key=value\n".
+     * @return the value of "path". null if not specified.
+     */
+    private static String parsePaxPath(byte[] data) {
+        int pos = 0;
+        String path = null;
+        while (pos < data.length) {
+            int space = pos;
+            while (space < data.length && data[space] != ' ') {
+                ++space;
+            }
+            if (space >= data.length) {
+                break;
+            }
+            int length;
+            try {
+                length = Integer.parseInt(new String(data, pos, space - pos, StandardCharsets.US_ASCII));
+            } catch (NumberFormatException e) {
+                break;
+            }
+            if (length <= space - pos || pos + length > data.length) {
+                break;
+            }
+            String record = new String(data, space + 1, pos + length - space - 2, StandardCharsets.UTF_8);
+            if (record.startsWith("path=")) {
+                path = record.substring("path=".length());
+            }
+            pos += length;
+        }
+        return path;
+    }
+
+    private static long parseOctal(byte[] header, int offset, int length) throws ZipException {
+        if ((header[offset] & 0x80) != 0) {
+            // base-256 encoding for large values.
+            long value = header[offset] & 0x7f;
+            for (int i = 1; i < length; ++i) {
+                value = (value << 8) | (header[offset + i] & 0xff);
+            }
+            return value;
+        }
+        long value = 0;
+        for (int i = offset; i < offset + length; ++i) {
+            byte b = header[i];
+            if (b == 0 || b == ' ') {
+                if (value > 0) {
+                    break;
+                }
+                continue;
+            }
+            if (b < '0' || b > '7') {
+                throw new ZipException("Broken tar header");
+            }
+            value = (value << 3) + (b - '0');
+        }
+        return value;
+    }
+
+    private static boolean isValidChecksum(byte[] header) throws ZipException {
+        long expected = parseOctal(header, 148, 8);
+        long sum = 0;
+        for (int i = 0; i < BLOCK_SIZE; ++i) {
+            sum += (i >= 148 && i < 156) ? ' ' : (header[i] & 0xff);
+        }
+        return sum == expected;
+    }
+
+    private static boolean isZeroBlock(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String trimNul(String s) {
+        int nul = s.indexOf('\u0000');
+        return (nul >= 0) ? s.substring(0, nul) : s;
+    }
+
+    private static long padded(long size) {
+        return (size + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+    }
+
+    private static boolean readBlock(InputStream is, byte[] block) throws IOException {
+        int pos = 0;
+        while (pos < block.length) {
+            int n = is.read(block, pos, block.length - pos);
+            if (n < 0) {
+                if (pos == 0) {
+                    return false;
+                }
+                throw new EOFException("Unexpected end of tar archive");
+            }
+            pos += n;
+        }
+        return true;
+    }
+
+    private static byte[] readData(InputStream is, long size) throws IOException {
+        if (size > 1024 * 1024) {
+            throw new ZipException("Too large tar extended header");
+        }
+        byte[] data = new byte[(int) size];
+        int pos = 0;
+        while (pos < data.length) {
+            int n = is.read(data, pos, data.length - pos);
+            if (n < 0) {
+                throw new EOFException("Unexpected end of tar archive");
+            }
+            pos += n;
+        }
+        skip(is, padded(size) - size);
+        return data;
+    }
+
+    private static void skip(InputStream is, long n) throws IOException {
+        while (n > 0) {
+            long skipped = is.skip(n);
+            if (skipped <= 0) {
+                if (is.read() < 0) {
+                    throw new EOFException("Unexpected end of tar archive");
+                }
+                skipped = 1;
+            }
+            n -= skipped;
+        }
+    }
+}
@@ -0,0 +1,431 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.ZipException;
+
+/**
+ * Central directory of a zip archive, read without {@link java.util.zip.ZipFile}.
+ *
+ * Holds the attributes of all entries in primitive arrays in the order of the central directory,
+ * including the offsets of local headers {@link java.util.zip.ZipEntry} does not provide.
+ * Supports Zip64 archives.
+ */
+final class ZipCentralDirectory {
+    static final int LOC_SIG = 0x04034b50;
+    static final int CEN_SIG = 0x02014b50;
+    static final int END_SIG = 0x06054b50;
+    static final int ZIP64_END_SIG = 0x06064b50;
+    static final int ZIP64_LOCATOR_SIG = 0x07064b50;
+
+    static final int LOC_HEADER_SIZE = 30;
+    static final int CEN_HEADER_SIZE = 46;
+    static final int END_HEADER_SIZE = 22;
+    static final int ZIP64_END_HEADER_SIZE = 56;
+    static final int ZIP64_LOCATOR_SIZE = 20;
+    static final int MAX_COMMENT_LENGTH = 0xFFFF;
+
+    private static final int ZIP64_EXTRA_ID = 0x0001;
+    private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+    private static final int ZIP64_MAGIC_COUNT = 0xFFFF;
+
+    private final int entryCount;
+    private final byte[] names;
+    private final int[] nameOffsets;
+    private final short[] methods;
+    private final short[] flags;
+    private final int[] crcs;
+    private final long[] sizes;
+    private final long[] compressedSizes;
+    private final long[] localHeaderOffsets;
+
+    private ZipCentralDirectory(
+            int entryCount,
+            byte[] names,
+            int[] nameOffsets,
+            short[] methods,
+            short[] flags,
+            int[] crcs,
+            long[] sizes,
+            long[] compressedSizes,
+            long[] localHeaderOffsets) {
+        this.entryCount = entryCount;
+        this.names = names;
+        this.nameOffsets = nameOffsets;
+        this.methods = methods;
+        this.flags = flags;
+        this.crcs = crcs;
+        this.sizes = sizes;
+        this.compressedSizes = compressedSizes;
+        this.localHeaderOffsets = localHeaderOffsets;
+    }
+
+    /**
+     * Location of the central directory, read from the end of central directory record.
+     */
+    static final class End {
+        /**
+         * The number of entries in the archive.
+         */
+        final long entryCount;
+
+        /**
+         * The position of the central directory in the file.
+         */
+        final long offset;
+
+        /**
+         * Bytes prepended to the archive (e.g. self-extracting archives),
+         * to be added to the offsets of local headers recorded in the central directory.
+         */
+        final long base;
+
+        /**
+         * The size of the central directory in bytes.
+         */
+        final long size;
+
+        /**
+         * Whether the archive has Zip64 end of central directory record.
+         */
+        final boolean zip64;
+
+        End(long entryCount, long offset, long size, long base, boolean zip64) {
+            this.entryCount = entryCount;
+            this.offset = offset;
+            this.size = size;
+            this.base = base;
+            this.zip64 = zip64;
+        }
+    }
+
+    /**
+     * Tests whether a file seems a zip archive without reading the central directory.
+     *
+     * Reads only the end of central directory record (and the Zip64 one if exists),
+     * and verifies the location of the central directory.
+     *
+     * @param file the file to test.
+     * @return the location of the central directory.
+     * @throws ZipException the file does not seem a zip archive.
+     * @throws IOException
+     */
+    static End probe(File file) throws IOException {
+        FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return readEnd(ch);
+        } finally {
+            ch.close();
+        }
+    }
+
+    /**
+     * Finds the end of central directory record at the tail of an archive.
+     *
+     * Reads only the last 64 kilobytes of the file at most.
+     * As {@link java.util.zip.ZipFile} does, the central directory is located
+     * as it ends just before the record, and archives with bytes prepended
+     * (e.g. self-extracting archives) or appended are accepted
+     * if the central directory and the first local header are found there.
+     *
+     * @param ch the archive.
+     * @return the location of the central directory.
+     * @throws ZipException the file does not seem a zip archive.
+     * @throws IOException
+     */
+    static End readEnd(FileChannel ch) throws IOException {
+        long fileSize = ch.size();
+        if (fileSize < END_HEADER_SIZE) {
+            throw new ZipException("zip END header not found");
+        }
+        int tailSize = (int) Math.min(fileSize, END_HEADER_SIZE + MAX_COMMENT_LENGTH + ZIP64_LOCATOR_SIZE);
+        long tailOffset = fileSize - tailSize;
+        ByteBuffer tail = read(ch, tailOffset, tailSize);
+
+        for (int pos = tailSize - END_HEADER_SIZE; pos >= 0; --pos) {
+            if (tail.getInt(pos) != END_SIG) {
+                continue;
+            }
+            int commentLength = tail.getShort(pos + 20) & 0xFFFF;
+            // Otherwise signature bytes in a comment or in the data, or bytes appended to the archive.
+            boolean exact = pos + END_HEADER_SIZE + commentLength == tailSize;
+            long entryCount = tail.getShort(pos + 10) & 0xFFFF;
+            long size = tail.getInt(pos + 12) & 0xFFFFFFFFL;
+            long offset = tail.getInt(pos + 16) & 0xFFFFFFFFL;
+            long endOffset = tailOffset + pos;
+
+            End end = null;
+            if (entryCount == ZIP64_MAGIC_COUNT || size == ZIP64_MAGIC || offset == ZIP64_MAGIC) {
+                end = readZip64End(ch, tail, pos - ZIP64_LOCATOR_SIZE);
+            }
+            if (end == null) {
+                end = new End(entryCount, endOffset - size, size, endOffset - size - offset, false);
+            }
+            if (!isValid(ch, end, exact)) {
+                if (exact) {
+                    throw new ZipException("invalid END header (bad central directory offset)");
+                }
+                continue;
+            }
+            checkEntryCount(end.entryCount, end.size);
+            return end;
+        }
+        throw new ZipException("zip END header not found");
+    }
+
+    /**
+     * @param ch
+     * @param end
+     * @param exact whether the record ends at the end of the file.
+     * @return whether the central directory and the first local header are at the location.
+     * @throws IOException
+     */
+    private static boolean isValid(FileChannel ch, End end, boolean exact) throws IOException {
+        if (end.offset < 0 || end.base < 0) {
+            return false;
+        }
+        if (exact && end.entryCount == 0) {
+            // An empty archive.
+            return true;
+        }
+        return end.offset + 4 <= ch.size()
+                && read(ch, end.offset, 4).getInt(0) == CEN_SIG
+                && read(ch, end.base, 4).getInt(0) == LOC_SIG;
+    }
+
+    private static End readZip64End(FileChannel ch, ByteBuffer tail, int locatorPos) throws IOException {
+        if (locatorPos < 0 || tail.getInt(locatorPos) != ZIP64_LOCATOR_SIG) {
+            return null;
+        }
+        long zip64EndOffset = tail.getLong(locatorPos + 8);
+        if (zip64EndOffset < 0 || zip64EndOffset + ZIP64_END_HEADER_SIZE > ch.size()) {
+            throw new ZipException("invalid zip64 END header offset");
+        }
+        ByteBuffer zip64End = read(ch, zip64EndOffset, ZIP64_END_HEADER_SIZE);
+        if (zip64End.getInt(0) != ZIP64_END_SIG) {
+            throw new ZipException("zip64 END header not found");
+        }
+        long entryCount = zip64End.getLong(32);
+        long size = zip64End.getLong(40);
+        long offset = zip64End.getLong(48);
+        if (entryCount < 0 || size < 0 || offset < 0) {
+            throw new ZipException("invalid zip64 END header");
+        }
+        return new End(entryCount, zip64EndOffset - size, size, zip64EndOffset - size - offset, true);
+    }
+
+    private static void checkEntryCount(long entryCount, long size) throws ZipException {
+        // Each entry takes at least a fixed-size header in the central directory.
+        if (entryCount > size / CEN_HEADER_SIZE) {
+            throw new ZipException("invalid END header (bad entry count)");
+        }
+    }
+
+    /**
+     * Reads the central directory of an archive.
+     *
+     * @param ch the archive.
+     * @return the central directory.
+     * @throws ZipException the file does not seem a zip archive.
+     * @throws IOException
+     */
+    static ZipCentralDirectory read(FileChannel ch) throws IOException {
+        End end = readEnd(ch);
+        if (end.entryCount > Integer.MAX_VALUE || end.size > Integer.MAX_VALUE) {
+            throw new ZipException("too many entries in the archive");
+        }
+        // Read into the heap not to keep mappings no one can release on the artifact.
+        ByteBuffer cen = read(ch, end.offset, (int) end.size);
+
+        int entryCount = (int) end.entryCount;
+        int[] nameOffsets = new int[entryCount + 1];
+        short[] methods = new short[entryCount];
+        short[] flags = new short[entryCount];
+        int[] crcs = new int[entryCount];
+        long[] sizes = new long[entryCount];
+        long[] compressedSizes = new long[entryCount];
+        long[] localHeaderOffsets = new long[entryCount];
+        byte[] names = new byte[Math.max(entryCount * 32, 1024)];
+        int namesLength = 0;
+
+        int pos = 0;
+        for (int i = 0; i < entryCount; ++i) {
+            if (pos + CEN_HEADER_SIZE > end.size || cen.getInt(pos) != CEN_SIG) {
+                throw new ZipException("invalid CEN header (bad signature)");
+            }
+            flags[i] = cen.getShort(pos + 8);
+            methods[i] = cen.getShort(pos + 10);
+            crcs[i] = cen.getInt(pos + 16);
+            long compressedSize = cen.getInt(pos + 20) & 0xFFFFFFFFL;
+            long size = cen.getInt(pos + 24) & 0xFFFFFFFFL;
+            int nameLength = cen.getShort(pos + 28) & 0xFFFF;
+            int extraLength = cen.getShort(pos + 30) & 0xFFFF;
+            int commentLength = cen.getShort(pos + 32) & 0xFFFF;
+            long localHeaderOffset = cen.getInt(pos + 42) & 0xFFFFFFFFL;
+            int next = pos + CEN_HEADER_SIZE + nameLength + extraLength + commentLength;
+            if (next > end.size) {
+                throw new ZipException("invalid CEN header (bad header size)");
+            }
+
+            if (namesLength + nameLength > names.length) {
+                names = Arrays.copyOf(names, Math.max(names.length * 2, namesLength + nameLength));
+            }
+            cen.position(pos + CEN_HEADER_SIZE);
+            cen.get(names, namesLength, nameLength);
+            nameOffsets[i] = namesLength;
+            namesLength += nameLength;
+
+            if (size == ZIP64_MAGIC || compressedSize == ZIP64_MAGIC || localHeaderOffset == ZIP64_MAGIC) {
+                int extra = pos + CEN_HEADER_SIZE + nameLength;
+                int extraEnd = extra + extraLength;
+                while (extra + 4 <= extraEnd) {
+                    int id = cen.getShort(extra) & 0xFFFF;
+                    int length = cen.getShort(extra + 2) & 0xFFFF;
+                    int value = extra + 4;
+                    if (id == ZIP64_EXTRA_ID) {
+                        if (size == ZIP64_MAGIC && value + 8 <= extraEnd) {
+                            size = cen.getLong(value);
+                            value += 8;
+                        }
+                        if (compressedSize == ZIP64_MAGIC && value + 8 <= extraEnd) {
+                            compressedSize = cen.getLong(value);
+                            value += 8;
+                        }
+                        if (localHeaderOffset == ZIP64_MAGIC && value + 8 <= extraEnd) {
+                            localHeaderOffset = cen.getLong(value);
+                        }
+                        break;
+                    }
+                    extra += 4 + length;
+                }
+            }
+            sizes[i] = size;
+            compressedSizes[i] = compressedSize;
+            localHeaderOffsets[i] = end.base + localHeaderOffset;
+            pos = next;
+        }
+        nameOffsets[entryCount] = namesLength;
+
+        return new ZipCentralDirectory(
+                entryCount,
+                Arrays.copyOf(names, namesLength),
+                nameOffsets,
+                methods,
+                flags,
+                crcs,
+                sizes,
+                compressedSizes,
+                localHeaderOffsets);
+    }
+
+    /**
+     * Reads the position of the entry data from its local header.
+     *
+     * The local header can have extra fields different from the central directory,
+     * so the position cannot be calculated from the central directory only.
+     *
+     * @param ch the archive.
+     * @param localHeaderOffset the position of the local header.
+     * @return the position of the entry data.
+     * @throws IOException
+     */
+    static long readDataOffset(FileChannel ch, long localHeaderOffset) throws IOException {
+        ByteBuffer loc = read(ch, localHeaderOffset, LOC_HEADER_SIZE);
+        if (loc.getInt(0) != LOC_SIG) {
+            throw new ZipException("invalid LOC header (bad signature)");
+        }
+        int nameLength = loc.getShort(26) & 0xFFFF;
+        int extraLength = loc.getShort(28) & 0xFFFF;
+        return localHeaderOffset + LOC_HEADER_SIZE + nameLength + extraLength;
+    }
+
+    /**
+     * Reads bytes at a position of a file.
+     *
+     * @param ch
+     * @param offset
+     * @param length
+     * @return a little-endian buffer filled with the bytes.
+     * @throws IOException
+     */
+    static ByteBuffer read(FileChannel ch, long offset, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, offset + buf.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+        buf.flip();
+        return buf;
+    }
+
+    int getEntryCount() {
+        return entryCount;
+    }
+
+    byte[] getNames() {
+        return names;
+    }
+
+    int getNameOffset(int i) {
+        return nameOffsets[i];
+    }
+
+    int getNameLength(int i) {
+        return nameOffsets[i + 1] - nameOffsets[i];
+    }
+
+    int getMethod(int i) {
+        return methods[i] & 0xFFFF;
+    }
+
+    int getFlag(int i) {
+        return flags[i] & 0xFFFF;
+    }
+
+    int getCrc(int i) {
+        return crcs[i];
+    }
+
+    long getSize(int i) {
+        return sizes[i];
+    }
+
+    long getCompressedSize(int i) {
+        return compressedSizes[i];
+    }
+
+    long getLocalHeaderOffset(int i) {
+        return localHeaderOffsets[i];
+    }
+}
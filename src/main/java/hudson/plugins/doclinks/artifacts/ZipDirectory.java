@@ -0,0 +1,56 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+/**
+ * Directory structure of entries in an archive.
+ */
+public interface ZipDirectory {
+    /**
+     * Tests whether a path is a directory.
+     *
+     * A path is a directory if there is an explicit directory entry for it
+     * or if there are entries under it, and there is no file entry with that name.
+     *
+     * @param path
+     * @return true if the path is a directory.
+     */
+    boolean isDirectory(String path);
+
+    /**
+     * @param path
+     * @return true if there is a file entry with that name.
+     */
+    boolean isFile(String path);
+
+    /**
+     * Returns the first index file existing in a directory.
+     *
+     * @param path the path to the directory.
+     * @param indexFiles candidates of the index file.
+     * @return the path to the index file. null if none exists.
+     */
+    String resolveIndexFile(String path, String[] indexFiles);
+}
@@ -0,0 +1,434 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Prefix tree of entry names in an archive.
+ *
+ * Answers whether a path is a directory, resolves index files and lists children
+ * in time proportional to the depth of the path,
+ * even for archives without explicit directory entries.
+ *
+ * Nodes and path segments are held in primitive arrays,
+ * so an archive with millions of entries does not result in millions of objects.
+ * Instances are immutable and safe to share among threads.
+ */
+public final class ZipDirectoryIndex implements ZipDirectory {
+    private static final byte FLAG_FILE = 1;
+    private static final byte FLAG_DIRECTORY = 2;
+
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    /**
+     * Characters of all distinct path segments.
+     */
+    private final char[] segmentChars;
+
+    /**
+     * Start of each segment in {@link #segmentChars}, with an extra element for the end of the last one.
+     */
+    private final int[] segmentOffsets;
+
+    /**
+     * Open addressing hash table from a segment to its index (plus 1. 0 means empty).
+     */
+    private final int[] segmentTable;
+
+    private final int nodeCount;
+    private final int[] nodeParent;
+    private final int[] nodeSegment;
+    private final int[] nodeFirstChild;
+    private final int[] nodeNextSibling;
+    private final byte[] nodeFlags;
+
+    /**
+     * Open addressing hash table from (parent, segment) to the child node (plus 1. 0 means empty).
+     */
+    private final int[] childTable;
+
+    private ZipDirectoryIndex(Builder builder) {
+        this.segmentChars = Arrays.copyOf(builder.segmentChars, builder.segmentCharCount);
+        this.segmentOffsets = Arrays.copyOf(builder.segmentOffsets, builder.segmentCount + 1);
+        this.segmentTable = builder.segmentTable;
+        this.nodeCount = builder.nodeCount;
+        this.nodeParent = Arrays.copyOf(builder.nodeParent, builder.nodeCount);
+        this.nodeSegment = Arrays.copyOf(builder.nodeSegment, builder.nodeCount);
+        this.nodeFirstChild = Arrays.copyOf(builder.nodeFirstChild, builder.nodeCount);
+        this.nodeNextSibling = Arrays.copyOf(builder.nodeNextSibling, builder.nodeCount);
+        this.nodeFlags = Arrays.copyOf(builder.nodeFlags, builder.nodeCount);
+        this.childTable = builder.childTable;
+    }
+
+    /**
+     * Builds the index of entries in an archive.
+     *
+     * @param zip
+     * @return the index.
+     */
+    public static ZipDirectoryIndex of(ZipFile zip) {
+        Builder builder = new Builder();
+        Enumeration<? extends ZipEntry> entryEnum = zip.entries();
+        while (entryEnum.hasMoreElements()) {
+            builder.add(entryEnum.nextElement().getName());
+        }
+        return builder.build();
+    }
+
+    /**
+     * @return the number of files and directories in the archive.
+     */
+    public int size() {
+        return nodeCount - 1;
+    }
+
+    @Override
+    public boolean isDirectory(String path) {
+        int node = find(path);
+        if (node == NONE) {
+            return false;
+        }
+        if (node == ROOT) {
+            return true;
+        }
+        return (nodeFlags[node] & FLAG_FILE) == 0;
+    }
+
+    @Override
+    public boolean isFile(String path) {
+        int node = find(path);
+        return node != NONE && (nodeFlags[node] & FLAG_FILE) != 0;
+    }
+
+    @Override
+    public String resolveIndexFile(String path, String[] indexFiles) {
+        int dir = find(path);
+        if (dir == NONE) {
+            return null;
+        }
+        for (String indexFile : indexFiles) {
+            int node = findFrom(dir, indexFile);
+            if (node != NONE && (nodeFlags[node] & FLAG_FILE) != 0) {
+                return getPath(node);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Lists files and directories just under a directory.
+     *
+     * @param path the path to the directory.
+     * @return sorted names of children. Names of directories end with "/".
+     */
+    public List<String> listChildren(String path) {
+        int dir = find(path);
+        if (dir == NONE) {
+            return Collections.emptyList();
+        }
+        List<String> children = new ArrayList<String>();
+        for (int node = nodeFirstChild[dir]; node != NONE; node = nodeNextSibling[node]) {
+            String name = getSegment(nodeSegment[node]);
+            if ((nodeFlags[node] & FLAG_FILE) == 0) {
+                name += "/";
+            }
+            children.add(name);
+        }
+        Collections.sort(children);
+        return children;
+    }
+
+    private int find(String path) {
+        if (path == null) {
+            return ROOT;
+        }
+        return findFrom(ROOT, path);
+    }
+
+    private int findFrom(int node, String path) {
+        int length = path.length();
+        int start = 0;
+        while (start < length && node != NONE) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                int segment = findSegment(path, start, end);
+                if (segment == NONE) {
+                    return NONE;
+                }
+                node = findChild(childTable, nodeParent, nodeSegment, node, segment);
+            }
+            start = end + 1;
+        }
+        return node;
+    }
+
+    private int findSegment(CharSequence s, int start, int end) {
+        int mask = segmentTable.length - 1;
+        for (int slot = hashSegment(s, start, end) & mask; ; slot = (slot + 1) & mask) {
+            int segment = segmentTable[slot] - 1;
+            if (segment == NONE) {
+                return NONE;
+            }
+            if (segmentEquals(segmentChars, segmentOffsets, segment, s, start, end)) {
+                return segment;
+            }
+        }
+    }
+
+    private String getSegment(int segment) {
+        return new String(segmentChars, segmentOffsets[segment], segmentOffsets[segment + 1] - segmentOffsets[segment]);
+    }
+
+    private String getPath(int node) {
+        StringBuilder sb = new StringBuilder();
+        for (; node != ROOT; node = nodeParent[node]) {
+            int segment = nodeSegment[node];
+            sb.insert(0, segmentChars, segmentOffsets[segment], segmentOffsets[segment + 1] - segmentOffsets[segment]);
+            if (nodeParent[node] != ROOT) {
+                sb.insert(0, '/');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static int hashSegment(CharSequence s, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; ++i) {
+            hash = 31 * hash + s.charAt(i);
+        }
+        return mix(hash);
+    }
+
+    private static int hashSegment(char[] chars, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; ++i) {
+            hash = 31 * hash + chars[i];
+        }
+        return mix(hash);
+    }
+
+    private static int hashChild(int parent, int segment) {
+        return mix(parent * 0x9E3779B9 + segment);
+    }
+
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85EBCA6B;
+        hash ^= hash >>> 13;
+        return hash;
+    }
+
+    private static boolean segmentEquals(
+            char[] segmentChars, int[] segmentOffsets, int segment, CharSequence s, int start, int end) {
+        int offset = segmentOffsets[segment];
+        if (segmentOffsets[segment + 1] - offset != end - start) {
+            return false;
+        }
+        for (int i = start; i < end; ++i) {
+            if (segmentChars[offset + i - start] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int findChild(int[] childTable, int[] nodeParent, int[] nodeSegment, int parent, int segment) {
+        int mask = childTable.length - 1;
+        for (int slot = hashChild(parent, segment) & mask; ; slot = (slot + 1) & mask) {
+            int node = childTable[slot] - 1;
+            if (node == NONE) {
+                return NONE;
+            }
+            if (nodeParent[node] == parent && nodeSegment[node] == segment) {
+                return node;
+            }
+        }
+    }
+
+    /**
+     * Builds {@link ZipDirectoryIndex} from entry names.
+     */
+    public static final class Builder {
+        private char[] segmentChars = new char[1024];
+        private int segmentCharCount = 0;
+        private int[] segmentOffsets = new int[65];
+        private int segmentCount = 0;
+        private int[] segmentTable = new int[128];
+
+        private int nodeCount = 0;
+        private int[] nodeParent = new int[64];
+        private int[] nodeSegment = new int[64];
+        private int[] nodeFirstChild = new int[64];
+        private int[] nodeNextSibling = new int[64];
+        private byte[] nodeFlags = new byte[64];
+        private int[] childTable = new int[128];
+
+        private boolean built = false;
+
+        public Builder() {
+            // root
+            addNode(NONE, NONE);
+        }
+
+        /**
+         * Adds an entry.
+         *
+         * @param name the name of the entry. Directories end with "/".
+         * @return this builder.
+         */
+        public Builder add(String name) {
+            if (built) {
+                throw new IllegalStateException("Already built");
+            }
+            int node = ROOT;
+            int length = name.length();
+            int start = 0;
+            while (start < length) {
+                int end = name.indexOf('/', start);
+                if (end < 0) {
+                    end = length;
+                }
+                if (end > start) {
+                    int segment = addSegment(name, start, end);
+                    int child = findChild(childTable, nodeParent, nodeSegment, node, segment);
+                    if (child == NONE) {
+                        child = addNode(node, segment);
+                    }
+                    node = child;
+                }
+                start = end + 1;
+            }
+            if (node != ROOT) {
+                nodeFlags[node] |= name.endsWith("/") ? FLAG_DIRECTORY : FLAG_FILE;
+            }
+            return this;
+        }
+
+        /**
+         * @return the index of added entries.
+         */
+        public ZipDirectoryIndex build() {
+            built = true;
+            return new ZipDirectoryIndex(this);
+        }
+
+        private int addSegment(String name, int start, int end) {
+            int mask = segmentTable.length - 1;
+            int slot = hashSegment(name, start, end) & mask;
+            for (; ; slot = (slot + 1) & mask) {
+                int segment = segmentTable[slot] - 1;
+                if (segment == NONE) {
+                    break;
+                }
+                if (segmentEquals(segmentChars, segmentOffsets, segment, name, start, end)) {
+                    return segment;
+                }
+            }
+
+            int length = end - start;
+            if (segmentCharCount + length > segmentChars.length) {
+                segmentChars =
+                        Arrays.copyOf(segmentChars, Math.max(segmentChars.length * 2, segmentCharCount + length));
+            }
+            name.getChars(start, end, segmentChars, segmentCharCount);
+            if (segmentCount + 2 > segmentOffsets.length) {
+                segmentOffsets = Arrays.copyOf(segmentOffsets, segmentOffsets.length * 2);
+            }
+            int segment = segmentCount++;
+            segmentOffsets[segment] = segmentCharCount;
+            segmentCharCount += length;
+            segmentOffsets[segmentCount] = segmentCharCount;
+            segmentTable[slot] = segment + 1;
+
+            if (segmentCount * 2 > segmentTable.length) {
+                int[] table = new int[segmentTable.length * 2];
+                int newMask = table.length - 1;
+                for (int i = 0; i < segmentCount; ++i) {
+                    int newSlot = hashSegment(segmentChars, segmentOffsets[i], segmentOffsets[i + 1]) & newMask;
+                    while (table[newSlot] != 0) {
+                        newSlot = (newSlot + 1) & newMask;
+                    }
+                    table[newSlot] = i + 1;
+                }
+                segmentTable = table;
+            }
+            return segment;
+        }
+
+        private int addNode(int parent, int segment) {
+            if (nodeCount >= nodeParent.length) {
+                int capacity = nodeParent.length * 2;
+                nodeParent = Arrays.copyOf(nodeParent, capacity);
+                nodeSegment = Arrays.copyOf(nodeSegment, capacity);
+                nodeFirstChild = Arrays.copyOf(nodeFirstChild, capacity);
+                nodeNextSibling = Arrays.copyOf(nodeNextSibling, capacity);
+                nodeFlags = Arrays.copyOf(nodeFlags, capacity);
+            }
+            int node = nodeCount++;
+            nodeParent[node] = parent;
+            nodeSegment[node] = segment;
+            nodeFirstChild[node] = NONE;
+            nodeNextSibling[node] = NONE;
+            nodeFlags[node] = 0;
+            if (parent == NONE) {
+                return node;
+            }
+            nodeNextSibling[node] = nodeFirstChild[parent];
+            nodeFirstChild[parent] = node;
+
+            if (nodeCount * 2 > childTable.length) {
+                int[] table = new int[childTable.length * 2];
+                int mask = table.length - 1;
+                for (int i = 1; i < nodeCount; ++i) {
+                    int slot = hashChild(nodeParent[i], nodeSegment[i]) & mask;
+                    while (table[slot] != 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    table[slot] = i + 1;
+                }
+                childTable = table;
+            } else {
+                int mask = childTable.length - 1;
+                int slot = hashChild(parent, segment) & mask;
+                while (childTable[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                childTable[slot] = node + 1;
+            }
+            return node;
+        }
+    }
+}
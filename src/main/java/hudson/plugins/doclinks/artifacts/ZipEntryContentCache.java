@@ -0,0 +1,638 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import jenkins.util.SystemProperties;
+
+/**
+ * Controller-wide cache of decompressed contents of archive entries.
+ *
+ * Small files like stylesheets, scripts and images are requested
+ * with almost every page of a document, and inflating them for each request is wasteful.
+ * Contents are keyed by the path, the last modified time and the size of the archive
+ * and the name of the entry, and a rewritten artifact never hits stale contents.
+ *
+ * Contents are stored outside the Java heap in chunks of {@link SlabAllocator},
+ * so cached documents neither grow the heap nor add work to the garbage collector.
+ * Up to {@link #MAX_BYTES} bytes are reserved in slabs of {@link #SLAB_SIZE} bytes.
+ *
+ * When no chunk is available for a new content,
+ * the least recently used content of the same size class is evicted,
+ * but only if the new content is requested more frequently than it (TinyLFU admission).
+ * If the class has nothing to evict, a slab is taken from the class with the most slabs:
+ * all contents in the slab of its least recently used content are evicted and the slab is reassigned,
+ * so that the cache follows changes of the sizes requested.
+ * Frequencies are estimated with a count-min sketch that is halved periodically,
+ * so one-off requests do not flush popular contents.
+ * Contents being sent are pinned and their chunks are reused only after released.
+ */
+public final class ZipEntryContentCache {
+    /**
+     * Bytes of memory reserved for contents.
+     */
+    public static final long MAX_BYTES =
+            SystemProperties.getLong(ZipEntryContentCache.class.getName() + ".maxBytes", 32L * 1024 * 1024);
+
+    /**
+     * Entries larger than this are never cached. Also limited to {@link #SLAB_SIZE}.
+     */
+    public static final long MAX_ENTRY_SIZE =
+            SystemProperties.getLong(ZipEntryContentCache.class.getName() + ".maxEntrySize", 1024L * 1024);
+
+    /**
+     * Bytes of memory reserved at once.
+     */
+    public static final int SLAB_SIZE =
+            SystemProperties.getInteger(ZipEntryContentCache.class.getName() + ".slabSize", 1024 * 1024);
+
+    private static final ZipEntryContentCache INSTANCE =
+            new ZipEntryContentCache(MAX_BYTES, MAX_ENTRY_SIZE, SLAB_SIZE);
+
+    /**
+     * @return the cache shared in the controller.
+     */
+    public static ZipEntryContentCache get() {
+        return INSTANCE;
+    }
+
+    private final long maxEntrySize;
+
+    /**
+     * Contents in access order.
+     */
+    private final LinkedHashMap<Key, Content> cache = new LinkedHashMap<Key, Content>(16, 0.75f, true);
+
+    private final SlabAllocator allocator;
+
+    private final FrequencySketch sketch;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong rejectCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    /**
+     * Contents being loaded. Lookups for different keys do not contend.
+     */
+    private final ConcurrentHashMap<Key, CompletableFuture<byte[]>> inflight =
+            new ConcurrentHashMap<Key, CompletableFuture<byte[]>>();
+
+    /**
+     * @param maxBytes
+     * @param maxEntrySize
+     * @param slabSize
+     */
+    ZipEntryContentCache(long maxBytes, long maxEntrySize, int slabSize) {
+        this.allocator = new SlabAllocator(maxBytes, slabSize);
+        long maxReserved = Math.max(maxBytes, 0) / allocator.getSlabSize() * allocator.getSlabSize();
+        this.maxEntrySize = Math.min(Math.max(maxEntrySize, 0), Math.min(allocator.getSlabSize(), maxReserved));
+        // Assume contents of 4KB in average.
+        this.sketch = new FrequencySketch((int) Math.min(maxReserved / 4096, 1 << 20));
+    }
+
+    /**
+     * @param size the uncompressed size of an entry.
+     * @return whether the entry can be cached.
+     */
+    public boolean isCacheable(long size) {
+        return size >= 0 && size <= maxEntrySize;
+    }
+
+    /**
+     * Returns cached contents of an entry.
+     *
+     * Also records the access for the admission of the entry.
+     * The returned contents must be closed after sent.
+     *
+     * @param archive the archive file.
+     * @param entryName the name of the entry.
+     * @return the contents. null if not cached.
+     */
+    public Content get(File archive, String entryName) {
+        return get(new Key(archive, entryName));
+    }
+
+    private Content get(Key key) {
+        Content content;
+        synchronized (this) {
+            sketch.increment(key.hashCode());
+            content = cache.get(key);
+            if (content != null) {
+                content.refCount++;
+            }
+        }
+        if (content != null) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+        }
+        return content;
+    }
+
+    /**
+     * Caches contents of an entry.
+     *
+     * The contents may not be cached if it is requested less frequently than the contents to evict.
+     * The returned contents must be closed after sent.
+     *
+     * @param archive the archive file.
+     * @param entryName the name of the entry.
+     * @param data the decompressed contents. Copied to the cache.
+     * @return the cached contents. null if not cached.
+     */
+    public Content put(File archive, String entryName, byte[] data) {
+        return put(new Key(archive, entryName), data);
+    }
+
+    private Content put(Key key, byte[] data) {
+        if (!isCacheable(data.length)) {
+            return null;
+        }
+        int cls = allocator.classOf(data.length);
+        SlabAllocator.Chunk chunk;
+        synchronized (this) {
+            Content content = cache.get(key);
+            if (content != null) {
+                content.refCount++;
+                return content;
+            }
+
+            chunk = allocator.allocate(cls);
+            if (chunk == null) {
+                // Evict the least recently used content of the same size
+                // if the new one is more popular than it.
+                Map.Entry<Key, Content> victim = null;
+                for (Map.Entry<Key, Content> e : cache.entrySet()) {
+                    if (e.getValue().cls == cls && e.getValue().refCount == 0) {
+                        victim = e;
+                        break;
+                    }
+                }
+                if (victim == null) {
+                    chunk = rebalance(key, cls);
+                    if (chunk == null) {
+                        rejectCount.incrementAndGet();
+                        return null;
+                    }
+                } else {
+                    if (sketch.frequency(victim.getKey().hashCode()) >= sketch.frequency(key.hashCode())) {
+                        rejectCount.incrementAndGet();
+                        return null;
+                    }
+                    cache.remove(victim.getKey());
+                    allocator.free(victim.getValue().chunk);
+                    evictionCount.incrementAndGet();
+                    chunk = allocator.allocate(cls);
+                }
+            }
+        }
+
+        // The chunk is not visible to others until added to the cache.
+        ByteBuffer buffer = chunk.getBuffer();
+        buffer.put(data);
+        buffer.flip();
+
+        synchronized (this) {
+            Content content = cache.get(key);
+            if (content != null) {
+                // Cached by another request meanwhile.
+                allocator.free(chunk);
+                content.refCount++;
+                return content;
+            }
+            content = new Content(this, chunk, cls, buffer);
+            content.refCount++;
+            cache.put(key, content);
+            return content;
+        }
+    }
+
+    /**
+     * Moves a slab from the class with the most slabs to a class having nothing to evict.
+     *
+     * Must be called in synchronized block.
+     *
+     * @param key the key of the new content.
+     * @param cls the class of the new content.
+     * @return a chunk for the new content. null if no slab can be moved or the new content is not admitted.
+     */
+    private SlabAllocator.Chunk rebalance(Key key, int cls) {
+        int largest = allocator.getLargestClass(cls);
+        if (largest < 0 || allocator.getSlabCount(largest) <= allocator.getSlabCount(cls)) {
+            return null;
+        }
+        for (Map.Entry<Key, Content> e : cache.entrySet()) {
+            Content victim = e.getValue();
+            if (victim.cls != largest || victim.refCount > 0) {
+                continue;
+            }
+            if (sketch.frequency(e.getKey().hashCode()) >= sketch.frequency(key.hashCode())) {
+                // Contents in the slab are as popular as the new one.
+                return null;
+            }
+            if (evictSlab(victim.chunk) && allocator.reassign(victim.chunk, cls)) {
+                return allocator.allocate(cls);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Evicts all contents in the slab of a chunk.
+     *
+     * Must be called in synchronized block.
+     *
+     * @param chunk
+     * @return false if any content in the slab is in use. Nothing is evicted then.
+     */
+    private boolean evictSlab(SlabAllocator.Chunk chunk) {
+        for (Content content : cache.values()) {
+            if (content.refCount > 0 && SlabAllocator.isSameSlab(content.chunk, chunk)) {
+                return false;
+            }
+        }
+        for (Iterator<Content> it = cache.values().iterator(); it.hasNext(); ) {
+            Content content = it.next();
+            if (SlabAllocator.isSameSlab(content.chunk, chunk)) {
+                it.remove();
+                allocator.free(content.chunk);
+                evictionCount.incrementAndGet();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns cached contents of an entry, loading them if not cached.
+     *
+     * Concurrent requests for the same entry are coalesced:
+     * only the first one loads the contents and others wait for it and share the result.
+     * Requests for different entries never wait for each other.
+     * The returned contents must be closed after sent.
+     *
+     * @param archive the archive file.
+     * @param entryName the name of the entry.
+     * @param loader reads the decompressed contents of the entry.
+     * @return the contents. Not cached if not admitted.
+     * @throws IOException failed to load the contents.
+     */
+    public Content getOrLoad(File archive, String entryName, Loader loader) throws IOException {
+        Key key = new Key(archive, entryName);
+        Content content = get(key);
+        if (content != null) {
+            return content;
+        }
+
+        CompletableFuture<byte[]> loading = new CompletableFuture<byte[]>();
+        CompletableFuture<byte[]> leader = inflight.putIfAbsent(key, loading);
+        if (leader != null) {
+            coalescedCount.incrementAndGet();
+            byte[] data = await(leader);
+            synchronized (this) {
+                content = cache.get(key);
+                if (content != null) {
+                    content.refCount++;
+                    return content;
+                }
+            }
+            return Content.of(data);
+        }
+
+        try {
+            byte[] data = loader.load();
+            // Cache before waiters wake up, so they share the cached contents.
+            content = put(key, data);
+            loading.complete(data);
+            return (content != null) ? content : Content.of(data);
+        } catch (IOException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } catch (RuntimeException e) {
+            loading.completeExceptionally(e);
+            throw e;
+        } catch (Error e) {
+            // e.g. OutOfMemoryError allocating the contents. Waiters must not block forever.
+            loading.completeExceptionally(e);
+            throw e;
+        } finally {
+            inflight.remove(key, loading);
+        }
+    }
+
+    private static byte[] await(CompletableFuture<byte[]> loading) throws IOException {
+        try {
+            return loading.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for contents loaded by another request");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw new IOException(e.getCause().getMessage(), e.getCause());
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Reads contents of an entry.
+     */
+    public interface Loader {
+        /**
+         * @return the decompressed contents.
+         * @throws IOException
+         */
+        byte[] load() throws IOException;
+    }
+
+    /**
+     * Removes all contents not in use.
+     *
+     * Contents in use are released when closed.
+     */
+    public synchronized void clear() {
+        for (Content content : cache.values()) {
+            content.retired = true;
+            if (content.refCount == 0) {
+                allocator.free(content.chunk);
+            }
+        }
+        cache.clear();
+    }
+
+    private synchronized void release(Content content) {
+        if (--content.refCount == 0 && content.retired) {
+            allocator.free(content.chunk);
+        }
+    }
+
+    /**
+     * @return the number of cached contents.
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * @return bytes of memory used by cached contents.
+     */
+    public synchronized long getWeight() {
+        return allocator.getUsedBytes();
+    }
+
+    /**
+     * @return bytes of memory reserved outside the heap.
+     */
+    public synchronized long getReservedBytes() {
+        return allocator.getReservedBytes();
+    }
+
+    /**
+     * @return the number of requests served from the cache.
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * @return the number of requests not served from the cache.
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * @return the number of contents not admitted to the cache.
+     */
+    public long getRejectCount() {
+        return rejectCount.get();
+    }
+
+    /**
+     * @return the number of contents evicted from the cache.
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * @return the number of requests that waited for contents loaded by another request.
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Contents of an entry.
+     *
+     * {@link #refCount} and {@link #retired} are guarded by the cache.
+     */
+    public static final class Content implements ZipEntryServer.EntryContent, Closeable {
+        private final ZipEntryContentCache cache;
+        private final SlabAllocator.Chunk chunk;
+        private final int cls;
+        private final ByteBuffer buffer;
+        private int refCount = 0;
+        private boolean retired = false;
+
+        private Content(ZipEntryContentCache cache, SlabAllocator.Chunk chunk, int cls, ByteBuffer buffer) {
+            this.cache = cache;
+            this.chunk = chunk;
+            this.cls = cls;
+            this.buffer = buffer;
+        }
+
+        /**
+         * Wraps contents not cached.
+         *
+         * @param data
+         * @return the contents.
+         */
+        public static Content of(byte[] data) {
+            return new Content(null, null, -1, ByteBuffer.wrap(data));
+        }
+
+        /**
+         * @return the size of the contents.
+         */
+        public int getSize() {
+            return buffer.limit();
+        }
+
+        /**
+         * Writes a part of the contents.
+         *
+         * @param start
+         * @param length
+         * @param os
+         * @throws IOException
+         */
+        @Override
+        public void write(long start, long length, OutputStream os) throws IOException {
+            ByteBuffer src = buffer.duplicate();
+            src.position((int) start).limit((int) (start + length));
+            ZipEntryServer.write(src, os);
+        }
+
+        /**
+         * Releases the contents.
+         */
+        @Override
+        public void close() {
+            if (cache != null) {
+                cache.release(this);
+            }
+        }
+    }
+
+    private static final class Key {
+        private final String path;
+        private final long lastModified;
+        private final long length;
+        private final String entryName;
+        private final int hash;
+
+        public Key(File archive, String entryName) {
+            this.path = archive.getAbsolutePath();
+            this.lastModified = archive.lastModified();
+            this.length = archive.length();
+            this.entryName = entryName;
+
+            int hash = path.hashCode();
+            hash = hash * 31 + Long.hashCode(lastModified);
+            hash = hash * 31 + Long.hashCode(length);
+            hash = hash * 31 + entryName.hashCode();
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return hash == other.hash
+                    && lastModified == other.lastModified
+                    && length == other.length
+                    && entryName.equals(other.entryName)
+                    && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * Count-min sketch estimating how frequently keys are requested.
+     *
+     * Counters saturate at 15, and all counters are halved
+     * after increments ten times as many as the counters,
+     * so the estimation follows recent requests.
+     * Not thread safe.
+     */
+    static final class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int MAX_COUNT = 15;
+        private static final int[] SEEDS = {0x97cb3127, 0xb1a83721, 0x6e3b9a5d, 0x5f356495};
+
+        private final byte[][] table;
+        private final int mask;
+        private final int sampleSize;
+        private int additions = 0;
+
+        /**
+         * @param expectedKeys
+         */
+        FrequencySketch(int expectedKeys) {
+            int width = Integer.highestOneBit(Math.max(expectedKeys, 64) - 1) << 1;
+            this.table = new byte[DEPTH][width];
+            this.mask = width - 1;
+            this.sampleSize = width * 10;
+        }
+
+        private int indexOf(int hash, int row) {
+            int h = (hash ^ SEEDS[row]) * 0x9e3779b9;
+            return (h ^ (h >>> 16)) & mask;
+        }
+
+        /**
+         * @param hash
+         * @return the estimated frequency of the key.
+         */
+        int frequency(int hash) {
+            int frequency = MAX_COUNT;
+            for (int row = 0; row < DEPTH; ++row) {
+                frequency = Math.min(frequency, table[row][indexOf(hash, row)]);
+            }
+            return frequency;
+        }
+
+        /**
+         * Records a request of the key.
+         *
+         * @param hash
+         */
+        void increment(int hash) {
+            int frequency = frequency(hash);
+            if (frequency >= MAX_COUNT) {
+                return;
+            }
+            for (int row = 0; row < DEPTH; ++row) {
+                // Conservative update: only the smallest counters are incremented.
+                int index = indexOf(hash, row);
+                if (table[row][index] == frequency) {
+                    table[row][index]++;
+                }
+            }
+            if (++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        private void reset() {
+            for (byte[] row : table) {
+                for (int i = 0; i < row.length; ++i) {
+                    row[i] >>= 1;
+                }
+            }
+            additions /= 2;
+        }
+    }
+}
@@ -0,0 +1,426 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.ZipEntry;
+
+/**
+ * Index of entries in an archive persisted next to the build records.
+ *
+ * Written when the archive is published,
+ * and read when serving documents to look up entries
+ * without parsing the central directory of the archive.
+ * The index is read into the heap, not memory-mapped, so that no mapping keeps the file
+ * from being deleted with the build (e.g. on Windows) while the archive is cached.
+ * Entries are sorted by their names, and looked up with binary search.
+ * The same structure can be built in memory for archives without the index file,
+ * see {@link #build(File)}.
+ *
+ * The file consists of a header, fixed-size records of entries and the pool of entry names:
+ * <pre>
+ * header (48 bytes):
+ *   int magic, int version, long archive length, long archive last modified,
+ *   int entry count, int reserved, long offset of names, long length of names
+ * record (40 bytes):
+ *   int offset of the name, int length of the name,
+ *   long offset of the local header, long compressed size, long size,
+ *   int CRC-32, short compression method, short general purpose flag
+ * names:
+ *   entry names encoded in UTF-8
+ * </pre>
+ */
+public final class ZipEntryIndexFile implements ZipDirectory {
+    private static final int MAGIC = 0x444C5A49; // "DLZI"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 48;
+    private static final int RECORD_SIZE = 40;
+
+    /**
+     * Bit of the general purpose flag set for encrypted entries.
+     */
+    private static final int ENCRYPTED = 0x1;
+
+    private final ByteBuffer buf;
+    private final int entryCount;
+    private final int namesOffset;
+
+    private ZipEntryIndexFile(ByteBuffer buf, int entryCount, int namesOffset) {
+        this.buf = buf;
+        this.entryCount = entryCount;
+        this.namesOffset = namesOffset;
+    }
+
+    /**
+     * Writes the index of an archive.
+     *
+     * @param archive the archive to index.
+     * @param indexFile the file to write the index to.
+     * @throws java.util.zip.ZipException the archive does not seem a zip file.
+     * @throws IOException
+     */
+    public static void write(File archive, File indexFile) throws IOException {
+        ZipCentralDirectory cen = readCentralDirectory(archive);
+
+        File dir = indexFile.getParentFile();
+        if (dir != null && !dir.mkdirs() && !dir.isDirectory()) {
+            throw new IOException(String.format("Failed to create %s", dir));
+        }
+        File tmp = new File(dir, indexFile.getName() + ".tmp");
+        DataOutputStream os = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)));
+        try {
+            write(cen, archive, os);
+        } finally {
+            os.close();
+        }
+        Files.move(tmp.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * Builds the index of an archive in memory.
+     *
+     * Used for archives published without the index file.
+     * The central directory is read and parsed into primitive arrays,
+     * and entries are looked up in the same way as the persisted index.
+     *
+     * @param archive the archive to index.
+     * @return the index.
+     * @throws java.util.zip.ZipException the archive does not seem a zip file.
+     * @throws IOException
+     */
+    public static ZipEntryIndexFile build(File archive) throws IOException {
+        ZipCentralDirectory cen = readCentralDirectory(archive);
+        long namesOffset = HEADER_SIZE + (long) RECORD_SIZE * cen.getEntryCount();
+        if (namesOffset + cen.getNames().length > Integer.MAX_VALUE) {
+            throw new IOException(String.format("Too many entries in %s", archive));
+        }
+        ByteArrayOutputStream bos = new ByteArrayOutputStream((int) namesOffset + cen.getNames().length);
+        DataOutputStream os = new DataOutputStream(bos);
+        write(cen, archive, os);
+        os.close();
+        return new ZipEntryIndexFile(ByteBuffer.wrap(bos.toByteArray()), cen.getEntryCount(), (int) namesOffset);
+    }
+
+    private static ZipCentralDirectory readCentralDirectory(File archive) throws IOException {
+        FileChannel ch = FileChannel.open(archive.toPath(), StandardOpenOption.READ);
+        try {
+            return ZipCentralDirectory.read(ch);
+        } finally {
+            ch.close();
+        }
+    }
+
+    private static void write(ZipCentralDirectory cen, File archive, DataOutputStream os) throws IOException {
+        int[] order = sortByName(cen);
+        byte[] names = cen.getNames();
+
+        os.writeInt(MAGIC);
+        os.writeInt(VERSION);
+        os.writeLong(archive.length());
+        os.writeLong(archive.lastModified());
+        os.writeInt(cen.getEntryCount());
+        os.writeInt(0);
+        os.writeLong(HEADER_SIZE + (long) RECORD_SIZE * cen.getEntryCount());
+        os.writeLong(names.length);
+
+        int nameOffset = 0;
+        for (int i : order) {
+            os.writeInt(nameOffset);
+            os.writeInt(cen.getNameLength(i));
+            os.writeLong(cen.getLocalHeaderOffset(i));
+            os.writeLong(cen.getCompressedSize(i));
+            os.writeLong(cen.getSize(i));
+            os.writeInt(cen.getCrc(i));
+            os.writeShort(cen.getMethod(i));
+            os.writeShort(cen.getFlag(i));
+            nameOffset += cen.getNameLength(i);
+        }
+        for (int i : order) {
+            os.write(names, cen.getNameOffset(i), cen.getNameLength(i));
+        }
+    }
+
+    /**
+     * Reads the index of an archive.
+     *
+     * @param indexFile the index file.
+     * @param archive the archive indexed.
+     * @return the index. null if not exists, or if the archive is modified after the index is written.
+     * @throws IOException
+     */
+    public static ZipEntryIndexFile open(File indexFile, File archive) throws IOException {
+        if (!indexFile.isFile() || indexFile.length() < HEADER_SIZE || indexFile.length() > Integer.MAX_VALUE) {
+            return null;
+        }
+        ByteBuffer buf;
+        FileChannel ch = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ);
+        try {
+            buf = ByteBuffer.allocate((int) ch.size());
+            while (buf.hasRemaining() && ch.read(buf) >= 0) {
+                // read to the end.
+            }
+            if (buf.hasRemaining()) {
+                // truncated while reading.
+                return null;
+            }
+        } finally {
+            ch.close();
+        }
+
+        if (buf.getInt(0) != MAGIC
+                || buf.getInt(4) != VERSION
+                || buf.getLong(8) != archive.length()
+                || buf.getLong(16) != archive.lastModified()) {
+            return null;
+        }
+        int entryCount = buf.getInt(24);
+        long namesOffset = buf.getLong(32);
+        long namesLength = buf.getLong(40);
+        if (entryCount < 0
+                || namesOffset != HEADER_SIZE + (long) RECORD_SIZE * entryCount
+                || namesOffset + namesLength != buf.capacity()) {
+            return null;
+        }
+        return new ZipEntryIndexFile(buf, entryCount, (int) namesOffset);
+    }
+
+    /**
+     * @return the number of entries.
+     */
+    public int size() {
+        return entryCount;
+    }
+
+    /**
+     * Looks up an entry.
+     *
+     * @param name the name of the entry.
+     * @return the position of the entry in this index. -1 if not found.
+     */
+    public int find(String name) {
+        byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        int i = lowerBound(key);
+        return (i < entryCount && compareName(i, key, false) == 0) ? i : -1;
+    }
+
+    @Override
+    public boolean isFile(String path) {
+        return !path.isEmpty() && !path.endsWith("/") && find(path) >= 0;
+    }
+
+    @Override
+    public boolean isDirectory(String path) {
+        if (path.isEmpty() || "/".equals(path)) {
+            return true;
+        }
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (isFile(path)) {
+            return false;
+        }
+        // Either an explicit directory entry or an entry under the directory follows.
+        byte[] prefix = (path + "/").getBytes(StandardCharsets.UTF_8);
+        int i = lowerBound(prefix);
+        return i < entryCount && compareName(i, prefix, true) == 0;
+    }
+
+    @Override
+    public String resolveIndexFile(String path, String[] indexFiles) {
+        if (path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        for (String indexFile : indexFiles) {
+            String filePath = path.isEmpty() ? indexFile : String.format("%s/%s", path, indexFile);
+            if (isFile(filePath)) {
+                return filePath;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates {@link ZipEntry} holding the attributes of an entry.
+     *
+     * @param i the position of the entry.
+     * @return the entry.
+     */
+    public ZipEntry getEntry(int i) {
+        ZipEntry entry = new ZipEntry(getName(i));
+        entry.setMethod(getMethod(i));
+        entry.setCrc(getCrc(i) & 0xFFFFFFFFL);
+        entry.setSize(getSize(i));
+        entry.setCompressedSize(getCompressedSize(i));
+        return entry;
+    }
+
+    public String getName(int i) {
+        byte[] name = new byte[buf.getInt(recordOffset(i) + 4)];
+        int offset = namesOffset + buf.getInt(recordOffset(i));
+        for (int j = 0; j < name.length; ++j) {
+            name[j] = buf.get(offset + j);
+        }
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    public long getLocalHeaderOffset(int i) {
+        return buf.getLong(recordOffset(i) + 8);
+    }
+
+    public long getCompressedSize(int i) {
+        return buf.getLong(recordOffset(i) + 16);
+    }
+
+    public long getSize(int i) {
+        return buf.getLong(recordOffset(i) + 24);
+    }
+
+    public int getCrc(int i) {
+        return buf.getInt(recordOffset(i) + 32);
+    }
+
+    public int getMethod(int i) {
+        return buf.getShort(recordOffset(i) + 36) & 0xFFFF;
+    }
+
+    public int getFlag(int i) {
+        return buf.getShort(recordOffset(i) + 38) & 0xFFFF;
+    }
+
+    /**
+     * @param i the position of the entry.
+     * @return true if the entry is encrypted, which cannot be read.
+     */
+    public boolean isEncrypted(int i) {
+        return (getFlag(i) & ENCRYPTED) != 0;
+    }
+
+    private static int recordOffset(int i) {
+        return HEADER_SIZE + RECORD_SIZE * i;
+    }
+
+    /**
+     * @param key
+     * @return the first position of an entry not less than the key.
+     */
+    private int lowerBound(byte[] key) {
+        int low = 0;
+        int high = entryCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareName(mid, key, false) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Compares the name of an entry with a key as unsigned bytes.
+     *
+     * @param i the position of the entry.
+     * @param key
+     * @param prefix compare only the first bytes of the name as long as the key.
+     * @return negative, 0 or positive.
+     */
+    private int compareName(int i, byte[] key, boolean prefix) {
+        int offset = namesOffset + buf.getInt(recordOffset(i));
+        int length = buf.getInt(recordOffset(i) + 4);
+        if (prefix && length > key.length) {
+            length = key.length;
+        }
+        int n = Math.min(length, key.length);
+        for (int j = 0; j < n; ++j) {
+            int c = (buf.get(offset + j) & 0xFF) - (key[j] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return length - key.length;
+    }
+
+    /**
+     * Sorts entries by their names as unsigned bytes.
+     *
+     * @param cen
+     * @return positions of entries in the central directory in sorted order.
+     */
+    private static int[] sortByName(ZipCentralDirectory cen) {
+        int[] order = new int[cen.getEntryCount()];
+        for (int i = 0; i < order.length; ++i) {
+            order[i] = i;
+        }
+        mergeSort(cen, order, new int[order.length], 0, order.length);
+        return order;
+    }
+
+    private static void mergeSort(ZipCentralDirectory cen, int[] order, int[] work, int from, int to) {
+        if (to - from < 2) {
+            return;
+        }
+        int mid = (from + to) >>> 1;
+        mergeSort(cen, order, work, from, mid);
+        mergeSort(cen, order, work, mid, to);
+        int left = from;
+        int right = mid;
+        for (int i = from; i < to; ++i) {
+            if (right >= to || (left < mid && compareNames(cen, order[left], order[right]) <= 0)) {
+                work[i] = order[left++];
+            } else {
+                work[i] = order[right++];
+            }
+        }
+        System.arraycopy(work, from, order, from, to - from);
+    }
+
+    private static int compareNames(ZipCentralDirectory cen, int a, int b) {
+        byte[] names = cen.getNames();
+        int offsetA = cen.getNameOffset(a);
+        int offsetB = cen.getNameOffset(b);
+        int lengthA = cen.getNameLength(a);
+        int lengthB = cen.getNameLength(b);
+        int n = Math.min(lengthA, lengthB);
+        for (int j = 0; j < n; ++j) {
+            int c = (names[offsetA + j] & 0xFF) - (names[offsetB + j] & 0xFF);
+            if (c != 0) {
+                return c;
+            }
+        }
+        return lengthA - lengthB;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+
+/**
+ * Reads contents of entries directly from an archive file,
+ * with positions known from {@link ZipCentralDirectory} or {@link ZipEntryIndexFile}.
+ */
+final class ZipEntryReader {
+    private ZipEntryReader() {}
+
+    /**
+     * Opens the contents of an entry.
+     *
+     * @param ch the archive.
+     * @param localHeaderOffset the position of the local header of the entry.
+     * @param method the compression method.
+     * @param compressedSize the size of the entry data in the archive.
+     * @return the stream to read uncompressed contents.
+     * @throws ZipException unsupported compression method.
+     * @throws IOException
+     */
+    static InputStream open(FileChannel ch, long localHeaderOffset, int method, long compressedSize)
+            throws IOException {
+        if (method != ZipEntry.STORED && method != ZipEntry.DEFLATED) {
+            throw new ZipException(String.format("unsupported compression method %d", method));
+        }
+        long dataOffset = ZipCentralDirectory.readDataOffset(ch, localHeaderOffset);
+        InputStream is = new ChannelInputStream(ch, dataOffset, compressedSize);
+        if (method == ZipEntry.STORED) {
+            return is;
+        }
+        return new RawInflaterInputStream(is);
+    }
+
+    /**
+     * Reads a range of a file with positional reads,
+     * so the channel can be shared among threads.
+     */
+    static final class ChannelInputStream extends InputStream {
+        private final FileChannel ch;
+        private long position;
+        private final long end;
+
+        ChannelInputStream(FileChannel ch, long offset, long length) {
+            this.ch = ch;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            byte[] b = new byte[1];
+            return (read(b, 0, 1) < 0) ? -1 : (b[0] & 0xFF);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (position >= end) {
+                return -1;
+            }
+            int n = ch.read(ByteBuffer.wrap(b, off, (int) Math.min(len, end - position)), position);
+            if (n < 0) {
+                return -1;
+            }
+            position += n;
+            return n;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(Math.min(n, end - position), 0);
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int available() {
+            return (int) Math.min(end - position, Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Inflates raw deflate data, and releases the native resources of the inflater when closed.
+     */
+    static final class RawInflaterInputStream extends InflaterInputStream {
+        private boolean eof = false;
+        private boolean closed = false;
+
+        RawInflaterInputStream(InputStream in) {
+            super(in, new Inflater(true), 8192);
+        }
+
+        @Override
+        protected void fill() throws IOException {
+            if (eof) {
+                throw new EOFException("Unexpected end of ZLIB input stream");
+            }
+            len = in.read(buf, 0, buf.length);
+            if (len < 0) {
+                // The inflater without zlib header requires an extra dummy byte at the end.
+                buf[0] = 0;
+                len = 1;
+                eof = true;
+            }
+            inf.setInput(buf, 0, len);
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (closed || inf.finished()) ? 0 : super.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            inf.end();
+            super.close();
+        }
+    }
+}
@@ -0,0 +1,732 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.zip.ZipEntry;
+import javax.servlet.http.HttpServletResponse;
+import jenkins.util.SystemProperties;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Writes contents of archive entries to HTTP responses.
+ */
+final class ZipEntryServer {
+    /**
+     * Bytes transferred at once.
+     */
+    private static final long TRANSFER_CHUNK_SIZE = 1024 * 1024;
+
+    /**
+     * gzip header with deflate method, no flags, no modification time and unknown OS.
+     */
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private static final int GZIP_TRAILER_SIZE = 8;
+
+    /**
+     * Appended to entity tags of gzip encoded representations.
+     * Followed by the compressed size for representations from {@link PrecompressedArchive}.
+     */
+    private static final String GZIP_ETAG_SUFFIX = "-gz";
+
+    /**
+     * Ranges more than this in a request are ignored.
+     */
+    private static final int MAX_RANGES = 32;
+
+    /**
+     * Seconds clients may cache entries accessed via a specific build.
+     */
+    static final long IMMUTABLE_MAX_AGE =
+            SystemProperties.getLong(ZipEntryServer.class.getName() + ".immutableMaxAge", 365L * 24 * 60 * 60);
+
+    /**
+     * Seconds clients may cache entries accessed via a project, without revalidation.
+     */
+    static final long LATEST_MAX_AGE = SystemProperties.getLong(ZipEntryServer.class.getName() + ".latestMaxAge", 0L);
+
+    private ZipEntryServer() {}
+
+    /**
+     * Sets Cache-Control header.
+     *
+     * Contents accessed via a specific completed build never change,
+     * as artifacts are not modified after the build finishes.
+     * Contents accessed via a project change when a new build finishes,
+     * and clients should revalidate them.
+     * Contents are private as they are visible only to users with the permission to read the project,
+     * and must not be stored in shared caches.
+     *
+     * @param rsp
+     * @param immutable whether the contents never change for the URL.
+     */
+    static void setCacheControl(StaplerResponse rsp, boolean immutable) {
+        if (immutable) {
+            rsp.setHeader("Cache-Control", String.format("private, max-age=%d, immutable", IMMUTABLE_MAX_AGE));
+        } else {
+            rsp.setHeader("Cache-Control", String.format("private, max-age=%d, must-revalidate", LATEST_MAX_AGE));
+        }
+    }
+
+    /**
+     * Sets headers {@link StaplerResponse#serveFile(StaplerRequest, java.io.InputStream, long, long, String)} sets.
+     *
+     * @param req
+     * @param rsp
+     * @param lastModified
+     * @param contentLength
+     * @param fileName
+     */
+    static void setHeaders(
+            StaplerRequest req, StaplerResponse rsp, long lastModified, long contentLength, String fileName) {
+        String contentType = req.getServletContext().getMimeType(fileName);
+        rsp.setContentType((contentType != null) ? contentType : "application/octet-stream");
+        if (lastModified > 0) {
+            rsp.setDateHeader("Last-Modified", lastModified);
+        }
+        if (contentLength >= 0) {
+            rsp.setHeader("Content-Length", Long.toString(contentLength));
+        }
+    }
+
+    /**
+     * Returns a strong entity tag of an entry.
+     *
+     * Built from the modification time and the size of the archive
+     * and the CRC-32 and the size of the entry,
+     * so it can be computed without reading the entry.
+     *
+     * @param archive
+     * @param entry
+     * @return the entity tag with quotes. null if the CRC-32 of the entry is not known.
+     */
+    static String getETag(File archive, ZipEntry entry) {
+        if (entry.getCrc() < 0 || entry.getSize() < 0) {
+            return null;
+        }
+        return String.format(
+                "\"%x-%x-%08x-%x\"", archive.lastModified(), archive.length(), entry.getCrc(), entry.getSize());
+    }
+
+    /**
+     * Returns an entity tag of the gzip encoded representation of an entry.
+     *
+     * @param etag the entity tag of the entry.
+     * @return the entity tag with quotes. null if etag is null.
+     */
+    static String getGzipETag(String etag) {
+        if (etag == null) {
+            return null;
+        }
+        return String.format("%s%s\"", etag.substring(0, etag.length() - 1), GZIP_ETAG_SUFFIX);
+    }
+
+    /**
+     * Returns an entity tag of the gzip encoded representation of an entry sent from {@link PrecompressedArchive}.
+     *
+     * Differs from {@link #getGzipETag(String)}, as the companion is compressed in a different way.
+     *
+     * @param etag the entity tag of the entry.
+     * @param compressedSize the size of the entry in the companion.
+     * @return the entity tag with quotes. null if etag is null.
+     */
+    static String getPrecompressedETag(String etag, long compressedSize) {
+        if (etag == null) {
+            return null;
+        }
+        return String.format("%s%s-%x\"", etag.substring(0, etag.length() - 1), GZIP_ETAG_SUFFIX, compressedSize);
+    }
+
+    /**
+     * Tests whether the client already has the entry.
+     *
+     * If-None-Match is used if specified, and If-Modified-Since is used otherwise.
+     * Entity tags are compared with the weak comparison
+     * and the gzip encoded representation is treated as the same one.
+     *
+     * @param req
+     * @param etag the entity tag of the entry. may be null.
+     * @param lastModified
+     * @return true if the response should be 304 Not Modified.
+     */
+    static boolean isNotModified(StaplerRequest req, String etag, long lastModified) {
+        String ifNoneMatch = req.getHeader("If-None-Match");
+        if (ifNoneMatch != null) {
+            return matchesETag(ifNoneMatch, etag);
+        }
+        long ifModifiedSince = req.getDateHeader("If-Modified-Since");
+        return ifModifiedSince >= 0 && ifModifiedSince / 1000 >= lastModified / 1000;
+    }
+
+    /**
+     * @param ifNoneMatch the value of If-None-Match header.
+     * @param etag the entity tag of the entry. may be null.
+     * @return true if any of listed tags matches.
+     */
+    static boolean matchesETag(String ifNoneMatch, String etag) {
+        if ("*".equals(ifNoneMatch.trim())) {
+            return true;
+        }
+        if (etag == null) {
+            return false;
+        }
+        String gzipEtag = getGzipETag(etag);
+        String precompressedPrefix = String.format("%s-", gzipEtag.substring(0, gzipEtag.length() - 1));
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals(etag) || tag.equals(gzipEtag) || tag.startsWith(precompressedPrefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param req
+     * @return true if only headers should be sent.
+     */
+    static boolean isHead(StaplerRequest req) {
+        return "HEAD".equals(req.getMethod());
+    }
+
+    /**
+     * Sends an entry stored without compression, directly from the archive file.
+     *
+     * The contents are transferred with {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+     * without reading them into the heap or through {@link java.util.zip.ZipFile}.
+     *
+     * @param req
+     * @param rsp
+     * @param ch the archive.
+     * @param dataOffset the position of the entry data in the archive.
+     * @param length the size of the entry.
+     * @param lastModified
+     * @param fileName
+     * @param owner closed after sent if sent asynchronously.
+     * @return true if sent with {@link AsyncEntryWriter}, and the owner is closed by it.
+     * @throws IOException
+     */
+    static boolean serveStored(
+            StaplerRequest req,
+            StaplerResponse rsp,
+            FileChannel ch,
+            long dataOffset,
+            long length,
+            long lastModified,
+            String fileName,
+            Closeable owner)
+            throws IOException {
+        setHeaders(req, rsp, lastModified, length, fileName);
+        if (isHead(req)) {
+            return false;
+        }
+        if (AsyncEntryWriter.isApplicable(req, length)) {
+            AsyncEntryWriter.start(req, rsp, new AsyncEntryWriter.ChannelSource(ch, dataOffset, length, owner));
+            return true;
+        }
+        transfer(ch, dataOffset, length, rsp.getOutputStream());
+        return false;
+    }
+
+    /**
+     * Sends cached contents of an entry.
+     *
+     * @param req
+     * @param rsp
+     * @param content the decompressed contents of the entry.
+     * @param lastModified
+     * @param fileName
+     * @throws IOException
+     */
+    static void serveContent(
+            StaplerRequest req,
+            StaplerResponse rsp,
+            ZipEntryContentCache.Content content,
+            long lastModified,
+            String fileName)
+            throws IOException {
+        setHeaders(req, rsp, lastModified, content.getSize(), fileName);
+        if (isHead(req)) {
+            return;
+        }
+        OutputStream os = rsp.getOutputStream();
+        content.write(0, content.getSize(), os);
+        os.flush();
+    }
+
+    /**
+     * Tests whether the client accepts gzip content encoding.
+     *
+     * @param req
+     * @return true if the client accepts gzip.
+     */
+    static boolean acceptsGzip(StaplerRequest req) {
+        return acceptsGzip(req.getHeader("Accept-Encoding"));
+    }
+
+    /**
+     * @param acceptEncoding the value of Accept-Encoding header.
+     * @return true if gzip is acceptable.
+     */
+    static boolean acceptsGzip(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return false;
+        }
+        for (String coding : acceptEncoding.split(",")) {
+            String[] params = coding.split(";");
+            String name = params[0].trim().toLowerCase(Locale.ENGLISH);
+            if (!"gzip".equals(name) && !"x-gzip".equals(name)) {
+                continue;
+            }
+            for (int i = 1; i < params.length; ++i) {
+                String param = params[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(param.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sends an entry compressed with deflate as a gzip encoded response without inflating it.
+     *
+     * Deflate data in zip archives are the same to ones in gzip streams,
+     * so just surrounded with a gzip header and a trailer built from the CRC-32 and the size of the entry.
+     *
+     * @param req
+     * @param rsp
+     * @param ch the archive.
+     * @param dataOffset the position of the entry data in the archive.
+     * @param compressedSize the size of the entry data in the archive.
+     * @param crc the CRC-32 of the entry.
+     * @param size the uncompressed size of the entry.
+     * @param lastModified
+     * @param fileName
+     * @param owner closed after sent if sent asynchronously.
+     * @return true if sent with {@link AsyncEntryWriter}, and the owner is closed by it.
+     * @throws IOException
+     */
+    static boolean serveDeflatedAsGzip(
+            StaplerRequest req,
+            StaplerResponse rsp,
+            FileChannel ch,
+            long dataOffset,
+            long compressedSize,
+            long crc,
+            long size,
+            long lastModified,
+            String fileName,
+            Closeable owner)
+            throws IOException {
+        long length = GZIP_HEADER.length + compressedSize + GZIP_TRAILER_SIZE;
+        setHeaders(req, rsp, lastModified, length, fileName);
+        rsp.setHeader("Content-Encoding", "gzip");
+        if (isHead(req)) {
+            return false;
+        }
+        if (AsyncEntryWriter.isApplicable(req, length)) {
+            AsyncEntryWriter.start(
+                    req,
+                    rsp,
+                    new AsyncEntryWriter.SequenceSource(
+                            new AsyncEntryWriter.BytesSource(GZIP_HEADER),
+                            new AsyncEntryWriter.ChannelSource(ch, dataOffset, compressedSize, owner),
+                            new AsyncEntryWriter.BytesSource(getGzipTrailer(crc, size))));
+            return true;
+        }
+
+        writeGzip(ch, dataOffset, compressedSize, crc, size, rsp.getOutputStream());
+        return false;
+    }
+
+    /**
+     * Writes deflate data in an archive as a gzip stream.
+     *
+     * @param ch the archive.
+     * @param dataOffset the position of the entry data in the archive.
+     * @param compressedSize the size of the entry data in the archive.
+     * @param crc the CRC-32 of the entry.
+     * @param size the uncompressed size of the entry.
+     * @param os
+     * @throws IOException
+     */
+    static void writeGzip(FileChannel ch, long dataOffset, long compressedSize, long crc, long size, OutputStream os)
+            throws IOException {
+        os.write(GZIP_HEADER);
+        transfer(ch, dataOffset, compressedSize, os);
+        os.write(getGzipTrailer(crc, size));
+        os.flush();
+    }
+
+    /**
+     * @param crc the CRC-32 of the entry.
+     * @param size the uncompressed size of the entry.
+     * @return the gzip trailer: the CRC-32 and the size modulo 2^32 in little endian.
+     */
+    private static byte[] getGzipTrailer(long crc, long size) {
+        return ByteBuffer.allocate(GZIP_TRAILER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .putInt((int) crc)
+                .putInt((int) size)
+                .array();
+    }
+
+    /**
+     * Parses byte ranges requested with Range header.
+     *
+     * Ranges are sorted and overlapping or adjacent ones are merged,
+     * so they can be sent reading the entry only forward.
+     *
+     * @param range the value of Range header.
+     * @param length the size of the entry.
+     * @return pairs of the first and the last positions. null if the whole entry should be sent.
+     *     Empty if no range is satisfiable.
+     */
+    static List<long[]> parseRanges(String range, long length) {
+        if (range == null || length < 0) {
+            return null;
+        }
+        range = range.trim();
+        if (!range.startsWith("bytes=")) {
+            return null;
+        }
+        List<long[]> ranges = new ArrayList<long[]>();
+        for (String spec : range.substring("bytes=".length()).split(",")) {
+            spec = spec.trim();
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+            long first;
+            long last;
+            try {
+                if (dash == 0) {
+                    // suffix range: the last N bytes.
+                    long suffix = Long.parseLong(spec.substring(1));
+                    if (suffix <= 0) {
+                        continue;
+                    }
+                    first = Math.max(length - suffix, 0);
+                    last = length - 1;
+                } else {
+                    first = Long.parseLong(spec.substring(0, dash));
+                    last = (dash == spec.length() - 1) ? Long.MAX_VALUE : Long.parseLong(spec.substring(dash + 1));
+                    if (first < 0 || last < first) {
+                        return null;
+                    }
+                    last = Math.min(last, length - 1);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (first >= length) {
+                // not satisfiable.
+                continue;
+            }
+            ranges.add(new long[] {first, last});
+        }
+
+        Collections.sort(ranges, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] o1, long[] o2) {
+                return Long.compare(o1[0], o2[0]);
+            }
+        });
+        List<long[]> merged = new ArrayList<long[]>();
+        for (long[] r : ranges) {
+            long[] prev = merged.isEmpty() ? null : merged.get(merged.size() - 1);
+            if (prev != null && r[0] <= prev[1] + 1) {
+                prev[1] = Math.max(prev[1], r[1]);
+            } else {
+                merged.add(r);
+            }
+        }
+        if (merged.size() > MAX_RANGES) {
+            // Too fragmented. Just send the whole entry.
+            return null;
+        }
+        return merged;
+    }
+
+    /**
+     * Returns byte ranges to send for a request.
+     *
+     * @param req
+     * @param length the size of the entry.
+     * @param lastModified
+     * @param etag the entity tag of the entry. may be null.
+     * @return pairs of the first and the last positions. null if the whole entry should be sent.
+     *     Empty if no range is satisfiable.
+     */
+    static List<long[]> getRanges(StaplerRequest req, long length, long lastModified, String etag) {
+        String range = req.getHeader("Range");
+        if (range == null) {
+            return null;
+        }
+        String ifRangeTag = req.getHeader("If-Range");
+        if (ifRangeTag != null && ifRangeTag.trim().startsWith("\"")) {
+            // If-Range requires the strong comparison.
+            if (etag == null || !etag.equals(ifRangeTag.trim())) {
+                return null;
+            }
+        } else if (ifRangeTag != null) {
+            long ifRange = -1;
+            try {
+                ifRange = req.getDateHeader("If-Range");
+            } catch (IllegalArgumentException e) {
+                // Not a date.
+            }
+            if (ifRange < 0 || ifRange / 1000 != lastModified / 1000) {
+                // The client has a different version. Send the whole entry.
+                return null;
+            }
+        }
+        return parseRanges(range, length);
+    }
+
+    /**
+     * Sends a partial content response.
+     *
+     * @param req
+     * @param rsp
+     * @param ranges ranges returned from {@link #getRanges(StaplerRequest, long, long, String)}.
+     * @param length the size of the entry.
+     * @param lastModified
+     * @param fileName
+     * @param content the contents of the entry. may be null for HEAD requests.
+     * @throws IOException
+     */
+    static void serveRanges(
+            StaplerRequest req,
+            StaplerResponse rsp,
+            List<long[]> ranges,
+            long length,
+            long lastModified,
+            String fileName,
+            EntryContent content)
+            throws IOException {
+        if (ranges.isEmpty()) {
+            rsp.setHeader("Content-Range", String.format("bytes */%d", length));
+            rsp.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        if (ranges.size() == 1) {
+            long[] range = ranges.get(0);
+            setHeaders(req, rsp, lastModified, range[1] - range[0] + 1, fileName);
+            rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            rsp.setHeader("Content-Range", String.format("bytes %d-%d/%d", range[0], range[1], length));
+            if (isHead(req)) {
+                return;
+            }
+            OutputStream os = rsp.getOutputStream();
+            content.write(range[0], range[1] - range[0] + 1, os);
+            os.flush();
+            return;
+        }
+
+        String contentType = req.getServletContext().getMimeType(fileName);
+        if (contentType == null) {
+            contentType = "application/octet-stream";
+        }
+        String boundary = UUID.randomUUID().toString().replace("-", "");
+        List<byte[]> partHeaders = new ArrayList<byte[]>();
+        byte[] end = String.format("\r\n--%s--\r\n", boundary).getBytes(StandardCharsets.US_ASCII);
+        long contentLength = end.length;
+        for (long[] range : ranges) {
+            byte[] partHeader = String.format(
+                            "\r\n--%s\r\nContent-Type: %s\r\nContent-Range: bytes %d-%d/%d\r\n\r\n",
+                            boundary, contentType, range[0], range[1], length)
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + range[1] - range[0] + 1;
+        }
+
+        setHeaders(req, rsp, lastModified, contentLength, fileName);
+        rsp.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        rsp.setContentType(String.format("multipart/byteranges; boundary=%s", boundary));
+        if (isHead(req)) {
+            return;
+        }
+        OutputStream os = rsp.getOutputStream();
+        for (int i = 0; i < ranges.size(); ++i) {
+            long[] range = ranges.get(i);
+            os.write(partHeaders.get(i));
+            content.write(range[0], range[1] - range[0] + 1, os);
+        }
+        os.write(end);
+        os.flush();
+    }
+
+    /**
+     * Contents of an entry to send partially.
+     */
+    interface EntryContent {
+        /**
+         * Writes a part of the entry.
+         *
+         * Called with ascending positions that do not overlap.
+         *
+         * @param start the position in the entry.
+         * @param length
+         * @param os
+         * @throws IOException
+         */
+        void write(long start, long length, OutputStream os) throws IOException;
+    }
+
+    /**
+     * Contents of an entry stored without compression, read with positional access to the archive.
+     */
+    static final class ChannelEntryContent implements EntryContent {
+        private final FileChannel ch;
+        private final long dataOffset;
+
+        ChannelEntryContent(FileChannel ch, long dataOffset) {
+            this.ch = ch;
+            this.dataOffset = dataOffset;
+        }
+
+        @Override
+        public void write(long start, long length, OutputStream os) throws IOException {
+            transfer(ch, dataOffset + start, length, os);
+        }
+    }
+
+    /**
+     * Contents of an entry read from a stream.
+     *
+     * Bytes before the requested position are skipped without being sent.
+     */
+    static final class StreamEntryContent implements EntryContent {
+        private final InputStream is;
+        private final byte[] buf = new byte[8192];
+        private long position = 0;
+
+        StreamEntryContent(InputStream is) {
+            this.is = is;
+        }
+
+        @Override
+        public void write(long start, long length, OutputStream os) throws IOException {
+            while (position < start) {
+                long n = is.skip(start - position);
+                if (n <= 0) {
+                    if (is.read() < 0) {
+                        throw new EOFException();
+                    }
+                    n = 1;
+                }
+                position += n;
+            }
+            long remaining = length;
+            while (remaining > 0) {
+                int n = is.read(buf, 0, (int) Math.min(buf.length, remaining));
+                if (n < 0) {
+                    throw new EOFException();
+                }
+                os.write(buf, 0, n);
+                remaining -= n;
+                position += n;
+            }
+        }
+    }
+
+    /**
+     * Transfers a range of a file to a stream.
+     *
+     * @param ch
+     * @param offset
+     * @param length
+     * @param os
+     * @throws IOException
+     */
+    static void transfer(FileChannel ch, long offset, long length, OutputStream os) throws IOException {
+        // Containers can provide an output stream also available as a channel.
+        WritableByteChannel target =
+                (os instanceof WritableByteChannel) ? (WritableByteChannel) os : Channels.newChannel(os);
+        long position = offset;
+        long end = offset + length;
+        while (position < end) {
+            long n = ch.transferTo(position, Math.min(end - position, TRANSFER_CHUNK_SIZE), target);
+            if (n <= 0) {
+                throw new IOException(String.format("Unexpected end of archive at %d", position));
+            }
+            position += n;
+        }
+        os.flush();
+    }
+
+    /**
+     * Writes a buffer to a stream.
+     *
+     * Buffers outside the heap are written without copying to an array
+     * if the stream is also available as a channel.
+     *
+     * @param src
+     * @param os
+     * @throws IOException
+     */
+    static void write(ByteBuffer src, OutputStream os) throws IOException {
+        if (src.hasArray()) {
+            os.write(src.array(), src.arrayOffset() + src.position(), src.remaining());
+            src.position(src.limit());
+            return;
+        }
+        WritableByteChannel target =
+                (os instanceof WritableByteChannel) ? (WritableByteChannel) os : Channels.newChannel(os);
+        while (src.hasRemaining()) {
+            target.write(src);
+        }
+    }
+}
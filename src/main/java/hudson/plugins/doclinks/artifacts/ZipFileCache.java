@@ -0,0 +1,606 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import jenkins.util.SystemProperties;
+
+/**
+ * Controller-wide cache of opened artifact archives.
+ *
+ * Opening a {@link ZipFile} parses the whole central directory,
+ * so reopening the archive for each request of a document page is expensive.
+ * Archives are keyed by the path, the last modified time and the size of the file,
+ * and a rewritten artifact never hits a stale handle.
+ *
+ * Handles are reference-counted and an archive is closed only after all users released it.
+ * Archives not in use are closed in least recently used order when more than
+ * {@link #MAX_OPEN_FILES} archives are open, or when they are not used for {@link #IDLE_TIMEOUT} milliseconds.
+ *
+ * Archives without {@link ZipEntryIndexFile} are read with the {@link Engine} specified with {@link #ENGINE}.
+ */
+public final class ZipFileCache {
+    private static final Logger LOGGER = Logger.getLogger(ZipFileCache.class.getName());
+
+    /**
+     * The number of archives kept open.
+     */
+    public static final int MAX_OPEN_FILES =
+            SystemProperties.getInteger(ZipFileCache.class.getName() + ".maxOpenFiles", 32);
+
+    /**
+     * Milliseconds an unused archive is kept open.
+     */
+    public static final long IDLE_TIMEOUT =
+            SystemProperties.getLong(ZipFileCache.class.getName() + ".idleTimeout", 5 * 60 * 1000L);
+
+    /**
+     * Engine to read archives without {@link ZipEntryIndexFile}.
+     */
+    public static final Engine ENGINE =
+            Engine.of(SystemProperties.getString(ZipFileCache.class.getName() + ".engine"));
+
+    private static final ZipFileCache INSTANCE = new ZipFileCache(MAX_OPEN_FILES, IDLE_TIMEOUT, ENGINE);
+
+    /**
+     * Implementations to look up and read entries of archives.
+     */
+    public enum Engine {
+        /**
+         * {@link ZipFile} of JDK.
+         */
+        JDK,
+
+        /**
+         * Reads the central directory, and parses it into primitive arrays sorted by names.
+         * Entries are read from the file with positional reads.
+         * Supports Zip64 archives, and the index is as compact as {@link ZipEntryIndexFile}.
+         */
+        MAPPED;
+
+        /**
+         * @param name the name of the engine. case insensitive.
+         * @return the engine. {@link #JDK} if not specified or unknown.
+         */
+        public static Engine of(String name) {
+            if (name == null || name.trim().isEmpty()) {
+                return JDK;
+            }
+            for (Engine engine : values()) {
+                if (engine.name().equalsIgnoreCase(name.trim())) {
+                    return engine;
+                }
+            }
+            LOGGER.warning(String.format("Unknown archive engine: %s. Use %s instead.", name, JDK));
+            return JDK;
+        }
+    }
+
+    /**
+     * @return the cache shared in the controller.
+     */
+    public static ZipFileCache get() {
+        return INSTANCE;
+    }
+
+    private final int maxOpenFiles;
+    private final long idleTimeout;
+    private final Engine engine;
+
+    /**
+     * Archives in access order.
+     */
+    private final LinkedHashMap<Key, CachedZipFile> cache = new LinkedHashMap<Key, CachedZipFile>(16, 0.75f, true);
+
+    /**
+     * @param maxOpenFiles
+     * @param idleTimeout
+     */
+    ZipFileCache(int maxOpenFiles, long idleTimeout) {
+        this(maxOpenFiles, idleTimeout, ENGINE);
+    }
+
+    /**
+     * @param maxOpenFiles
+     * @param idleTimeout
+     * @param engine
+     */
+    ZipFileCache(int maxOpenFiles, long idleTimeout, Engine engine) {
+        this.maxOpenFiles = Math.max(maxOpenFiles, 0);
+        this.idleTimeout = idleTimeout;
+        this.engine = engine;
+    }
+
+    /**
+     * Opens an archive, or reuses an archive already opened.
+     *
+     * The caller must close the returned handle after finished reading the archive.
+     *
+     * @param file the archive file.
+     * @return a handle to the opened archive.
+     * @throws IOException failed to open the archive. {@link java.util.zip.ZipException} if not a zip file.
+     */
+    public Handle acquire(File file) throws IOException {
+        return acquire(file, null);
+    }
+
+    /**
+     * Opens an archive, or reuses an archive already opened.
+     *
+     * If a valid {@link ZipEntryIndexFile} exists for the archive,
+     * entries are looked up with it and the central directory of the archive is never parsed.
+     *
+     * The caller must close the returned handle after finished reading the archive.
+     *
+     * @param file the archive file.
+     * @param indexFile the {@link ZipEntryIndexFile} for the archive. can be null.
+     * @return a handle to the opened archive.
+     * @throws IOException failed to open the archive. {@link java.util.zip.ZipException} if not a zip file.
+     */
+    public Handle acquire(File file, File indexFile) throws IOException {
+        Key key = new Key(file);
+        CachedZipFile cached;
+        List<CachedZipFile> evicted;
+        synchronized (this) {
+            cached = cache.get(key);
+            if (cached == null) {
+                cached = new CachedZipFile(file, indexFile, engine);
+                cache.put(key, cached);
+            }
+            cached.refCount++;
+            evicted = evict(System.currentTimeMillis());
+        }
+        closeAll(evicted);
+
+        try {
+            // Opened outside the lock not to block requests for other archives.
+            cached.open();
+        } catch (IOException e) {
+            synchronized (this) {
+                cache.remove(key, cached);
+                // Users acquired it concurrently close it when they release it.
+                cached.retired = true;
+            }
+            release(cached);
+            throw e;
+        }
+        return new Handle(cached);
+    }
+
+    /**
+     * Drops handles to a file, before the file is replaced or deleted.
+     *
+     * Archives not in use are closed immediately,
+     * and ones in use are closed when the last user releases them.
+     *
+     * @param file the archive file.
+     */
+    public void invalidate(File file) {
+        String path = file.getAbsolutePath();
+        List<CachedZipFile> evicted = new ArrayList<CachedZipFile>();
+        synchronized (this) {
+            for (Iterator<Map.Entry<Key, CachedZipFile>> it = cache.entrySet().iterator(); it.hasNext(); ) {
+                Map.Entry<Key, CachedZipFile> entry = it.next();
+                if (!entry.getKey().path.equals(path)) {
+                    continue;
+                }
+                it.remove();
+                entry.getValue().retired = true;
+                if (entry.getValue().refCount <= 0) {
+                    evicted.add(entry.getValue());
+                }
+            }
+        }
+        closeAll(evicted);
+    }
+
+    /**
+     * Closes archives not used for a while.
+     */
+    public void expire() {
+        List<CachedZipFile> evicted;
+        synchronized (this) {
+            evicted = evict(System.currentTimeMillis());
+        }
+        closeAll(evicted);
+    }
+
+    /**
+     * @return the number of archives in the cache.
+     */
+    public synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * Removes archives exceeding the limits from the cache.
+     *
+     * Must be called in synchronized block.
+     *
+     * @param now
+     * @return archives to close.
+     */
+    private List<CachedZipFile> evict(long now) {
+        List<CachedZipFile> evicted = new ArrayList<CachedZipFile>();
+        int overflow = cache.size() - maxOpenFiles;
+        for (Iterator<CachedZipFile> it = cache.values().iterator(); it.hasNext(); ) {
+            CachedZipFile cached = it.next();
+            if (cached.refCount > 0) {
+                continue;
+            }
+            if (overflow > 0 || now - cached.lastUsed >= idleTimeout) {
+                it.remove();
+                cached.retired = true;
+                evicted.add(cached);
+                --overflow;
+            }
+        }
+
+        // All remaining archives are in use. Retire the least recently used ones,
+        // and they are closed when the last user releases them.
+        for (Iterator<CachedZipFile> it = cache.values().iterator(); overflow > 0 && it.hasNext(); --overflow) {
+            it.next().retired = true;
+            it.remove();
+        }
+        return evicted;
+    }
+
+    private void release(CachedZipFile cached) {
+        boolean close;
+        synchronized (this) {
+            --cached.refCount;
+            cached.lastUsed = System.currentTimeMillis();
+            close = cached.retired && cached.refCount <= 0;
+        }
+        if (close) {
+            cached.close();
+        }
+    }
+
+    private static void closeAll(List<CachedZipFile> evicted) {
+        for (CachedZipFile cached : evicted) {
+            cached.close();
+        }
+    }
+
+    /**
+     * Identifies the contents of an archive file.
+     */
+    private static final class Key {
+        private final String path;
+        private final long lastModified;
+        private final long length;
+
+        public Key(File file) {
+            this.path = file.getAbsolutePath();
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return path.equals(other.path) && lastModified == other.lastModified && length == other.length;
+        }
+
+        @Override
+        public int hashCode() {
+            int hash = path.hashCode();
+            hash = hash * 31 + Long.hashCode(lastModified);
+            hash = hash * 31 + Long.hashCode(length);
+            return hash;
+        }
+    }
+
+    /**
+     * An archive in the cache.
+     *
+     * {@link #refCount}, {@link #lastUsed} and {@link #retired} are guarded by {@link ZipFileCache}.
+     */
+    private static final class CachedZipFile {
+        private final File file;
+        private final File indexFile;
+        private final Engine engine;
+        private ZipFile zip;
+        private ZipEntryIndexFile entryIndexFile;
+        private ZipDirectoryIndex directoryIndex;
+        private FileChannel channel;
+        private final ZipPathCache pathCache = new ZipPathCache(ZipPathCache.MAX_PATHS);
+        private boolean closed;
+        private int refCount;
+        private long lastUsed = System.currentTimeMillis();
+        private boolean retired;
+
+        public CachedZipFile(File file, File indexFile, Engine engine) {
+            this.file = file;
+            this.indexFile = indexFile;
+            this.engine = engine;
+        }
+
+        public synchronized void open() throws IOException {
+            if (closed) {
+                throw new IOException(String.format("%s is already closed", file));
+            }
+            if (zip != null || entryIndexFile != null) {
+                return;
+            }
+            if (indexFile != null) {
+                entryIndexFile = ZipEntryIndexFile.open(indexFile, file);
+                if (entryIndexFile != null) {
+                    return;
+                }
+            }
+            if (engine == Engine.MAPPED) {
+                entryIndexFile = ZipEntryIndexFile.build(file);
+                return;
+            }
+            zip = new ZipFile(file);
+        }
+
+        public synchronized ZipFile getZipFile() throws IOException {
+            if (zip == null && !closed) {
+                zip = new ZipFile(file);
+            }
+            return zip;
+        }
+
+        public synchronized ZipEntryIndexFile getEntryIndexFile() {
+            return entryIndexFile;
+        }
+
+        public synchronized ZipDirectoryIndex getDirectoryIndex() throws IOException {
+            if (directoryIndex == null && getZipFile() != null) {
+                directoryIndex = ZipDirectoryIndex.of(zip);
+            }
+            return directoryIndex;
+        }
+
+        public synchronized FileChannel getChannel() throws IOException {
+            if (channel == null && !closed) {
+                channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            }
+            return channel;
+        }
+
+        public synchronized void close() {
+            closed = true;
+            try {
+                if (zip != null) {
+                    zip.close();
+                }
+                if (channel != null) {
+                    channel.close();
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, String.format("Failed to close %s", file), e);
+            }
+            zip = null;
+            channel = null;
+            entryIndexFile = null;
+            directoryIndex = null;
+        }
+    }
+
+    /**
+     * A reference to an opened archive.
+     *
+     * The archive is never closed until this handle is closed.
+     */
+    public final class Handle implements Closeable {
+        private final CachedZipFile cached;
+        private boolean released;
+
+        private Handle(CachedZipFile cached) {
+            this.cached = cached;
+        }
+
+        /**
+         * @return the archive file.
+         */
+        public File getFile() {
+            return cached.file;
+        }
+
+        /**
+         * Returns the archive opened with {@link ZipFile}.
+         *
+         * Opens the archive at the first call if entries are looked up with {@link ZipEntryIndexFile}.
+         *
+         * @return the opened archive. null if already closed.
+         * @throws IOException
+         */
+        public ZipFile getZipFile() throws IOException {
+            return cached.getZipFile();
+        }
+
+        /**
+         * @return the index of the archive, persisted or built with {@link Engine#MAPPED}. null if not available.
+         */
+        public ZipEntryIndexFile getEntryIndexFile() {
+            return cached.getEntryIndexFile();
+        }
+
+        /**
+         * Returns the index of entries in the archive.
+         *
+         * Built at the first call and shared among all handles to the archive.
+         *
+         * @return the index of entries in the archive.
+         * @throws IOException
+         */
+        public ZipDirectoryIndex getDirectoryIndex() throws IOException {
+            return cached.getDirectoryIndex();
+        }
+
+        /**
+         * @return the directory structure of the archive.
+         * @throws IOException
+         */
+        public ZipDirectory getDirectory() throws IOException {
+            ZipEntryIndexFile entryIndexFile = getEntryIndexFile();
+            return (entryIndexFile != null) ? entryIndexFile : getDirectoryIndex();
+        }
+
+        /**
+         * @param name the name of the entry.
+         * @return the entry. null if not exists.
+         * @throws IOException
+         */
+        public ZipEntry getEntry(String name) throws IOException {
+            ZipEntryIndexFile entryIndexFile = getEntryIndexFile();
+            if (entryIndexFile != null) {
+                int i = entryIndexFile.find(name);
+                return (i >= 0) ? entryIndexFile.getEntry(i) : null;
+            }
+            return getZipFile().getEntry(name);
+        }
+
+        /**
+         * Returns the position of the data of an entry in the archive.
+         *
+         * Available only when entries are looked up with {@link ZipEntryIndexFile},
+         * as {@link ZipFile} does not provide positions of entries.
+         *
+         * @param entry the entry returned from {@link #getEntry(String)}.
+         * @return the position of the entry data. -1 if not known.
+         * @throws IOException
+         */
+        public long getDataOffset(ZipEntry entry) throws IOException {
+            ZipEntryIndexFile entryIndexFile = getEntryIndexFile();
+            if (entryIndexFile == null) {
+                return -1;
+            }
+            int i = entryIndexFile.find(entry.getName());
+            if (i < 0) {
+                return -1;
+            }
+            checkNotEncrypted(entryIndexFile, i);
+            return ZipCentralDirectory.readDataOffset(getChannel(), entryIndexFile.getLocalHeaderOffset(i));
+        }
+
+        /**
+         * @return the channel to read the archive file. Shared among threads, so use only positional reads.
+         * @throws IOException
+         */
+        public FileChannel getChannel() throws IOException {
+            return cached.getChannel();
+        }
+
+        /**
+         * @return the cache of resolved request paths, shared among all handles to the archive.
+         */
+        ZipPathCache getPathCache() {
+            return cached.pathCache;
+        }
+
+        /**
+         * @param entry the entry returned from {@link #getEntry(String)}.
+         * @return the stream to read the contents of the entry.
+         * @throws IOException
+         */
+        public InputStream getInputStream(ZipEntry entry) throws IOException {
+            ZipEntryIndexFile entryIndexFile = getEntryIndexFile();
+            if (entryIndexFile != null) {
+                int i = entryIndexFile.find(entry.getName());
+                if (i < 0) {
+                    throw new ZipException(String.format("no such entry: %s", entry.getName()));
+                }
+                checkNotEncrypted(entryIndexFile, i);
+                return ZipEntryReader.open(
+                        getChannel(),
+                        entryIndexFile.getLocalHeaderOffset(i),
+                        entryIndexFile.getMethod(i),
+                        entryIndexFile.getCompressedSize(i));
+            }
+            return getZipFile().getInputStream(entry);
+        }
+
+        /**
+         * Rejects encrypted entries as {@link ZipFile} does,
+         * not to send the encrypted data as the contents.
+         *
+         * @param entryIndexFile
+         * @param i the position of the entry.
+         * @throws ZipException the entry is encrypted.
+         */
+        private void checkNotEncrypted(ZipEntryIndexFile entryIndexFile, int i) throws ZipException {
+            if (entryIndexFile.isEncrypted(i)) {
+                throw new ZipException(
+                        String.format("encrypted ZIP entry not supported: %s", entryIndexFile.getName(i)));
+            }
+        }
+
+        /**
+         * Releases the reference to the archive.
+         */
+        @Override
+        public synchronized void close() {
+            if (released) {
+                return;
+            }
+            released = true;
+            release(cached);
+        }
+    }
+
+    /**
+     * Closes archives not used for {@link ZipFileCache#IDLE_TIMEOUT} milliseconds.
+     *
+     * Archives of deleted builds are also released here,
+     * otherwise their disk space is not reclaimed while they are open.
+     */
+    @Extension
+    public static class IdleArchiveCloser extends PeriodicWork {
+        @Override
+        public long getRecurrencePeriod() {
+            return Math.max(IDLE_TIMEOUT / 2, MIN);
+        }
+
+        @Override
+        protected void doRun() throws Exception {
+            get().expire();
+        }
+    }
+}
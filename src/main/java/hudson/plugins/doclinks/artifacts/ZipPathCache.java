@@ -0,0 +1,146 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import jenkins.util.SystemProperties;
+
+/**
+ * Remembers how request paths are resolved in an archive.
+ *
+ * Resolving a path may look up the entry, the directory and each index file,
+ * and crawlers and broken links request the same missing paths repeatedly.
+ * Both found and not found results are cached,
+ * up to {@link #MAX_PATHS} paths in least recently used order.
+ *
+ * Held by an opened archive in {@link ZipFileCache},
+ * so results are discarded when the artifact is rewritten.
+ */
+final class ZipPathCache {
+    /**
+     * The number of paths remembered for an archive.
+     */
+    static final int MAX_PATHS = SystemProperties.getInteger(ZipPathCache.class.getName() + ".maxPaths", 1024);
+
+    private final int maxPaths;
+
+    private final LinkedHashMap<String, Resolution> cache;
+
+    /**
+     * @param maxPaths
+     */
+    ZipPathCache(int maxPaths) {
+        this.maxPaths = Math.max(maxPaths, 0);
+        this.cache = new LinkedHashMap<String, Resolution>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Resolution> eldest) {
+                return size() > ZipPathCache.this.maxPaths;
+            }
+        };
+    }
+
+    /**
+     * @param path the path in the archive requested.
+     * @param trailingSlash whether the request URI ends with a slash.
+     * @param indexFile the setting of index files.
+     * @return the key for the request.
+     */
+    static String keyOf(String path, boolean trailingSlash, String indexFile) {
+        return String.format("%s\u0000%s%s", (indexFile != null) ? indexFile : "", path, trailingSlash ? "/" : "");
+    }
+
+    /**
+     * @param key
+     * @return the resolution. null if not cached.
+     */
+    synchronized Resolution get(String key) {
+        return cache.get(key);
+    }
+
+    /**
+     * @param key
+     * @param resolution
+     */
+    synchronized void put(String key, Resolution resolution) {
+        cache.put(key, resolution);
+    }
+
+    /**
+     * @return the number of cached paths.
+     */
+    synchronized int size() {
+        return cache.size();
+    }
+
+    /**
+     * How a path is resolved.
+     */
+    static final class Resolution {
+        /**
+         * The path is a directory and should be accessed with a trailing slash.
+         */
+        static final Resolution REDIRECT = new Resolution(null, -1);
+
+        /**
+         * No entry for the path.
+         */
+        static final Resolution NOT_FOUND = new Resolution(null, -1);
+
+        private final ZipEntry entry;
+        private final long dataOffset;
+
+        private Resolution(ZipEntry entry, long dataOffset) {
+            this.entry = entry;
+            this.dataOffset = dataOffset;
+        }
+
+        /**
+         * @param entry the entry to send. Must not be modified.
+         * @param dataOffset the position of the entry data in the archive. -1 if not known.
+         * @return the resolution.
+         */
+        static Resolution of(ZipEntry entry, long dataOffset) {
+            return new Resolution(entry, dataOffset);
+        }
+
+        /**
+         * @return the entry to send. null for {@link #REDIRECT} and {@link #NOT_FOUND}.
+         */
+        ZipEntry getEntry() {
+            return entry;
+        }
+
+        /**
+         * @return the position of the entry data in the archive. -1 if not known.
+         */
+        long getDataOffset() {
+            return dataOffset;
+        }
+    }
+}
@@ -13,6 +13,7 @@ import java.util.Map;
 import java.util.logging.Logger;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletResponse;
+import jenkins.util.VirtualFile;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
@@ -76,9 +77,15 @@ public class DocLinksMavenAction implements Action {
             return null;
         }
 
-        final FilePath basePath = new FilePath(DocLinksMavenReporter.getDocLinksDir(module));
-        final DirectoryBrowserSupport dbs =
-                new DirectoryBrowserSupport(this, basePath, Constants.PLUGIN_NAME, null, false);
+        final VirtualFile archiveRoot = doc.getArchiveRoot(DocLinksMavenReporter.getDocLinksDir(module));
+        final DirectoryBrowserSupport dbs;
+        if (archiveRoot != null) {
+            // stored as an archive.
+            dbs = new DirectoryBrowserSupport(this, archiveRoot, Constants.PLUGIN_NAME, null, false);
+        } else {
+            final FilePath basePath = new FilePath(DocLinksMavenReporter.getDocLinksDir(module));
+            dbs = new DirectoryBrowserSupport(this, basePath, Constants.PLUGIN_NAME, null, false);
+        }
         // set indexfile
         if (doc.getFile() != null) {
             dbs.setIndexFileName(doc.getFile());
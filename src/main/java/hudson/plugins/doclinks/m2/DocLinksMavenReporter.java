@@ -20,7 +20,6 @@ import hudson.plugins.doclinks.Document;
 import hudson.util.FormValidation;
 import java.io.File;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -78,8 +77,6 @@ public class DocLinksMavenReporter extends MavenReporter {
     public boolean end(final MavenBuild build, final Launcher launcher, final BuildListener listener)
             throws InterruptedException, IOException {
 
-        final PrintStream logger = listener.getLogger();
-
         if (build.getResult().isWorseOrEqualTo(Result.FAILURE)) {
             return true;
         }
@@ -88,9 +85,9 @@ public class DocLinksMavenReporter extends MavenReporter {
         final FilePath docLinksDir = new FilePath(getDocLinksDir(build.getParent()));
 
         try {
-            docLinksDir.deleteRecursive();
-            for (final Document doc : documents) {
-                doc.publish(ws, docLinksDir, logger);
+            DocLinksUtils.deleteObsoleteDocuments(getDocLinksDir(build.getParent()), documents);
+            if (DocLinksUtils.publishAll(documents, ws, docLinksDir, listener) > 0) {
+                build.setResult(Result.UNSTABLE);
             }
         } catch (final IOException e) {
             Util.displayIOException(e, listener);
@@ -0,0 +1,102 @@
+package hudson.plugins.doclinks;
+
+import hudson.Util;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+public class DocBlobStoreNoHudsonTest extends TestCase {
+
+    private File tmpDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        tmpDir = Files.createTempDirectory("docblobstore").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Util.deleteRecursive(tmpDir);
+        super.tearDown();
+    }
+
+    private void writeFile(final File file, final String content) throws IOException {
+        file.getParentFile().mkdirs();
+        final FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+    private String readFile(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), "UTF-8");
+    }
+
+    public void testDeduplicate() throws Exception {
+        final DocBlobStore store = new DocBlobStore(new File(tmpDir, "blobs"));
+        final File doc1 = new File(tmpDir, "job1/1");
+        final File doc2 = new File(tmpDir, "job2/1");
+        writeFile(new File(doc1, "index.html"), "Default top page.");
+        writeFile(new File(doc1, "subdir/page.html"), "Page in a sub directory.");
+        writeFile(new File(doc2, "index.html"), "Default top page.");
+        writeFile(new File(doc2, "other.html"), "Another page.");
+
+        assertEquals(0, store.deduplicate(doc1));
+        assertEquals(1, store.deduplicate(doc2));
+
+        assertTrue(Files.isSameFile(new File(doc1, "index.html").toPath(), new File(doc2, "index.html").toPath()));
+        assertEquals("Default top page.", readFile(new File(doc2, "index.html")));
+        assertEquals("Another page.", readFile(new File(doc2, "other.html")));
+        assertEquals(
+                "Default top page.",
+                readFile(store.getBlob(DocBlobStore.digest(new File(doc1, "index.html")))));
+        assertFalse(new File(doc2, "index.html.doclinks-tmp").exists());
+    }
+
+    public void testDeduplicatePaths() throws Exception {
+        final DocBlobStore store = new DocBlobStore(new File(tmpDir, "blobs"));
+        final File doc1 = new File(tmpDir, "job1/1");
+        final File doc2 = new File(tmpDir, "job2/1");
+        writeFile(new File(doc1, "index.html"), "Default top page.");
+        writeFile(new File(doc2, "index.html"), "Default top page.");
+        writeFile(new File(doc2, "subdir/index.html"), "Default top page.");
+        store.deduplicate(doc1);
+
+        assertEquals(1, store.deduplicate(doc2, Arrays.asList("subdir/index.html", "nosuchfile.html")));
+        assertTrue(Files.isSameFile(
+                new File(doc1, "index.html").toPath(), new File(doc2, "subdir/index.html").toPath()));
+        assertFalse(Files.isSameFile(
+                new File(doc1, "index.html").toPath(), new File(doc2, "index.html").toPath()));
+    }
+
+    public void testCollect() throws Exception {
+        final DocBlobStore store = new DocBlobStore(new File(tmpDir, "blobs"));
+        final File doc1 = new File(tmpDir, "job1/1");
+        final File doc2 = new File(tmpDir, "job2/1");
+        writeFile(new File(doc1, "index.html"), "Default top page.");
+        writeFile(new File(doc2, "index.html"), "Default top page.");
+        writeFile(new File(doc2, "other.html"), "Another page.");
+        store.deduplicate(doc1);
+        store.deduplicate(doc2);
+
+        // Nothing to collect while documents link to stored files.
+        assertEquals(0, store.collect());
+
+        Util.deleteRecursive(doc2);
+        assertEquals(1, store.collect());
+        assertTrue(store.getBlob(DocBlobStore.digest(new File(doc1, "index.html"))).isFile());
+
+        Util.deleteRecursive(doc1);
+        assertEquals(1, store.collect());
+    }
+
+    public void testCollectWithoutStore() throws Exception {
+        assertEquals(0, new DocBlobStore(new File(tmpDir, "nosuchdir")).collect());
+    }
+}
@@ -0,0 +1,145 @@
+package hudson.plugins.doclinks;
+
+import hudson.FilePath;
+import hudson.Util;
+import hudson.util.StreamTaskListener;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import junit.framework.TestCase;
+
+public class DocLinksUtilsNoHudsonTest extends TestCase {
+
+    private File tmpDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        tmpDir = Files.createTempDirectory("doclinksutils").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Util.deleteRecursive(tmpDir);
+        super.tearDown();
+    }
+
+    private void writeFile(final File file, final String content) throws IOException {
+        file.getParentFile().mkdirs();
+        final FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+    public void testPublishAll() throws Exception {
+        final File ws = new File(tmpDir, "workspace");
+        final File docLinksDir = new File(tmpDir, "docLinks");
+        writeFile(new File(ws, "doc1/index.html"), "First document.");
+        writeFile(new File(ws, "doc3/subdir/index.html"), "Third document.");
+        final List<Document> documents = Arrays.asList(
+                new Document("Document1", null, "doc1", true, null, "1"),
+                new Document("Document2", null, "nosuchdir", true, null, "2"),
+                new Document("Document3", null, "doc3", true, null, "3"));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final int failed = DocLinksUtils.publishAll(
+                documents, new FilePath(ws), new FilePath(docLinksDir), new StreamTaskListener(out));
+
+        // a failed document does not stop the others.
+        assertEquals(1, failed);
+        assertTrue(new File(docLinksDir, "1/index.html").isFile());
+        assertFalse(new File(docLinksDir, "2").exists());
+        assertTrue(new File(docLinksDir, "3/subdir/index.html").isFile());
+
+        // logs are in the order of documents.
+        final String log = out.toString("UTF-8");
+        assertTrue(log, log.indexOf("Document1") >= 0);
+        assertTrue(log, log.indexOf("Document1") < log.indexOf("Document2"));
+        assertTrue(log, log.indexOf("Document2") < log.indexOf("Document3"));
+    }
+
+    public void testPublishAllIncremental() throws Exception {
+        final File ws = new File(tmpDir, "workspace");
+        final File docLinksDir = new File(tmpDir, "docLinks");
+        writeFile(new File(ws, "doc1/index.html"), "First document.");
+        writeFile(new File(ws, "doc1/page1.html"), "Page 1.");
+        writeFile(new File(ws, "doc1/page2.html"), "Page 2.");
+        writeFile(new File(ws, "doc1/subdir/page3.html"), "Page 3.");
+        final List<Document> documents = Arrays.asList(new Document("Document1", null, "doc1", true, null, "1"));
+        final StreamTaskListener listener = new StreamTaskListener(new ByteArrayOutputStream());
+
+        assertEquals(0, DocLinksUtils.publishAll(documents, new FilePath(ws), new FilePath(docLinksDir), listener));
+
+        writeFile(new File(ws, "doc1/subdir/page3.html"), "Page 3 updated.");
+        assertTrue(new File(ws, "doc1/page2.html").delete());
+        assertEquals(0, DocLinksUtils.publishAll(documents, new FilePath(ws), new FilePath(docLinksDir), listener));
+        assertEquals(
+                "Page 3 updated.",
+                new String(Files.readAllBytes(new File(docLinksDir, "1/subdir/page3.html").toPath()), "UTF-8"));
+        assertTrue(new File(docLinksDir, "1/page1.html").isFile());
+        assertFalse(new File(docLinksDir, "1/page2.html").exists());
+
+        // a document failed to publish is not served with the stale contents.
+        Util.deleteRecursive(new File(ws, "doc1"));
+        assertEquals(1, DocLinksUtils.publishAll(documents, new FilePath(ws), new FilePath(docLinksDir), listener));
+        assertFalse(new File(docLinksDir, "1").exists());
+        assertFalse(new File(Document.getManifestDir(docLinksDir), "1.manifest").exists());
+    }
+
+    public void testPublishAllInterrupted() throws Exception {
+        final File ws = new File(tmpDir, "workspace");
+        final File docLinksDir = new File(tmpDir, "docLinks");
+        writeFile(new File(ws, "doc2/index.html"), "Second document.");
+        final List<Document> documents = Arrays.asList(
+                new Document("Document1", null, "doc1", true, null, "1") {
+                    @Override
+                    public void publish(final FilePath origin, final FilePath dest, final PrintStream logger)
+                            throws IOException, InterruptedException {
+                        throw new InterruptedException();
+                    }
+                },
+                new Document("Document2", null, "doc2", true, null, "2"));
+
+        try {
+            DocLinksUtils.publishAll(
+                    documents,
+                    new FilePath(ws),
+                    new FilePath(docLinksDir),
+                    new StreamTaskListener(new ByteArrayOutputStream()));
+            fail();
+        } catch (final InterruptedException e) {
+            // not counted as a failure.
+        }
+    }
+
+    public void testPublishAllError() throws Exception {
+        final File ws = new File(tmpDir, "workspace");
+        final File docLinksDir = new File(tmpDir, "docLinks");
+        final List<Document> documents = Arrays.asList(new Document("Document1", null, "doc1", true, null, "1") {
+            @Override
+            public void publish(final FilePath origin, final FilePath dest, final PrintStream logger)
+                    throws IOException, InterruptedException {
+                throw new OutOfMemoryError();
+            }
+        });
+
+        try {
+            DocLinksUtils.publishAll(
+                    documents,
+                    new FilePath(ws),
+                    new FilePath(docLinksDir),
+                    new StreamTaskListener(new ByteArrayOutputStream()));
+            fail();
+        } catch (final OutOfMemoryError e) {
+            // not counted as a failure.
+        }
+    }
+}
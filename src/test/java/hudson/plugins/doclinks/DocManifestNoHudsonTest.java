@@ -0,0 +1,111 @@
+package hudson.plugins.doclinks;
+
+import hudson.Util;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import junit.framework.TestCase;
+
+public class DocManifestNoHudsonTest extends TestCase {
+
+    private File tmpDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        tmpDir = Files.createTempDirectory("docmanifest").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Util.deleteRecursive(tmpDir);
+        super.tearDown();
+    }
+
+    private void writeFile(final File file, final String content) throws IOException {
+        file.getParentFile().mkdirs();
+        final FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+    public void testScan() throws Exception {
+        final File dir = new File(tmpDir, "doc");
+        writeFile(new File(dir, "index.html"), "Default top page.");
+        writeFile(new File(dir, "subdir/page.html"), "Page in a sub directory.");
+
+        final DocManifest recursive = DocManifest.scan(dir, "**/*");
+        assertEquals(2, recursive.size());
+        assertEquals(17, recursive.get("index.html").getSize());
+        assertEquals(
+                DocBlobStore.digest(new File(dir, "subdir/page.html")),
+                recursive.get("subdir/page.html").getDigest());
+
+        final DocManifest flat = DocManifest.scan(dir, "*");
+        assertEquals(1, flat.size());
+        assertNull(flat.get("subdir/page.html"));
+    }
+
+    public void testChangedAndRemovedPaths() throws Exception {
+        final DocManifest previous = new DocManifest();
+        previous.put("index.html", new DocManifest.Entry(10, "aaa"));
+        previous.put("changed.html", new DocManifest.Entry(10, "bbb"));
+        previous.put("resized.html", new DocManifest.Entry(10, "ccc"));
+        previous.put("removed.html", new DocManifest.Entry(10, "ddd"));
+
+        final DocManifest current = new DocManifest();
+        current.put("index.html", new DocManifest.Entry(10, "aaa"));
+        current.put("changed.html", new DocManifest.Entry(10, "eee"));
+        current.put("resized.html", new DocManifest.Entry(20, "ccc"));
+        current.put("added.html", new DocManifest.Entry(10, "fff"));
+
+        assertEquals(Arrays.asList("added.html", "changed.html", "resized.html"), current.getChangedPaths(previous));
+        assertEquals(Arrays.asList("removed.html"), current.getRemovedPaths(previous));
+        assertEquals(Collections.emptyList(), current.getChangedPaths(current));
+    }
+
+    public void testReadWrite() throws Exception {
+        final DocManifest manifest = new DocManifest();
+        manifest.put("index.html", new DocManifest.Entry(10, "aaa"));
+        manifest.put("sub dir/page with spaces.html", new DocManifest.Entry(20, "bbb"));
+
+        final File file = new File(tmpDir, "docLinks-manifests/1.manifest");
+        manifest.write(file);
+        final DocManifest read = DocManifest.read(file);
+        assertEquals(2, read.size());
+        assertEquals(new DocManifest.Entry(20, "bbb"), read.get("sub dir/page with spaces.html"));
+        assertEquals(Collections.emptyList(), read.getChangedPaths(manifest));
+
+        assertNull(DocManifest.read(new File(tmpDir, "nosuchfile.manifest")));
+        writeFile(file, "This is not a manifest.\n");
+        assertNull(DocManifest.read(file));
+    }
+
+    public void testDeleteObsoleteDocuments() throws Exception {
+        final File docLinksDir = new File(tmpDir, "docLinks");
+        writeFile(new File(docLinksDir, "1/index.html"), "Kept.");
+        writeFile(new File(docLinksDir, "2/index.html"), "Removed.");
+        writeFile(new File(docLinksDir, "3.zip"), "Kept.");
+        writeFile(new File(docLinksDir, "4.zip"), "Removed.");
+        writeFile(new File(Document.getManifestDir(docLinksDir), "1.manifest"), "");
+        writeFile(new File(Document.getManifestDir(docLinksDir), "2.manifest"), "");
+
+        DocLinksUtils.deleteObsoleteDocuments(
+                docLinksDir,
+                Arrays.asList(
+                        new Document("Test", null, null, true, null, "1"),
+                        new Document("Test", null, null, true, null, "3")));
+        assertTrue(new File(docLinksDir, "1/index.html").exists());
+        assertFalse(new File(docLinksDir, "2").exists());
+        assertTrue(new File(docLinksDir, "3.zip").exists());
+        assertFalse(new File(docLinksDir, "4.zip").exists());
+        assertTrue(new File(Document.getManifestDir(docLinksDir), "1.manifest").exists());
+        assertFalse(new File(Document.getManifestDir(docLinksDir), "2.manifest").exists());
+    }
+}
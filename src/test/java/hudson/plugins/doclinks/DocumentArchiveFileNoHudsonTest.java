@@ -0,0 +1,99 @@
+package hudson.plugins.doclinks;
+
+import hudson.Util;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import jenkins.util.VirtualFile;
+import junit.framework.TestCase;
+
+public class DocumentArchiveFileNoHudsonTest extends TestCase {
+
+    private File tmpDir;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        tmpDir = Files.createTempDirectory("documentarchive").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Util.deleteRecursive(tmpDir);
+        super.tearDown();
+    }
+
+    private File createZip(final String name) throws IOException {
+        final File file = new File(tmpDir, name);
+        final ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            zos.putNextEntry(new ZipEntry("index.html"));
+            zos.write("Default top page.".getBytes("UTF-8"));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("subdir/page.html"));
+            zos.write("Page in a sub directory.".getBytes("UTF-8"));
+            zos.closeEntry();
+        } finally {
+            zos.close();
+        }
+        return file;
+    }
+
+    private String read(final VirtualFile file) throws IOException {
+        final InputStream is = file.open();
+        try {
+            final ByteArrayOutputStream os = new ByteArrayOutputStream();
+            final byte[] buf = new byte[8192];
+            int len;
+            while ((len = is.read(buf)) >= 0) {
+                os.write(buf, 0, len);
+            }
+            return new String(os.toByteArray(), "UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+    public void testEntries() throws Exception {
+        final VirtualFile root = new DocumentArchiveFile(createZip("1.zip"), "1");
+        assertTrue(root.isDirectory());
+        assertTrue(root.child("1").isDirectory());
+        assertFalse(root.child("2").exists());
+        assertFalse(root.child("2/index.html").exists());
+
+        final VirtualFile index = root.child("1/index.html");
+        assertTrue(index.isFile());
+        assertEquals("index.html", index.getName());
+        assertEquals(17, index.length());
+        assertEquals("Default top page.", read(index));
+
+        final VirtualFile subdir = root.child("1").child("subdir");
+        assertTrue(subdir.isDirectory());
+        assertFalse(subdir.isFile());
+        assertEquals("Page in a sub directory.", read(subdir.child("page.html")));
+        assertEquals("subdir", subdir.child("page.html").getParent().getName());
+
+        assertFalse(root.child("1/nosuchfile.html").exists());
+        try {
+            root.child("1/nosuchfile.html").open();
+            fail();
+        } catch (final IOException e) {
+            // expected
+        }
+    }
+
+    public void testList() throws Exception {
+        final VirtualFile root = new DocumentArchiveFile(createZip("1.zip"), "1");
+        assertEquals(1, root.list().length);
+        final VirtualFile[] children = root.child("1").list();
+        assertEquals(2, children.length);
+        assertEquals("index.html", children[0].getName());
+        assertEquals("subdir", children[1].getName());
+        assertEquals(1, root.child("1/subdir").list().length);
+    }
+}
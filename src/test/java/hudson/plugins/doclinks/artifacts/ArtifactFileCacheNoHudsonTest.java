@@ -0,0 +1,241 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.Files;
+import java.util.Arrays;
+import jenkins.util.VirtualFile;
+import junit.framework.TestCase;
+
+/**
+ *
+ */
+public class ArtifactFileCacheNoHudsonTest extends TestCase {
+    /**
+     * Stands for an artifact in an external storage, backed by a local file.
+     */
+    private static class RemoteFile extends VirtualFile {
+        private static final long serialVersionUID = 1L;
+        private final File file;
+        private int openCount;
+        private int statCount;
+
+        public RemoteFile(File file) {
+            this.file = file;
+        }
+
+        @Override
+        public String getName() {
+            return file.getName();
+        }
+
+        @Override
+        public URI toURI() {
+            return URI.create("remote:/" + file.getName());
+        }
+
+        @Override
+        public VirtualFile getParent() {
+            return new RemoteFile(file.getParentFile());
+        }
+
+        @Override
+        public boolean isDirectory() throws IOException {
+            return file.isDirectory();
+        }
+
+        @Override
+        public boolean isFile() throws IOException {
+            return file.isFile();
+        }
+
+        @Override
+        public boolean exists() throws IOException {
+            return file.exists();
+        }
+
+        @Override
+        public VirtualFile[] list() throws IOException {
+            return new VirtualFile[0];
+        }
+
+        @Override
+        public VirtualFile child(String name) {
+            return new RemoteFile(new File(file, name));
+        }
+
+        @Override
+        public long length() throws IOException {
+            ++statCount;
+            return file.length();
+        }
+
+        @Override
+        public long lastModified() throws IOException {
+            ++statCount;
+            return file.lastModified();
+        }
+
+        @Override
+        public boolean canRead() throws IOException {
+            return file.canRead();
+        }
+
+        @Override
+        public InputStream open() throws IOException {
+            ++openCount;
+            return new FileInputStream(file);
+        }
+    }
+
+    private File createDir() throws IOException {
+        File dir = Files.createTempDirectory("artifactFileCache").toFile();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    private File createFile(String name, int size) throws IOException {
+        File file = File.createTempFile(name, ".zip");
+        file.deleteOnExit();
+        byte[] data = new byte[size];
+        Arrays.fill(data, (byte) name.charAt(0));
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(data);
+        } finally {
+            os.close();
+        }
+        assertTrue(file.setLastModified(1380000000000L));
+        return file;
+    }
+
+    public void testLocalFile() throws Exception {
+        ArtifactFileCache cache = new ArtifactFileCache(createDir(), 1024);
+        File file = createFile("local", 100);
+
+        assertEquals(file.getAbsoluteFile(), cache.getFile(VirtualFile.forFile(file)).getAbsoluteFile());
+        assertEquals(0, cache.size());
+    }
+
+    public void testReadThrough() throws Exception {
+        ArtifactFileCache cache = new ArtifactFileCache(createDir(), 1024);
+        RemoteFile remote = new RemoteFile(createFile("remote", 100));
+
+        File copy1 = cache.getFile(remote);
+        File copy2 = cache.getFile(remote);
+        assertEquals(copy1, copy2);
+        assertEquals(1, remote.openCount);
+        assertEquals(100, copy1.length());
+        assertEquals(remote.lastModified(), copy1.lastModified());
+        assertEquals(100, cache.getTotalBytes());
+    }
+
+    public void testMemoized() throws Exception {
+        ArtifactFileCache cache = new ArtifactFileCache(createDir(), 150);
+        RemoteFile remote1 = new RemoteFile(createFile("aaa", 100));
+        RemoteFile remote2 = new RemoteFile(createFile("bbb", 100));
+
+        File copy = cache.getFile("build1/aaa.zip", remote1);
+        int statCount = remote1.statCount;
+        assertEquals(copy, cache.getFile("build1/aaa.zip", remote1));
+        // the storage is not accessed.
+        assertEquals(statCount, remote1.statCount);
+        assertEquals(1, remote1.openCount);
+
+        // resolved again when the copy is evicted.
+        cache.getFile("build1/bbb.zip", remote2);
+        assertFalse(copy.exists());
+        assertEquals(copy, cache.getFile("build1/aaa.zip", remote1));
+        assertTrue(copy.isFile());
+        assertEquals(2, remote1.openCount);
+    }
+
+    public void testReplacedArtifact() throws Exception {
+        ArtifactFileCache cache = new ArtifactFileCache(createDir(), 1024);
+        File file = createFile("replaced", 100);
+        RemoteFile remote = new RemoteFile(file);
+
+        File copy1 = cache.getFile(remote);
+        assertTrue(file.setLastModified(file.lastModified() + 10 * 1000L));
+        File copy2 = cache.getFile(remote);
+        assertFalse(copy1.equals(copy2));
+        assertEquals(2, remote.openCount);
+    }
+
+    public void testEvict() throws Exception {
+        ArtifactFileCache cache = new ArtifactFileCache(createDir(), 250);
+        RemoteFile remote1 = new RemoteFile(createFile("aaa", 100));
+        RemoteFile remote2 = new RemoteFile(createFile("bbb", 100));
+        RemoteFile remote3 = new RemoteFile(createFile("ccc", 100));
+
+        File copy1 = cache.getFile(remote1);
+        File copy2 = cache.getFile(remote2);
+        cache.getFile(remote1);
+        File copy3 = cache.getFile(remote3);
+
+        // remote2 is the least recently used.
+        assertEquals(2, cache.size());
+        assertEquals(200, cache.getTotalBytes());
+        assertTrue(copy1.exists());
+        assertFalse(copy2.exists());
+        assertTrue(copy3.exists());
+    }
+
+    public void testEvictMemoized() throws Exception {
+        ArtifactFileCache cache = new ArtifactFileCache(createDir(), 250);
+        RemoteFile remote1 = new RemoteFile(createFile("aaa", 100));
+        RemoteFile remote2 = new RemoteFile(createFile("bbb", 100));
+        RemoteFile remote3 = new RemoteFile(createFile("ccc", 100));
+
+        File copy1 = cache.getFile("build1/aaa.zip", remote1);
+        File copy2 = cache.getFile("build1/bbb.zip", remote2);
+        // memoized accesses count for eviction.
+        cache.getFile("build1/aaa.zip", remote1);
+        File copy3 = cache.getFile("build1/ccc.zip", remote3);
+
+        // remote2 is the least recently used.
+        assertTrue(copy1.exists());
+        assertFalse(copy2.exists());
+        assertTrue(copy3.exists());
+        assertEquals(1, remote1.openCount);
+    }
+
+    public void testRestart() throws Exception {
+        File dir = createDir();
+        RemoteFile remote = new RemoteFile(createFile("restart", 100));
+        File copy = new ArtifactFileCache(dir, 1024).getFile(remote);
+
+        ArtifactFileCache cache = new ArtifactFileCache(dir, 1024);
+        assertEquals(1, cache.size());
+        assertEquals(copy, cache.getFile(remote));
+        assertEquals(1, remote.openCount);
+    }
+}
@@ -274,4 +274,47 @@ public class ArtifactsDocLinksDocumentHudsonTest extends ArtifactDocLinksHudsonT
                 wc.getContextPath() + p.getUrl() + String.format("%s/%s", projectAction.getUrlName(), doc.getUrl())));
         assertEquals(200, page.getWebResponse().getStatusCode());
     }
+
+    public void testCacheControl() throws Exception {
+        WebClient wc = getWebClient();
+
+        FreeStyleProject p = createFreeStyleProject();
+        p.getBuildersList().add(new TestZipBuilder("artifact1.zip"));
+        p.getPublishersList().add(new ArtifactArchiver("artifact1.zip", null, false));
+        p.getPublishersList()
+                .add(new ArtifactsDocLinksPublisher(
+                        Arrays.asList(new ArtifactsDocLinksConfig("Test", "artifact1.zip", null, null))));
+        p.save();
+        updateTransientActions(p);
+
+        ArtifactsDocLinksProjectAction projectAction = p.getAction(ArtifactsDocLinksProjectAction.class);
+
+        FreeStyleBuild build = p.scheduleBuild2(0).get(BUILD_TIMEOUT, TimeUnit.SECONDS);
+        ArtifactsDocLinksAction action = build.getAction(ArtifactsDocLinksAction.class);
+        ArtifactsDocLinksDocument doc =
+                action.getArtifactsDocLinksDocumentList().get(0);
+
+        // contents of a specific build never change.
+        Page page = wc.getPage(build, String.format("%s/%s", action.getUrlName(), doc.getUrl()));
+        String cacheControl = page.getWebResponse().getResponseHeaderValue("Cache-Control");
+        assertTrue(cacheControl, cacheControl.contains("immutable"));
+        // never stored in shared caches.
+        assertTrue(cacheControl, cacheControl.startsWith("private"));
+
+        // contents of a permalink change with new builds.
+        page = wc.getPage(new URL(wc.getContextPath()
+                + p.getUrl()
+                + String.format("lastSuccessfulBuild/%s/%s", action.getUrlName(), doc.getUrl())));
+        cacheControl = page.getWebResponse().getResponseHeaderValue("Cache-Control");
+        assertFalse(cacheControl, cacheControl.contains("immutable"));
+        assertTrue(cacheControl, cacheControl.contains("must-revalidate"));
+
+        // contents of the last build change.
+        page = wc.getPage(new URL(
+                wc.getContextPath() + p.getUrl() + String.format("%s/%s", projectAction.getUrlName(), doc.getUrl())));
+        cacheControl = page.getWebResponse().getResponseHeaderValue("Cache-Control");
+        assertFalse(cacheControl, cacheControl.contains("immutable"));
+        assertTrue(cacheControl, cacheControl.contains("must-revalidate"));
+        assertTrue(cacheControl, cacheControl.startsWith("private"));
+    }
 }
@@ -0,0 +1,83 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import junit.framework.TestCase;
+
+/**
+ *
+ */
+public class ArtifactsDocLinksManifestNoHudsonTest extends TestCase {
+    private static final String[] INDEX_FILES = {"index.html", "index.htm"};
+
+    public void testResolveLandingEntry() throws Exception {
+        ZipDirectory directory = new ZipDirectoryIndex.Builder()
+                .add("index.html")
+                .add("page.html")
+                .add("subdir/")
+                .add("subdir/index.htm")
+                .add("empty/")
+                .build();
+
+        assertEquals("index.html", ArtifactsDocLinksManifest.resolveLandingEntry(directory, null, INDEX_FILES));
+        assertEquals("index.html", ArtifactsDocLinksManifest.resolveLandingEntry(directory, "/", INDEX_FILES));
+        assertEquals("page.html", ArtifactsDocLinksManifest.resolveLandingEntry(directory, "page.html", INDEX_FILES));
+        assertEquals(
+                "page.html", ArtifactsDocLinksManifest.resolveLandingEntry(directory, "page.html#top", INDEX_FILES));
+        assertEquals(
+                "subdir/index.htm", ArtifactsDocLinksManifest.resolveLandingEntry(directory, "subdir/", INDEX_FILES));
+        assertNull(ArtifactsDocLinksManifest.resolveLandingEntry(directory, "empty", INDEX_FILES));
+        assertNull(ArtifactsDocLinksManifest.resolveLandingEntry(directory, "nosuchfile.html", INDEX_FILES));
+        assertNull(ArtifactsDocLinksManifest.resolveLandingEntry(directory, null, new String[] {"default.html"}));
+    }
+
+    public void testOf() throws Exception {
+        File file = File.createTempFile("manifest", ".zip");
+        file.deleteOnExit();
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            zos.putNextEntry(new ZipEntry("subdir/"));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("subdir/index.html"));
+            zos.write(new byte[1000]);
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("subdir/page.html"));
+            zos.write(new byte[234]);
+            zos.closeEntry();
+        } finally {
+            zos.close();
+        }
+
+        ArtifactsDocLinksManifest manifest =
+                ArtifactsDocLinksManifest.of(ZipEntryIndexFile.build(file), "subdir", INDEX_FILES);
+        assertEquals(3, manifest.getEntryCount());
+        assertEquals(1234, manifest.getTotalSize());
+        assertEquals("subdir/index.html", manifest.getLandingEntry());
+    }
+}
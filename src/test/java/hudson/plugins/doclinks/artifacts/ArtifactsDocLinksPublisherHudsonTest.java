@@ -35,8 +35,10 @@ import hudson.plugins.doclinks.artifacts.testtools.TestFileBuilder;
 import hudson.plugins.doclinks.artifacts.testtools.TestZipBuilder;
 import hudson.tasks.ArtifactArchiver;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import org.apache.commons.lang.StringUtils;
 import org.htmlunit.html.HtmlAnchor;
@@ -234,12 +236,76 @@ public class ArtifactsDocLinksPublisherHudsonTest extends ArtifactDocLinksHudson
         assertBuildStatusSuccess(build);
 
         assertNotNull(build.getAction(ArtifactsDocLinksAction.class));
+        assertTrue(ArtifactsDocLinksDocument.getEntryIndexFile(build, "sub1/sub2/artifact1.zip")
+                .isFile());
         assertDocumentContains(build, 0, null, "Default top page.");
 
         assertDocumentLink(p);
         assertLatestDocumentContains(build, 0, null, "Default top page.");
     }
 
+    public void testPublishPrecompressed() throws Exception {
+        FreeStyleProject p = createFreeStyleProject();
+        p.getPublishersList().add(new ArtifactArchiver("artifact1.zip", "", false));
+        ArtifactsDocLinksPublisher publisher = new ArtifactsDocLinksPublisher(
+                Arrays.asList(new ArtifactsDocLinksConfig("Test", "artifact1.zip", null, null)));
+        publisher.setPrecompress(true);
+        p.getPublishersList().add(publisher);
+        p.save();
+        updateTransientActions(p);
+        // Opening configure with TestZipBuilder causes 500.
+        p.getBuildersList().add(new TestZipBuilder("artifact1.zip"));
+
+        FreeStyleBuild build = p.scheduleBuild2(0).get(BUILD_TIMEOUT, TimeUnit.SECONDS);
+        assertBuildStatusSuccess(build);
+
+        assertTrue(ArtifactsDocLinksDocument.getPrecompressedFile(build, "artifact1.zip")
+                .isFile());
+        assertTrue(ArtifactsDocLinksDocument.getPrecompressedIndexFile(build, "artifact1.zip")
+                .isFile());
+        assertDocumentContains(build, 0, null, "Default top page.");
+    }
+
+    public void testPublishSearchIndex() throws Exception {
+        FreeStyleProject p = createFreeStyleProject();
+        p.getPublishersList().add(new ArtifactArchiver("artifact1.zip", "", false));
+        ArtifactsDocLinksPublisher publisher = new ArtifactsDocLinksPublisher(
+                Arrays.asList(new ArtifactsDocLinksConfig("Test", "artifact1.zip", null, null)));
+        publisher.setSearchIndex(true);
+        p.getPublishersList().add(publisher);
+        p.save();
+        updateTransientActions(p);
+        // Opening configure with TestZipBuilder causes 500.
+        p.getBuildersList().add(new TestZipBuilder("artifact1.zip"));
+
+        FreeStyleBuild build = p.scheduleBuild2(0).get(BUILD_TIMEOUT, TimeUnit.SECONDS);
+        assertBuildStatusSuccess(build);
+        assertTrue(ArtifactsDocLinksDocument.getSearchIndexFile(build, "artifact1.zip")
+                .isFile());
+
+        WebClient wc = getWebClient();
+        ArtifactsDocLinksAction action = build.getAction(ArtifactsDocLinksAction.class);
+        {
+            HtmlPage page = wc.getPage(build, String.format("%s/search?q=Alternate", action.getUrlName()));
+            List<String> hrefs = new ArrayList<String>();
+            for (HtmlAnchor a : page.getAnchors()) {
+                hrefs.add(a.getHrefAttribute());
+            }
+            assertTrue(hrefs.toString(), hrefs.contains("1/default.html"));
+            assertTrue(hrefs.toString(), hrefs.contains("1/subdir/default.html"));
+            assertFalse(hrefs.toString(), hrefs.contains("1/index.html"));
+
+            // Links in results are served.
+            assertEquals(200, ((HtmlPage) page.getAnchorByHref("1/default.html").click())
+                    .getWebResponse()
+                    .getStatusCode());
+        }
+        {
+            HtmlPage page = wc.getPage(p, String.format("%s/search?q=Alternate", action.getUrlName()));
+            assertNotNull(page.getAnchorByHref("1/default.html"));
+        }
+    }
+
     public void testPublishMultipleArtifact1() throws Exception {
         FreeStyleProject p = createFreeStyleProject();
         p.getPublishersList().add(new ArtifactArchiver("artifact1.zip,artifact2.zip", "", false));
@@ -322,6 +388,60 @@ public class ArtifactsDocLinksPublisherHudsonTest extends ArtifactDocLinksHudson
         assertLatestDocumentContains(build, 1, null, "Default top page.");
     }
 
+    public void testPublishManifest() throws Exception {
+        FreeStyleProject p = createFreeStyleProject();
+        p.getBuildersList().add(new TestZipBuilder("artifact1.zip"));
+        p.getBuildersList().add(new TestZipBuilder("artifact2.zip"));
+        p.getPublishersList().add(new ArtifactArchiver("artifact1.zip,artifact2.zip", "", false));
+        p.getPublishersList()
+                .add(new ArtifactsDocLinksPublisher(Arrays.asList(
+                        new ArtifactsDocLinksConfig("Test1", "artifact1.zip", "subdir2", null),
+                        new ArtifactsDocLinksConfig("Test2", "artifact2.zip", "nosuchdir", null))));
+        p.save();
+
+        FreeStyleBuild build = p.scheduleBuild2(0).get(BUILD_TIMEOUT, TimeUnit.SECONDS);
+        assertBuildStatusSuccess(build);
+        assertLogContains("WARNING: Neither the initial path 'nosuchdir'", build);
+
+        List<ArtifactsDocLinksDocument> docList =
+                build.getAction(ArtifactsDocLinksAction.class).getArtifactsDocLinksDocumentList();
+        ArtifactsDocLinksManifest manifest = docList.get(0).getManifest();
+        assertNotNull(manifest);
+        assertTrue(manifest.getEntryCount() > 0);
+        assertTrue(manifest.getTotalSize() > 0);
+        assertEquals("subdir2/index.htm", manifest.getLandingEntry());
+        assertEquals("1/subdir2/index.htm", docList.get(0).getLandingUrl());
+
+        assertNull(docList.get(1).getManifest().getLandingEntry());
+        assertEquals(docList.get(1).getUrl(), docList.get(1).getLandingUrl());
+    }
+
+    public void testPublishManyArtifacts() throws Exception {
+        FreeStyleProject p = createFreeStyleProject();
+        for (int i = 10; i < 30; ++i) {
+            p.getBuildersList().add(new TestZipBuilder(String.format("artifact%d.zip", i)));
+        }
+        p.getPublishersList().add(new ArtifactArchiver("*.zip", "", false));
+        p.getPublishersList()
+                .add(new ArtifactsDocLinksPublisher(
+                        Arrays.asList(new ArtifactsDocLinksConfig("Test", "*.zip", null, null))));
+        p.save();
+
+        FreeStyleBuild build = p.scheduleBuild2(0).get(BUILD_TIMEOUT, TimeUnit.SECONDS);
+        assertBuildStatusSuccess(build);
+
+        // Artifacts are prepared in parallel, but documents are in the order of artifacts.
+        List<ArtifactsDocLinksDocument> docList =
+                build.getAction(ArtifactsDocLinksAction.class).getArtifactsDocLinksDocumentList();
+        assertEquals(20, docList.size());
+        for (int i = 0; i < 20; ++i) {
+            assertEquals(String.format("artifact%d.zip", i + 10), docList.get(i).getArtifactName());
+            assertTrue(ArtifactsDocLinksDocument.getEntryIndexFile(build, docList.get(i).getArtifactName())
+                    .isFile());
+        }
+        assertDocumentContains(build, 19, null, "Default top page.");
+    }
+
     public void testScanArtifacts() throws Exception {
         {
             FreeStyleProject p = createFreeStyleProject();
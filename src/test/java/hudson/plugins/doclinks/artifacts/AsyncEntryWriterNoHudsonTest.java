@@ -0,0 +1,102 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import junit.framework.TestCase;
+
+/**
+ *
+ */
+public class AsyncEntryWriterNoHudsonTest extends TestCase {
+    private static String readAll(AsyncEntryWriter.Source source, int bufferSize) throws Exception {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buf = new byte[bufferSize];
+        int n;
+        while ((n = source.read(buf)) >= 0) {
+            os.write(buf, 0, n);
+        }
+        return os.toString("UTF-8");
+    }
+
+    private static class Owner implements Closeable {
+        private boolean closed = false;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    public void testChannelSource() throws Exception {
+        File file = File.createTempFile("source", ".bin");
+        file.deleteOnExit();
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write("0123456789abcdef".getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+
+        FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            Owner owner = new Owner();
+            AsyncEntryWriter.Source source = new AsyncEntryWriter.ChannelSource(ch, 4, 8, owner);
+            assertEquals("456789ab", readAll(source, 3));
+            source.close();
+            assertTrue(owner.closed);
+            // the channel is not closed.
+            assertTrue(ch.isOpen());
+
+            source = new AsyncEntryWriter.ChannelSource(ch, 8, 100, null);
+            try {
+                readAll(source, 3);
+                fail();
+            } catch (EOFException e) {
+                // expected
+            }
+        } finally {
+            ch.close();
+        }
+    }
+
+    public void testSequenceSource() throws Exception {
+        Owner owner = new Owner();
+        AsyncEntryWriter.Source source = new AsyncEntryWriter.SequenceSource(
+                new AsyncEntryWriter.BytesSource("head-".getBytes("UTF-8")),
+                new AsyncEntryWriter.StreamSource(new ByteArrayInputStream("body".getBytes("UTF-8")), owner),
+                new AsyncEntryWriter.BytesSource("-tail".getBytes("UTF-8")));
+        assertEquals("head-body-tail", readAll(source, 2));
+        source.close();
+        assertTrue(owner.closed);
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import junit.framework.TestCase;
+
+/**
+ *
+ */
+public class PrecompressedArchiveNoHudsonTest extends TestCase {
+    public void testIsCompressible() throws Exception {
+        assertTrue(PrecompressedArchive.isCompressible("index.html"));
+        assertTrue(PrecompressedArchive.isCompressible("subdir/Stylesheet.CSS"));
+        assertTrue(PrecompressedArchive.isCompressible("script.js"));
+        assertFalse(PrecompressedArchive.isCompressible("logo.png"));
+        assertFalse(PrecompressedArchive.isCompressible("subdir/"));
+    }
+
+    public void testWrite() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100; ++i) {
+            sb.append(String.format("<p>Paragraph %d</p>\n", i));
+        }
+        String html = sb.toString();
+        byte[] data = html.getBytes("UTF-8");
+
+        File archive = File.createTempFile("archive", ".zip");
+        archive.deleteOnExit();
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            CRC32 crc = new CRC32();
+            crc.update(data);
+            ZipEntry entry = new ZipEntry("index.html");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(data.length);
+            entry.setCompressedSize(data.length);
+            entry.setCrc(crc.getValue());
+            zos.putNextEntry(entry);
+            zos.write(data);
+            zos.closeEntry();
+
+            zos.putNextEntry(new ZipEntry("logo.png"));
+            zos.write(data);
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("small.html"));
+            zos.write("Small page.".getBytes("UTF-8"));
+            zos.closeEntry();
+        } finally {
+            zos.close();
+        }
+
+        File companion = File.createTempFile("archive", ".gz.zip");
+        companion.deleteOnExit();
+        File companionIndex = File.createTempFile("archive", ".gz.idx");
+        companionIndex.deleteOnExit();
+        assertTrue(archive.setLastModified(archive.lastModified() - 60 * 60 * 1000L));
+        assertEquals(1, PrecompressedArchive.write(archive, companion));
+        ZipEntryIndexFile.write(companion, companionIndex);
+        assertTrue(PrecompressedArchive.isUpToDate(companion, archive));
+
+        ZipFileCache.Handle handle = new ZipFileCache(4, 60 * 1000L).acquire(companion, companionIndex);
+        try {
+            assertNull(handle.getEntry("logo.png"));
+            assertNull(handle.getEntry("small.html"));
+            ZipEntry entry = handle.getEntry("index.html");
+            assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+            assertTrue(entry.getCompressedSize() < data.length);
+
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            ZipEntryServer.writeGzip(
+                    handle.getChannel(),
+                    handle.getDataOffset(entry),
+                    entry.getCompressedSize(),
+                    entry.getCrc(),
+                    entry.getSize(),
+                    os);
+            InputStream is = new GZIPInputStream(new ByteArrayInputStream(os.toByteArray()));
+            try {
+                ByteArrayOutputStream decoded = new ByteArrayOutputStream();
+                byte[] buf = new byte[1024];
+                int len;
+                while ((len = is.read(buf)) >= 0) {
+                    decoded.write(buf, 0, len);
+                }
+                assertEquals(html, decoded.toString("UTF-8"));
+            } finally {
+                is.close();
+            }
+        } finally {
+            handle.close();
+        }
+
+        // outdated when the archive is replaced, even with an older time.
+        assertTrue(archive.setLastModified(archive.lastModified() - 60 * 1000L));
+        assertFalse(PrecompressedArchive.isUpToDate(companion, archive));
+    }
+}
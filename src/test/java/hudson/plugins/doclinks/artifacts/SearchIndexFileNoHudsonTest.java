@@ -0,0 +1,183 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import junit.framework.TestCase;
+
+/**
+ *
+ */
+public class SearchIndexFileNoHudsonTest extends TestCase {
+    private File createZip(String name, String... entries) throws IOException {
+        File file = File.createTempFile(name, ".zip");
+        file.deleteOnExit();
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            for (int i = 0; i < entries.length; i += 2) {
+                zos.putNextEntry(new ZipEntry(entries[i]));
+                zos.write(entries[i + 1].getBytes("UTF-8"));
+                zos.closeEntry();
+            }
+        } finally {
+            zos.close();
+        }
+        return file;
+    }
+
+    private SearchIndexFile writeIndex(File archive) throws IOException {
+        File indexFile = File.createTempFile("search", ".search");
+        indexFile.deleteOnExit();
+        SearchIndexFile.write(archive, indexFile);
+        return SearchIndexFile.open(indexFile);
+    }
+
+    private List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<String>();
+        SearchIndexFile.tokenize(text, tokens);
+        return tokens;
+    }
+
+    public void testTokenize() throws Exception {
+        assertEquals(Arrays.asList("hello", "world", "2013", "a"), tokenize("Hello, World! (2013) a"));
+        assertEquals(
+                Arrays.asList(
+                        "\u30c9\u30ad", "\u30ad\u30e5", "\u30e5\u30e1", "\u30e1\u30f3", "\u30f3\u30c8", "jenkins"),
+                tokenize("\u30c9\u30ad\u30e5\u30e1\u30f3\u30c8Jenkins"));
+        assertEquals(Arrays.asList("\u65e5"), tokenize("\u65e5"));
+        assertEquals(Arrays.asList(), tokenize(" ... "));
+    }
+
+    public void testExtractText() throws Exception {
+        String html = "<html><head><title>The &amp; Title</title>"
+                + "<style>body { color: red; }</style>"
+                + "<script type=\"text/javascript\">var hidden = 1;</script></head>"
+                + "<body><!-- commented --><p>Some&nbsp;text &#x41;&#66;</p></body></html>";
+        assertEquals("The & Title", SearchIndexFile.extractTitle(html));
+        List<String> tokens = tokenize(SearchIndexFile.extractText(html));
+        assertTrue(tokens.contains("some"));
+        assertTrue(tokens.contains("ab"));
+        assertFalse(tokens.contains("color"));
+        assertFalse(tokens.contains("hidden"));
+        assertFalse(tokens.contains("commented"));
+        assertNull(SearchIndexFile.extractTitle("<p>No title</p>"));
+    }
+
+    public void testSearch() throws Exception {
+        File archive = createZip(
+                "search",
+                "index.html", "<html><head><title>Top</title></head><body>Welcome to the plugin.</body></html>",
+                "api/Publisher.html", "<title>Publisher</title>Publisher publishes artifacts. Publisher!",
+                "api/Action.html", "<title>Action</title>Action shows artifacts published by the publisher.",
+                "readme.txt", "Plain text mentions the publisher once.",
+                "image.png", "publisher");
+        SearchIndexFile index = writeIndex(archive);
+
+        assertEquals(4, index.size());
+
+        List<SearchIndexFile.Hit> hits = index.search("Publisher", 10);
+        assertEquals(3, hits.size());
+        assertEquals("api/Publisher.html", hits.get(0).getName());
+        assertEquals("Publisher", hits.get(0).getTitle());
+        assertTrue(hits.get(0).getScore() > hits.get(1).getScore());
+
+        hits = index.search("publisher artifacts", 10);
+        assertEquals(2, hits.size());
+        assertEquals("api/Publisher.html", hits.get(0).getName());
+        assertEquals("api/Action.html", hits.get(1).getName());
+
+        assertEquals(1, index.search("publisher", 1).size());
+        assertEquals("", index.search("mentions", 10).get(0).getTitle());
+        assertTrue(index.search("publisher nosuchword", 10).isEmpty());
+        assertTrue(index.search("", 10).isEmpty());
+    }
+
+    public void testSearchCjk() throws Exception {
+        File archive = createZip(
+                "cjk",
+                "ja.html",
+                "<p>\u6210\u679c\u7269\u306e\u30c9\u30ad\u30e5\u30e1\u30f3\u30c8"
+                        + "\u3092\u516c\u958b\u3057\u307e\u3059\u3002</p>",
+                "en.html", "<p>Publishes documents in artifacts.</p>");
+        SearchIndexFile index = writeIndex(archive);
+
+        List<SearchIndexFile.Hit> hits = index.search("\u30c9\u30ad\u30e5\u30e1\u30f3\u30c8", 10);
+        assertEquals(1, hits.size());
+        assertEquals("ja.html", hits.get(0).getName());
+        assertEquals(1, index.search("\u6210\u679c\u7269", 10).size());
+        assertTrue(index.search("\u516c\u958b\u3057\u306a\u3044", 10).isEmpty());
+    }
+
+    public void testOpenInvalid() throws Exception {
+        File file = File.createTempFile("invalid", ".search");
+        file.deleteOnExit();
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write("This is not a search index file.".getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+        assertNull(SearchIndexFile.open(file));
+        assertNull(SearchIndexFile.open(new File(file.getPath() + ".nosuchfile")));
+    }
+
+    public void testCache() throws Exception {
+        File archive1 = createZip("cache1", "a.txt", "apple");
+        File indexFile1 = File.createTempFile("cache1", ".search");
+        indexFile1.deleteOnExit();
+        SearchIndexFile.write(archive1, indexFile1);
+        File archive2 = createZip("cache2", "b.txt", "banana");
+        File indexFile2 = File.createTempFile("cache2", ".search");
+        indexFile2.deleteOnExit();
+        SearchIndexFile.write(archive2, indexFile2);
+
+        SearchIndexCache cache = new SearchIndexCache(indexFile1.length() + indexFile2.length());
+        SearchIndexFile index1 = cache.open(indexFile1);
+        assertNotNull(index1);
+        assertSame(index1, cache.open(indexFile1));
+        SearchIndexFile index2 = cache.open(indexFile2);
+        assertSame(index2, cache.open(indexFile2));
+        assertEquals(2, cache.size());
+
+        // rewritten index is read again.
+        File archive3 = createZip("cache3", "c.txt", "cherry cherry");
+        SearchIndexFile.write(archive3, indexFile1);
+        assertTrue(indexFile1.setLastModified(indexFile1.lastModified() + 2000));
+        SearchIndexFile index3 = cache.open(indexFile1);
+        assertNotSame(index1, index3);
+        assertEquals("c.txt", index3.search("cherry", 10).get(0).getName());
+
+        // exceeding the limit drops the least recently used ones.
+        assertTrue(cache.size() < 3);
+        assertNull(cache.open(new File(indexFile1.getPath() + ".nosuchfile")));
+    }
+}
@@ -0,0 +1,227 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import junit.framework.TestCase;
+
+/**
+ *
+ */
+public class TarArchiveNoHudsonTest extends TestCase {
+    private static void writeHeader(OutputStream os, String name, long size, char type) throws IOException {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes("UTF-8");
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(nameBytes.length, 100));
+        putOctal(header, 100, 8, 0644);
+        putOctal(header, 124, 12, size);
+        putOctal(header, 136, 12, 1380000000L);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\u000000".getBytes("US-ASCII"), 0, header, 257, 8);
+        Arrays.fill(header, 148, 156, (byte) ' ');
+        long sum = 0;
+        for (byte b : header) {
+            sum += b & 0xff;
+        }
+        putOctal(header, 148, 7, sum);
+        os.write(header);
+    }
+
+    private static void putOctal(byte[] header, int offset, int length, long value) {
+        String s = String.format("%0" + (length - 1) + "o", value);
+        for (int i = 0; i < s.length(); ++i) {
+            header[offset + i] = (byte) s.charAt(i);
+        }
+        header[offset + length - 1] = 0;
+    }
+
+    private static void writeData(OutputStream os, byte[] data) throws IOException {
+        os.write(data);
+        os.write(new byte[(512 - data.length % 512) % 512]);
+    }
+
+    private static void writeFile(OutputStream os, String name, String content) throws IOException {
+        byte[] data = content.getBytes("UTF-8");
+        writeHeader(os, name, data.length, '0');
+        writeData(os, data);
+    }
+
+    private static byte[] createTar() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        writeHeader(os, "./", 0, '5');
+        writeFile(os, "./index.html", "Default top page.");
+        writeHeader(os, "./subdir/", 0, '5');
+        writeFile(os, "./subdir/index.html", "Page in a sub directory.");
+
+        // GNU long name.
+        StringBuilder sb = new StringBuilder("deep/");
+        while (sb.length() < 150) {
+            sb.append("directory/");
+        }
+        String longName = sb.append("page.html").toString();
+        byte[] longNameBytes = (longName + "\u0000").getBytes("UTF-8");
+        writeHeader(os, "././@LongLink", longNameBytes.length, 'L');
+        writeData(os, longNameBytes);
+        writeFile(os, "truncated", "Deep page.");
+
+        // symbolic links are ignored.
+        writeHeader(os, "link.html", 0, '2');
+
+        os.write(new byte[1024]);
+        return os.toByteArray();
+    }
+
+    private static String read(ZipFile zip, String name) throws IOException {
+        ZipEntry entry = zip.getEntry(name);
+        assertNotNull(name, entry);
+        InputStream is = zip.getInputStream(entry);
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buf = new byte[1024];
+            int len;
+            while ((len = is.read(buf)) >= 0) {
+                os.write(buf, 0, len);
+            }
+            return os.toString("UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+    private void assertConverted(File tar) throws Exception {
+        File zipFile = File.createTempFile("converted", ".zip");
+        zipFile.deleteOnExit();
+        assertEquals(4, TarArchive.convert(tar, zipFile));
+
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            assertEquals("Default top page.", read(zip, "index.html"));
+            assertTrue(zip.getEntry("subdir/").isDirectory());
+            assertEquals("Page in a sub directory.", read(zip, "subdir/index.html"));
+            assertNull(zip.getEntry("link.html"));
+            assertNull(zip.getEntry("truncated"));
+            StringBuilder sb = new StringBuilder("deep/");
+            while (sb.length() < 150) {
+                sb.append("directory/");
+            }
+            assertEquals("Deep page.", read(zip, sb.append("page.html").toString()));
+        } finally {
+            zip.close();
+        }
+    }
+
+    public void testIsTar() throws Exception {
+        assertTrue(TarArchive.isTar("docs.tar"));
+        assertTrue(TarArchive.isTar("docs.tar.gz"));
+        assertTrue(TarArchive.isTar("sub/docs.TGZ"));
+        assertFalse(TarArchive.isTar("docs.zip"));
+        assertFalse(TarArchive.isTar("docs.gz"));
+    }
+
+    public void testConvertTar() throws Exception {
+        File tar = File.createTempFile("docs", ".tar");
+        tar.deleteOnExit();
+        FileOutputStream os = new FileOutputStream(tar);
+        try {
+            os.write(createTar());
+        } finally {
+            os.close();
+        }
+        assertConverted(tar);
+    }
+
+    public void testConvertTarGz() throws Exception {
+        File tar = File.createTempFile("docs", ".tar.gz");
+        tar.deleteOnExit();
+        OutputStream os = new GZIPOutputStream(new FileOutputStream(tar));
+        try {
+            os.write(createTar());
+        } finally {
+            os.close();
+        }
+        assertConverted(tar);
+    }
+
+    public void testDuplicateMembers() throws Exception {
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        writeFile(data, "index.html", "Old top page.");
+        writeFile(data, "style.css", "body {}");
+        writeFile(data, "./index.html", "New top page.");
+        data.write(new byte[1024]);
+
+        File tar = File.createTempFile("docs", ".tar.gz");
+        tar.deleteOnExit();
+        OutputStream os = new GZIPOutputStream(new FileOutputStream(tar));
+        try {
+            os.write(data.toByteArray());
+        } finally {
+            os.close();
+        }
+
+        File zipFile = File.createTempFile("converted", ".zip");
+        zipFile.deleteOnExit();
+        assertEquals(2, TarArchive.convert(tar, zipFile));
+        ZipFile zip = new ZipFile(zipFile);
+        try {
+            // the last one wins.
+            assertEquals("New top page.", read(zip, "index.html"));
+            assertEquals("body {}", read(zip, "style.css"));
+        } finally {
+            zip.close();
+        }
+    }
+
+    public void testNotTar() throws Exception {
+        File tar = File.createTempFile("notTar", ".tar");
+        tar.deleteOnExit();
+        FileOutputStream os = new FileOutputStream(tar);
+        try {
+            byte[] data = new byte[1024];
+            Arrays.fill(data, (byte) 'x');
+            os.write(data);
+        } finally {
+            os.close();
+        }
+
+        File zipFile = File.createTempFile("converted", ".zip");
+        zipFile.deleteOnExit();
+        try {
+            TarArchive.convert(tar, zipFile);
+            fail();
+        } catch (ZipException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+import junit.framework.TestCase;
+
+/**
+ *
+ */
+public class ZipCentralDirectoryNoHudsonTest extends TestCase {
+    private File createFile(byte[] data) throws IOException {
+        File file = File.createTempFile("probe", ".zip");
+        file.deleteOnExit();
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(data);
+        } finally {
+            os.close();
+        }
+        return file;
+    }
+
+    private File createZip(int entries) throws IOException {
+        File file = File.createTempFile("probe", ".zip");
+        file.deleteOnExit();
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            zos.setComment("A comment containing PK\u0005\u0006.");
+            for (int i = 0; i < entries; ++i) {
+                zos.putNextEntry(new ZipEntry(String.format("page%d.html", i)));
+                zos.write("Some page.".getBytes("UTF-8"));
+                zos.closeEntry();
+            }
+        } finally {
+            zos.close();
+        }
+        return file;
+    }
+
+    private void assertNotZip(File file) throws IOException {
+        try {
+            ZipCentralDirectory.probe(file);
+            fail();
+        } catch (ZipException e) {
+            // expected
+        }
+    }
+
+    public void testProbe() throws Exception {
+        File file = createZip(3);
+        ZipCentralDirectory.End end = ZipCentralDirectory.probe(file);
+        assertEquals(3, end.entryCount);
+        assertFalse(end.zip64);
+        assertTrue(end.size >= 3 * ZipCentralDirectory.CEN_HEADER_SIZE);
+        assertTrue(end.offset + end.size < file.length());
+    }
+
+    public void testProbeEmptyZip() throws Exception {
+        ZipCentralDirectory.End end = ZipCentralDirectory.probe(createZip(0));
+        assertEquals(0, end.entryCount);
+        assertEquals(0, end.size);
+    }
+
+    public void testProbeZip64() throws Exception {
+        ByteBuffer buf = ByteBuffer.allocate(ZipCentralDirectory.ZIP64_END_HEADER_SIZE
+                        + ZipCentralDirectory.ZIP64_LOCATOR_SIZE
+                        + ZipCentralDirectory.END_HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        // Zip64 end of central directory record of an empty archive.
+        buf.putInt(ZipCentralDirectory.ZIP64_END_SIG);
+        buf.putLong(ZipCentralDirectory.ZIP64_END_HEADER_SIZE - 12);
+        buf.putShort((short) 45);
+        buf.putShort((short) 45);
+        buf.putInt(0);
+        buf.putInt(0);
+        buf.putLong(0);
+        buf.putLong(0);
+        buf.putLong(0);
+        buf.putLong(0);
+        // Zip64 end of central directory locator.
+        buf.putInt(ZipCentralDirectory.ZIP64_LOCATOR_SIG);
+        buf.putInt(0);
+        buf.putLong(0);
+        buf.putInt(1);
+        // End of central directory record pointing to the Zip64 record.
+        buf.putInt(ZipCentralDirectory.END_SIG);
+        buf.putShort((short) 0);
+        buf.putShort((short) 0);
+        buf.putShort((short) 0xFFFF);
+        buf.putShort((short) 0xFFFF);
+        buf.putInt(0xFFFFFFFF);
+        buf.putInt(0xFFFFFFFF);
+        buf.putShort((short) 0);
+
+        ZipCentralDirectory.End end = ZipCentralDirectory.probe(createFile(buf.array()));
+        assertTrue(end.zip64);
+        assertEquals(0, end.entryCount);
+    }
+
+    private void assertEntries(File file, long base) throws Exception {
+        ZipCentralDirectory.End end = ZipCentralDirectory.probe(file);
+        assertEquals(3, end.entryCount);
+        assertEquals(base, end.base);
+
+        FileChannel ch = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ZipCentralDirectory cen = ZipCentralDirectory.read(ch);
+            assertEquals(3, cen.getEntryCount());
+            long dataOffset = ZipCentralDirectory.readDataOffset(ch, cen.getLocalHeaderOffset(0));
+            ByteBuffer data = ZipCentralDirectory.read(ch, dataOffset, (int) cen.getCompressedSize(0));
+            assertEquals(cen.getCrc(0), (int) crc(data.array(), cen.getMethod(0) == ZipEntry.DEFLATED));
+        } finally {
+            ch.close();
+        }
+    }
+
+    private static long crc(byte[] data, boolean deflated) throws Exception {
+        if (deflated) {
+            Inflater inflater = new Inflater(true);
+            try {
+                inflater.setInput(data);
+                byte[] buf = new byte[1024];
+                int len = inflater.inflate(buf);
+                data = Arrays.copyOf(buf, len);
+            } finally {
+                inflater.end();
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    public void testPrefixAndTrailingBytes() throws Exception {
+        byte[] zip = Files.readAllBytes(createZip(3).toPath());
+        byte[] prefix = "#!/bin/sh\nexec java -jar \"$0\" \"$@\"\n".getBytes("UTF-8");
+        byte[] trailer = new byte[100];
+
+        // script-prefixed archives, as self-extracting ones.
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        os.write(prefix);
+        os.write(zip);
+        assertEntries(createFile(os.toByteArray()), prefix.length);
+
+        // bytes appended to the archive.
+        os = new ByteArrayOutputStream();
+        os.write(zip);
+        os.write(trailer);
+        assertEntries(createFile(os.toByteArray()), 0);
+
+        os = new ByteArrayOutputStream();
+        os.write(prefix);
+        os.write(zip);
+        os.write(trailer);
+        assertEntries(createFile(os.toByteArray()), prefix.length);
+    }
+
+    public void testProbeNotZip() throws Exception {
+        assertNotZip(createFile("This is not a zip file.".getBytes("UTF-8")));
+        assertNotZip(createFile(new byte[0]));
+    }
+
+    public void testProbeBrokenEnd() throws Exception {
+        ByteBuffer buf = ByteBuffer.allocate(ZipCentralDirectory.END_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        buf.putInt(ZipCentralDirectory.END_SIG);
+        buf.putShort((short) 0);
+        buf.putShort((short) 0);
+        buf.putShort((short) 100);
+        buf.putShort((short) 100);
+        buf.putInt(0);
+        buf.putInt(0);
+        buf.putShort((short) 0);
+        // 100 entries in the central directory of 0 bytes.
+        assertNotZip(createFile(buf.array()));
+
+        buf.putInt(12, 1000);
+        // The central directory exceeds the file.
+        assertNotZip(createFile(buf.array()));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.util.Arrays;
+import junit.framework.TestCase;
+
+/**
+ *
+ */
+public class ZipDirectoryIndexNoHudsonTest extends TestCase {
+    private static final String[] INDEX_FILES = {"index.html", "index.htm"};
+
+    public void testWithDirectoryEntries() throws Exception {
+        ZipDirectoryIndex index = new ZipDirectoryIndex.Builder()
+                .add("index.html")
+                .add("subdir/")
+                .add("subdir/index.html")
+                .add("subdir2/")
+                .add("subdir2/index.htm")
+                .add("empty/")
+                .build();
+
+        assertTrue(index.isDirectory(""));
+        assertTrue(index.isDirectory("/"));
+        assertTrue(index.isDirectory("subdir"));
+        assertTrue(index.isDirectory("subdir/"));
+        assertTrue(index.isDirectory("empty"));
+        assertFalse(index.isDirectory("index.html"));
+        assertFalse(index.isDirectory("nosuchdir"));
+
+        assertTrue(index.isFile("subdir/index.html"));
+        assertFalse(index.isFile("subdir"));
+        assertFalse(index.isFile("subdir/nosuchfile"));
+
+        assertEquals("index.html", index.resolveIndexFile("", INDEX_FILES));
+        assertEquals("subdir/index.html", index.resolveIndexFile("subdir", INDEX_FILES));
+        assertEquals("subdir2/index.htm", index.resolveIndexFile("subdir2", INDEX_FILES));
+        assertNull(index.resolveIndexFile("empty", INDEX_FILES));
+        assertNull(index.resolveIndexFile("nosuchdir", INDEX_FILES));
+    }
+
+    public void testWithoutDirectoryEntries() throws Exception {
+        ZipDirectoryIndex index = new ZipDirectoryIndex.Builder()
+                .add("index.html")
+                .add("subdir/index.html")
+                .add("subdir/deep/path/page.html")
+                .build();
+
+        assertTrue(index.isDirectory("subdir"));
+        assertTrue(index.isDirectory("subdir/deep/path"));
+        assertFalse(index.isDirectory("subdir/deep/path/page.html"));
+        assertFalse(index.isDirectory("subdi"));
+        assertEquals("subdir/index.html", index.resolveIndexFile("subdir", INDEX_FILES));
+        assertNull(index.resolveIndexFile("subdir/deep", INDEX_FILES));
+        assertEquals(6, index.size());
+    }
+
+    public void testListChildren() throws Exception {
+        ZipDirectoryIndex index = new ZipDirectoryIndex.Builder()
+                .add("b.html")
+                .add("a/")
+                .add("c/d.html")
+                .add("a/e.html")
+                .build();
+
+        assertEquals(Arrays.asList("a/", "b.html", "c/"), index.listChildren(""));
+        assertEquals(Arrays.asList("e.html"), index.listChildren("a"));
+        assertEquals(Arrays.asList(), index.listChildren("nosuchdir"));
+    }
+
+    public void testManyEntries() throws Exception {
+        ZipDirectoryIndex.Builder builder = new ZipDirectoryIndex.Builder();
+        for (int i = 0; i < 100; ++i) {
+            for (int j = 0; j < 100; ++j) {
+                builder.add(String.format("package%d/Class%d.html", i, j));
+            }
+        }
+        ZipDirectoryIndex index = builder.build();
+
+        assertEquals(100 + 100 * 100, index.size());
+        for (int i = 0; i < 100; ++i) {
+            assertTrue(index.isDirectory(String.format("package%d", i)));
+            assertTrue(index.isFile(String.format("package%d/Class%d.html", i, 99 - i)));
+        }
+        assertFalse(index.isFile("package0/Class100.html"));
+        assertEquals(100, index.listChildren("package50").size());
+    }
+}
@@ -0,0 +1,416 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import junit.framework.TestCase;
+
+/**
+ *
+ */
+public class ZipEntryContentCacheNoHudsonTest extends TestCase {
+    private File archive;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        archive = File.createTempFile("archive", ".zip");
+        archive.deleteOnExit();
+        write(archive, "dummy");
+    }
+
+    private static void write(File file, String content) throws IOException {
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(content.getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+    }
+
+    private static String read(ZipEntryContentCache.Content content) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        content.write(0, content.getSize(), os);
+        return os.toString("UTF-8");
+    }
+
+    public void testHitAndMiss() throws Exception {
+        ZipEntryContentCache cache = new ZipEntryContentCache(64 * 1024, 1024, 4096);
+        byte[] data = "body { color: black; }".getBytes("UTF-8");
+
+        assertNull(cache.get(archive, "stylesheet.css"));
+        ZipEntryContentCache.Content content = cache.put(archive, "stylesheet.css", data);
+        assertNotNull(content);
+        content.close();
+
+        content = cache.get(archive, "stylesheet.css");
+        try {
+            assertEquals("body { color: black; }", read(content));
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            content.write(7, 5, os);
+            assertEquals("color", os.toString("UTF-8"));
+        } finally {
+            content.close();
+        }
+        assertNull(cache.get(archive, "script.js"));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.size());
+        assertEquals(SlabAllocator.MIN_CHUNK_SIZE, cache.getWeight());
+        assertEquals(4096, cache.getReservedBytes());
+    }
+
+    public void testTooLarge() throws Exception {
+        ZipEntryContentCache cache = new ZipEntryContentCache(64 * 1024, 1024, 4096);
+        assertFalse(cache.isCacheable(1025));
+        assertFalse(cache.isCacheable(-1));
+        assertNull(cache.put(archive, "large.bin", new byte[1025]));
+        assertEquals(0, cache.size());
+
+        // also limited to the slab size.
+        cache = new ZipEntryContentCache(64 * 1024, 1024 * 1024, 4096);
+        assertTrue(cache.isCacheable(4096));
+        assertFalse(cache.isCacheable(4097));
+    }
+
+    public void testModifiedArchive() throws Exception {
+        ZipEntryContentCache cache = new ZipEntryContentCache(64 * 1024, 1024, 4096);
+        cache.put(archive, "index.html", new byte[10]).close();
+        ZipEntryContentCache.Content content = cache.get(archive, "index.html");
+        assertNotNull(content);
+        content.close();
+
+        assertTrue(archive.setLastModified(archive.lastModified() - 10 * 1000L));
+        assertNull(cache.get(archive, "index.html"));
+    }
+
+    public void testAdmission() throws Exception {
+        // room for 4 entries.
+        ZipEntryContentCache cache = new ZipEntryContentCache(4096, 1024, 4096);
+        for (int i = 0; i < 4; ++i) {
+            String name = String.format("popular%d.css", i);
+            for (int j = 0; j < 5; ++j) {
+                cache.get(archive, name);
+            }
+            cache.put(archive, name, new byte[1024]).close();
+        }
+
+        // rarely requested entries do not flush popular ones.
+        for (int i = 0; i < 100; ++i) {
+            String name = String.format("page%d.html", i);
+            assertNull(cache.get(archive, name));
+            assertNull(cache.put(archive, name, new byte[1024]));
+        }
+        for (int i = 0; i < 4; ++i) {
+            ZipEntryContentCache.Content content = cache.get(archive, String.format("popular%d.css", i));
+            assertNotNull(content);
+            content.close();
+        }
+        assertEquals(100, cache.getRejectCount());
+
+        // an entry becoming popular replaces the least recently used one.
+        for (int j = 0; j < 10; ++j) {
+            cache.get(archive, "search.js");
+        }
+        cache.put(archive, "search.js", new byte[1024]).close();
+        assertEquals(1, cache.getEvictionCount());
+        assertNull(cache.get(archive, "popular0.css"));
+        ZipEntryContentCache.Content content = cache.get(archive, "search.js");
+        assertNotNull(content);
+        content.close();
+    }
+
+    public void testPinned() throws Exception {
+        // room for 1 entry.
+        ZipEntryContentCache cache = new ZipEntryContentCache(1024, 1024, 1024);
+        ZipEntryContentCache.Content content = cache.put(archive, "index.html", "Top page.".getBytes("UTF-8"));
+        try {
+            // contents being sent are never evicted.
+            for (int j = 0; j < 10; ++j) {
+                cache.get(archive, "search.js");
+            }
+            assertNull(cache.put(archive, "search.js", new byte[1024]));
+
+            cache.clear();
+            assertEquals(0, cache.size());
+            assertEquals("Top page.", read(content));
+        } finally {
+            content.close();
+        }
+        assertEquals(0, cache.getWeight());
+        assertNotNull(cache.put(archive, "search.js", new byte[1024]));
+    }
+
+    public void testRebalance() throws Exception {
+        // 2 slabs, filled with small entries.
+        ZipEntryContentCache cache = new ZipEntryContentCache(8192, 4096, 4096);
+        for (int i = 0; i < 8; ++i) {
+            String name = String.format("icon%d.png", i);
+            cache.get(archive, name);
+            cache.put(archive, name, new byte[1024]).close();
+        }
+        assertEquals(8, cache.size());
+        assertEquals(8192, cache.getReservedBytes());
+
+        // a rarely requested entry of another size does not take a slab.
+        assertNull(cache.put(archive, "page.html", new byte[4096]));
+        assertEquals(8, cache.size());
+
+        // a popular one does, evicting contents in the slab of the least recently used one.
+        for (int j = 0; j < 5; ++j) {
+            cache.get(archive, "search.js");
+        }
+        ZipEntryContentCache.Content content = cache.put(archive, "search.js", new byte[4096]);
+        assertNotNull(content);
+        content.close();
+        assertEquals(4 + 1, cache.size());
+        assertEquals(4, cache.getEvictionCount());
+        assertNull(cache.get(archive, "icon0.png"));
+        content = cache.get(archive, "icon7.png");
+        assertNotNull(content);
+        content.close();
+
+        // no slab is taken from a class with as many slabs.
+        content = cache.get(archive, "search.js");
+        try {
+            for (int j = 0; j < 10; ++j) {
+                cache.get(archive, "bundle.js");
+            }
+            assertNull(cache.put(archive, "bundle.js", new byte[4096]));
+        } finally {
+            content.close();
+        }
+        assertEquals(4 + 1, cache.size());
+    }
+
+    public void testSlabAllocator() throws Exception {
+        SlabAllocator allocator = new SlabAllocator(8192, 4096);
+        assertEquals(0, allocator.classOf(1));
+        assertEquals(0, allocator.classOf(1024));
+        assertEquals(1, allocator.classOf(1025));
+        assertEquals(2, allocator.classOf(4096));
+        assertEquals(-1, allocator.classOf(4097));
+
+        SlabAllocator.Chunk large1 = allocator.allocate(2);
+        SlabAllocator.Chunk large2 = allocator.allocate(2);
+        assertNotNull(large1);
+        assertNotNull(large2);
+        assertTrue(large1.getBuffer().isDirect());
+        assertEquals(4096, large1.getBuffer().capacity());
+        // no more slabs.
+        assertNull(allocator.allocate(0));
+
+        // an empty slab is reassigned.
+        allocator.free(large1);
+        SlabAllocator.Chunk small = allocator.allocate(0);
+        assertNotNull(small);
+        assertEquals(1024, small.getBuffer().capacity());
+        assertEquals(1024 + 4096, allocator.getUsedBytes());
+        assertEquals(8192, allocator.getReservedBytes());
+        assertEquals(1, allocator.getSlabCount(0));
+        assertEquals(1, allocator.getSlabCount(2));
+        assertEquals(2, allocator.getLargestClass(0));
+
+        // a slab in use is not reassigned.
+        assertFalse(allocator.reassign(small, 1));
+        allocator.free(small);
+        assertTrue(allocator.reassign(small, 1));
+        assertEquals(0, allocator.getSlabCount(0));
+        SlabAllocator.Chunk medium = allocator.allocate(1);
+        assertNotNull(medium);
+        assertTrue(SlabAllocator.isSameSlab(small, medium));
+        assertFalse(SlabAllocator.isSameSlab(large2, medium));
+    }
+
+    public void testCoalesce() throws Exception {
+        final ZipEntryContentCache cache = new ZipEntryContentCache(64 * 1024, 1024, 4096);
+        final AtomicInteger loads = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final ZipEntryContentCache.Loader loader = new ZipEntryContentCache.Loader() {
+            @Override
+            public byte[] load() throws IOException {
+                loads.incrementAndGet();
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return "Shared page.".getBytes("UTF-8");
+            }
+        };
+
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<String>> results = new ArrayList<Future<String>>();
+            for (int i = 0; i < threads; ++i) {
+                results.add(executor.submit(new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        ZipEntryContentCache.Content content = cache.getOrLoad(archive, "index.html", loader);
+                        try {
+                            return read(content);
+                        } finally {
+                            content.close();
+                        }
+                    }
+                }));
+            }
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            // let others reach the loading one.
+            long deadline = System.currentTimeMillis() + 10 * 1000L;
+            while (cache.getCoalescedCount() < threads - 1 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            release.countDown();
+            for (Future<String> result : results) {
+                assertEquals("Shared page.", result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertEquals(threads - 1, cache.getCoalescedCount());
+        assertEquals(1, cache.size());
+    }
+
+    public void testLoadFailure() throws Exception {
+        ZipEntryContentCache cache = new ZipEntryContentCache(64 * 1024, 1024, 4096);
+        try {
+            cache.getOrLoad(archive, "index.html", new ZipEntryContentCache.Loader() {
+                @Override
+                public byte[] load() throws IOException {
+                    throw new IOException("broken");
+                }
+            });
+            fail();
+        } catch (IOException e) {
+            // expected
+        }
+
+        // not remembered.
+        ZipEntryContentCache.Content content =
+                cache.getOrLoad(archive, "index.html", new ZipEntryContentCache.Loader() {
+                    @Override
+                    public byte[] load() throws IOException {
+                        return "Top page.".getBytes("UTF-8");
+                    }
+                });
+        try {
+            assertEquals("Top page.", read(content));
+        } finally {
+            content.close();
+        }
+    }
+
+    public void testLoadError() throws Exception {
+        final ZipEntryContentCache cache = new ZipEntryContentCache(64 * 1024, 1024, 4096);
+        final CountDownLatch started = new CountDownLatch(1);
+        final ZipEntryContentCache.Loader loader = new ZipEntryContentCache.Loader() {
+            @Override
+            public byte[] load() throws IOException {
+                started.countDown();
+                // fails after another request starts waiting.
+                long deadline = System.currentTimeMillis() + 10 * 1000L;
+                while (cache.getCoalescedCount() < 1 && System.currentTimeMillis() < deadline) {
+                    try {
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        throw new IOException(e);
+                    }
+                }
+                throw new OutOfMemoryError("too large");
+            }
+        };
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<String> leader = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    cache.getOrLoad(archive, "index.html", loader);
+                    return null;
+                }
+            });
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Future<String> waiter = executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    cache.getOrLoad(archive, "index.html", loader);
+                    return null;
+                }
+            });
+            try {
+                leader.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause() instanceof OutOfMemoryError);
+            }
+            try {
+                waiter.get(10, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                // not blocked forever.
+                assertTrue(e.getCause() instanceof IOException);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, cache.getCoalescedCount());
+        assertEquals(0, cache.size());
+    }
+
+    public void testFrequencySketch() throws Exception {
+        ZipEntryContentCache.FrequencySketch sketch = new ZipEntryContentCache.FrequencySketch(64);
+        for (int i = 0; i < 20; ++i) {
+            sketch.increment(12345);
+        }
+        sketch.increment(67890);
+        assertEquals(15, sketch.frequency(12345));
+        assertEquals(1, sketch.frequency(67890));
+
+        // counters are halved periodically.
+        for (int i = 0; i < 64 * 10; ++i) {
+            sketch.increment(i * 7919);
+        }
+        assertTrue(sketch.frequency(12345) < 15);
+    }
+}
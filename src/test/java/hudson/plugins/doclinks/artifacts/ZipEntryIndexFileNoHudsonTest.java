@@ -0,0 +1,152 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import junit.framework.TestCase;
+
+/**
+ *
+ */
+public class ZipEntryIndexFileNoHudsonTest extends TestCase {
+    private File archive;
+    private File indexFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        archive = File.createTempFile("archive", ".zip");
+        archive.deleteOnExit();
+        indexFile = File.createTempFile("archive", ".idx");
+        indexFile.deleteOnExit();
+
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            zos.putNextEntry(new ZipEntry("index.html"));
+            zos.write("Default top page.".getBytes("UTF-8"));
+            zos.closeEntry();
+
+            byte[] stored = "Page in a sub directory.".getBytes("UTF-8");
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            ZipEntry entry = new ZipEntry("subdir/index.html");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(stored.length);
+            entry.setCompressedSize(stored.length);
+            entry.setCrc(crc.getValue());
+            zos.putNextEntry(entry);
+            zos.write(stored);
+            zos.closeEntry();
+
+            zos.putNextEntry(new ZipEntry("subdir2/"));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("subdir2/index.htm"));
+            zos.write("Page in a sub directory 2.".getBytes("UTF-8"));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("subdir.html"));
+            zos.write("Not a directory.".getBytes("UTF-8"));
+            zos.closeEntry();
+        } finally {
+            zos.close();
+        }
+    }
+
+    private static String read(InputStream is) throws IOException {
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buf = new byte[1024];
+            int len;
+            while ((len = is.read(buf)) >= 0) {
+                os.write(buf, 0, len);
+            }
+            return os.toString("UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+    public void testLookup() throws Exception {
+        ZipEntryIndexFile.write(archive, indexFile);
+        ZipEntryIndexFile index = ZipEntryIndexFile.open(indexFile, archive);
+        assertNotNull(index);
+        assertEquals(5, index.size());
+
+        assertTrue(index.isDirectory(""));
+        assertTrue(index.isDirectory("subdir"));
+        assertTrue(index.isDirectory("subdir2"));
+        assertFalse(index.isDirectory("subdir.html"));
+        assertFalse(index.isDirectory("sub"));
+
+        assertTrue(index.isFile("subdir/index.html"));
+        assertFalse(index.isFile("subdir2"));
+        assertFalse(index.isFile("subdir/nosuchfile"));
+
+        String[] indexFiles = {"index.html", "index.htm"};
+        assertEquals("index.html", index.resolveIndexFile("", indexFiles));
+        assertEquals("subdir2/index.htm", index.resolveIndexFile("subdir2", indexFiles));
+        assertNull(index.resolveIndexFile("nosuchdir", indexFiles));
+
+        int i = index.find("subdir/index.html");
+        assertEquals(ZipEntry.STORED, index.getMethod(i));
+        assertEquals("subdir/index.html", index.getName(i));
+        assertEquals(24, index.getSize(i));
+        assertEquals(-1, index.find("nosuchfile"));
+    }
+
+    public void testStaleIndex() throws Exception {
+        ZipEntryIndexFile.write(archive, indexFile);
+        assertTrue(archive.setLastModified(archive.lastModified() - 10 * 1000L));
+        assertNull(ZipEntryIndexFile.open(indexFile, archive));
+        assertNull(ZipEntryIndexFile.open(new File(indexFile.getPath() + ".nosuchfile"), archive));
+    }
+
+    public void testReadThroughCache() throws Exception {
+        ZipEntryIndexFile.write(archive, indexFile);
+        ZipFileCache cache = new ZipFileCache(4, 60 * 1000L);
+        ZipFileCache.Handle handle = cache.acquire(archive, indexFile);
+        try {
+            assertNotNull(handle.getEntryIndexFile());
+            assertSame(handle.getEntryIndexFile(), handle.getDirectory());
+
+            ZipEntry entry = handle.getEntry("index.html");
+            assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+            assertEquals("Default top page.", read(handle.getInputStream(entry)));
+
+            entry = handle.getEntry("subdir/index.html");
+            assertEquals("Page in a sub directory.", read(handle.getInputStream(entry)));
+
+            assertNull(handle.getEntry("subdir"));
+        } finally {
+            handle.close();
+        }
+    }
+}
@@ -0,0 +1,512 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletResponse;
+import junit.framework.TestCase;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ *
+ */
+public class ZipEntryServerNoHudsonTest extends TestCase {
+    private File archive;
+    private File indexFile;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        archive = File.createTempFile("archive", ".zip");
+        archive.deleteOnExit();
+        indexFile = File.createTempFile("archive", ".idx");
+        indexFile.deleteOnExit();
+
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(archive));
+        try {
+            zos.putNextEntry(new ZipEntry("index.html"));
+            zos.write("Default top page.".getBytes("UTF-8"));
+            zos.closeEntry();
+
+            byte[] stored = "Page in a sub directory.".getBytes("UTF-8");
+            CRC32 crc = new CRC32();
+            crc.update(stored);
+            ZipEntry entry = new ZipEntry("subdir/index.html");
+            entry.setMethod(ZipEntry.STORED);
+            entry.setSize(stored.length);
+            entry.setCompressedSize(stored.length);
+            entry.setCrc(crc.getValue());
+            zos.putNextEntry(entry);
+            zos.write(stored);
+            zos.closeEntry();
+
+            zos.putNextEntry(new ZipEntry("subdir2/"));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("subdir2/index.htm"));
+            zos.write("Page in a sub directory 2.".getBytes("UTF-8"));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("subdir.html"));
+            zos.write("Not a directory.".getBytes("UTF-8"));
+            zos.closeEntry();
+        } finally {
+            zos.close();
+        }
+    }
+
+    private static String read(InputStream is) throws IOException {
+        try {
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            byte[] buf = new byte[1024];
+            int len;
+            while ((len = is.read(buf)) >= 0) {
+                os.write(buf, 0, len);
+            }
+            return os.toString("UTF-8");
+        } finally {
+            is.close();
+        }
+    }
+
+    /**
+     * Request with the specified method and headers.
+     */
+    private static StaplerRequest request(final String method, final Map<String, String> headers) {
+        final ServletContext context = (ServletContext) Proxy.newProxyInstance(
+                ZipEntryServerNoHudsonTest.class.getClassLoader(),
+                new Class<?>[] {ServletContext.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method m, Object[] args) {
+                        return "getMimeType".equals(m.getName()) ? "text/html" : null;
+                    }
+                });
+        return (StaplerRequest) Proxy.newProxyInstance(
+                ZipEntryServerNoHudsonTest.class.getClassLoader(),
+                new Class<?>[] {StaplerRequest.class},
+                new InvocationHandler() {
+                    @Override
+                    public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+                        if ("getMethod".equals(m.getName())) {
+                            return method;
+                        } else if ("getHeader".equals(m.getName())) {
+                            return headers.get(args[0]);
+                        } else if ("getDateHeader".equals(m.getName())) {
+                            String value = headers.get(args[0]);
+                            if (value == null) {
+                                return -1L;
+                            }
+                            try {
+                                return httpDate().parse(value).getTime();
+                            } catch (ParseException e) {
+                                throw new IllegalArgumentException(value, e);
+                            }
+                        } else if ("getServletContext".equals(m.getName())) {
+                            return context;
+                        }
+                        throw new UnsupportedOperationException(m.getName());
+                    }
+                });
+    }
+
+    private static SimpleDateFormat httpDate() {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
+
+    /**
+     * Records the response.
+     */
+    private static class Response implements InvocationHandler {
+        private int status = HttpServletResponse.SC_OK;
+        private String contentType;
+        private final Map<String, String> headers = new HashMap<String, String>();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+        StaplerResponse proxy() {
+            return (StaplerResponse) Proxy.newProxyInstance(
+                    ZipEntryServerNoHudsonTest.class.getClassLoader(), new Class<?>[] {StaplerResponse.class}, this);
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method m, Object[] args) throws Throwable {
+            if ("setStatus".equals(m.getName()) || "sendError".equals(m.getName())) {
+                status = (Integer) args[0];
+            } else if ("setContentType".equals(m.getName())) {
+                contentType = (String) args[0];
+            } else if ("setHeader".equals(m.getName())) {
+                headers.put((String) args[0], (String) args[1]);
+            } else if ("setDateHeader".equals(m.getName())) {
+                headers.put((String) args[0], httpDate().format(new Date((Long) args[1])));
+            } else if ("getOutputStream".equals(m.getName())) {
+                return new ServletOutputStream() {
+                    @Override
+                    public void write(int b) {
+                        body.write(b);
+                    }
+
+                    @Override
+                    public boolean isReady() {
+                        return true;
+                    }
+
+                    @Override
+                    public void setWriteListener(WriteListener writeListener) {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            } else {
+                throw new UnsupportedOperationException(m.getName());
+            }
+            return null;
+        }
+    }
+
+    private static ZipEntryServer.EntryContent content(final String text) {
+        return new ZipEntryServer.EntryContent() {
+            @Override
+            public void write(long start, long length, OutputStream os) throws IOException {
+                os.write(text.getBytes("UTF-8"), (int) start, (int) length);
+            }
+        };
+    }
+
+    public void testTransferStoredEntry() throws Exception {
+        ZipEntryIndexFile.write(archive, indexFile);
+        ZipFileCache cache = new ZipFileCache(4, 60 * 1000L);
+        ZipFileCache.Handle handle = cache.acquire(archive, indexFile);
+        try {
+            ZipEntry entry = handle.getEntry("subdir/index.html");
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            long dataOffset = handle.getDataOffset(entry);
+            assertTrue(dataOffset > 0);
+
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            ZipEntryServer.transfer(handle.getChannel(), dataOffset, entry.getSize(), os);
+            assertEquals("Page in a sub directory.", os.toString("UTF-8"));
+        } finally {
+            handle.close();
+        }
+
+        handle = new ZipFileCache(4, 60 * 1000L).acquire(archive);
+        try {
+            // not known without the index.
+            assertEquals(-1, handle.getDataOffset(handle.getEntry("subdir/index.html")));
+        } finally {
+            handle.close();
+        }
+    }
+
+    public void testDeflatedEntryAsGzip() throws Exception {
+        ZipEntryIndexFile.write(archive, indexFile);
+        ZipFileCache cache = new ZipFileCache(4, 60 * 1000L);
+        ZipFileCache.Handle handle = cache.acquire(archive, indexFile);
+        try {
+            ZipEntry entry = handle.getEntry("index.html");
+            assertEquals(ZipEntry.DEFLATED, entry.getMethod());
+
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            ZipEntryServer.writeGzip(
+                    handle.getChannel(),
+                    handle.getDataOffset(entry),
+                    entry.getCompressedSize(),
+                    entry.getCrc(),
+                    entry.getSize(),
+                    os);
+            // GZIPInputStream verifies the trailer.
+            assertEquals(
+                    "Default top page.", read(new GZIPInputStream(new ByteArrayInputStream(os.toByteArray()))));
+        } finally {
+            handle.close();
+        }
+    }
+
+    public void testAcceptsGzip() throws Exception {
+        assertTrue(ZipEntryServer.acceptsGzip("gzip"));
+        assertTrue(ZipEntryServer.acceptsGzip("deflate, gzip;q=1.0, *;q=0.5"));
+        assertTrue(ZipEntryServer.acceptsGzip("x-gzip"));
+        assertFalse(ZipEntryServer.acceptsGzip((String) null));
+        assertFalse(ZipEntryServer.acceptsGzip("identity"));
+        assertFalse(ZipEntryServer.acceptsGzip("deflate"));
+        assertFalse(ZipEntryServer.acceptsGzip("gzip;q=0"));
+    }
+
+    private static String ranges(List<long[]> ranges) {
+        if (ranges == null) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (long[] range : ranges) {
+            sb.append(String.format("[%d-%d]", range[0], range[1]));
+        }
+        return sb.toString();
+    }
+
+    public void testParseRanges() throws Exception {
+        assertEquals("[0-9]", ranges(ZipEntryServer.parseRanges("bytes=0-9", 100)));
+        assertEquals("[90-99]", ranges(ZipEntryServer.parseRanges("bytes=90-", 100)));
+        assertEquals("[90-99]", ranges(ZipEntryServer.parseRanges("bytes=-10", 100)));
+        assertEquals("[0-99]", ranges(ZipEntryServer.parseRanges("bytes=-200", 100)));
+        assertEquals("[50-99]", ranges(ZipEntryServer.parseRanges("bytes=50-1000", 100)));
+        assertEquals("[0-9][20-29]", ranges(ZipEntryServer.parseRanges("bytes=20-29, 0-9", 100)));
+        // overlapping and adjacent ranges are merged.
+        assertEquals("[0-29]", ranges(ZipEntryServer.parseRanges("bytes=0-9,5-19,20-29", 100)));
+        // unsatisfiable ranges are dropped.
+        assertEquals("[0-9]", ranges(ZipEntryServer.parseRanges("bytes=0-9,200-300", 100)));
+        assertEquals("", ranges(ZipEntryServer.parseRanges("bytes=100-", 100)));
+        assertEquals("", ranges(ZipEntryServer.parseRanges("bytes=-0", 100)));
+        // invalid headers are ignored.
+        assertNull(ZipEntryServer.parseRanges(null, 100));
+        assertNull(ZipEntryServer.parseRanges("items=0-9", 100));
+        assertNull(ZipEntryServer.parseRanges("bytes=9-0", 100));
+        assertNull(ZipEntryServer.parseRanges("bytes=a-b", 100));
+        assertNull(ZipEntryServer.parseRanges("bytes=0-9", -1));
+    }
+
+    public void testEntryContent() throws Exception {
+        ZipEntryIndexFile.write(archive, indexFile);
+        ZipFileCache cache = new ZipFileCache(4, 60 * 1000L);
+        ZipFileCache.Handle handle = cache.acquire(archive, indexFile);
+        try {
+            ZipEntry stored = handle.getEntry("subdir/index.html");
+            ZipEntryServer.EntryContent content =
+                    new ZipEntryServer.ChannelEntryContent(handle.getChannel(), handle.getDataOffset(stored));
+            ByteArrayOutputStream os = new ByteArrayOutputStream();
+            content.write(0, 4, os);
+            content.write(5, 2, os);
+            assertEquals("Pagein", os.toString("UTF-8"));
+
+            ZipEntry deflated = handle.getEntry("index.html");
+            InputStream is = handle.getInputStream(deflated);
+            try {
+                content = new ZipEntryServer.StreamEntryContent(is);
+                os = new ByteArrayOutputStream();
+                content.write(8, 3, os);
+                content.write(12, 5, os);
+                assertEquals("toppage.", os.toString("UTF-8"));
+            } finally {
+                is.close();
+            }
+        } finally {
+            handle.close();
+        }
+    }
+
+    public void testServeSingleRange() throws Exception {
+        String text = "Page in a sub directory.";
+        Response rsp = new Response();
+        ZipEntryServer.serveRanges(
+                request("GET", Collections.<String, String>emptyMap()),
+                rsp.proxy(),
+                ZipEntryServer.parseRanges("bytes=5-6", text.length()),
+                text.length(),
+                1000L,
+                "index.html",
+                content(text));
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, rsp.status);
+        assertEquals("bytes 5-6/24", rsp.headers.get("Content-Range"));
+        assertEquals("2", rsp.headers.get("Content-Length"));
+        assertEquals("text/html", rsp.contentType);
+        assertEquals("in", rsp.body.toString("UTF-8"));
+    }
+
+    public void testServeMultipartRanges() throws Exception {
+        String text = "Page in a sub directory.";
+        Response rsp = new Response();
+        ZipEntryServer.serveRanges(
+                request("GET", Collections.<String, String>emptyMap()),
+                rsp.proxy(),
+                ZipEntryServer.parseRanges("bytes=0-3,8-10", text.length()),
+                text.length(),
+                1000L,
+                "index.html",
+                content(text));
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, rsp.status);
+        assertTrue(rsp.contentType, rsp.contentType.startsWith("multipart/byteranges; boundary="));
+        String boundary = rsp.contentType.substring(rsp.contentType.indexOf('=') + 1);
+        String body = rsp.body.toString("UTF-8");
+        assertEquals(
+                String.format(
+                        "\r\n--%1$s\r\nContent-Type: text/html\r\nContent-Range: bytes 0-3/24\r\n\r\nPage"
+                                + "\r\n--%1$s\r\nContent-Type: text/html\r\nContent-Range: bytes 8-10/24\r\n\r\na s"
+                                + "\r\n--%1$s--\r\n",
+                        boundary),
+                body);
+        assertEquals(Integer.toString(rsp.body.size()), rsp.headers.get("Content-Length"));
+
+        // HEAD sends the same headers without the body.
+        Response head = new Response();
+        ZipEntryServer.serveRanges(
+                request("HEAD", Collections.<String, String>emptyMap()),
+                head.proxy(),
+                ZipEntryServer.parseRanges("bytes=0-3,8-10", text.length()),
+                text.length(),
+                1000L,
+                "index.html",
+                null);
+        assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, head.status);
+        assertEquals(rsp.headers.get("Content-Length"), head.headers.get("Content-Length"));
+        assertEquals(0, head.body.size());
+    }
+
+    public void testServeUnsatisfiableRanges() throws Exception {
+        Response rsp = new Response();
+        ZipEntryServer.serveRanges(
+                request("GET", Collections.<String, String>emptyMap()),
+                rsp.proxy(),
+                ZipEntryServer.parseRanges("bytes=100-", 24),
+                24,
+                1000L,
+                "index.html",
+                content("Page in a sub directory."));
+        assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, rsp.status);
+        assertEquals("bytes */24", rsp.headers.get("Content-Range"));
+        assertEquals(0, rsp.body.size());
+    }
+
+    public void testIfRange() throws Exception {
+        String etag = "\"abc\"";
+        long lastModified = httpDate().parse("Sun, 06 Nov 1994 08:49:37 GMT").getTime();
+        Map<String, String> headers = new HashMap<String, String>();
+        // no Range.
+        assertNull(ZipEntryServer.getRanges(request("GET", headers), 24, lastModified, etag));
+
+        headers.put("Range", "bytes=0-3");
+        assertEquals("[0-3]", ranges(ZipEntryServer.getRanges(request("GET", headers), 24, lastModified, etag)));
+
+        // the client has the same version.
+        headers.put("If-Range", etag);
+        assertEquals("[0-3]", ranges(ZipEntryServer.getRanges(request("GET", headers), 24, lastModified, etag)));
+        headers.put("If-Range", "Sun, 06 Nov 1994 08:49:37 GMT");
+        assertEquals("[0-3]", ranges(ZipEntryServer.getRanges(request("GET", headers), 24, lastModified, etag)));
+
+        // the client has a different version, and the whole entry is sent.
+        headers.put("If-Range", "\"xyz\"");
+        assertNull(ZipEntryServer.getRanges(request("GET", headers), 24, lastModified, etag));
+        headers.put("If-Range", "\"abc\"");
+        assertNull(ZipEntryServer.getRanges(request("GET", headers), 24, lastModified, null));
+        headers.put("If-Range", "Mon, 07 Nov 1994 08:49:37 GMT");
+        assertNull(ZipEntryServer.getRanges(request("GET", headers), 24, lastModified, etag));
+        // weak tags never match.
+        headers.put("If-Range", "W/" + etag);
+        assertNull(ZipEntryServer.getRanges(request("GET", headers), 24, lastModified, etag));
+    }
+
+    public void testETag() throws Exception {
+        ZipEntryIndexFile.write(archive, indexFile);
+        ZipFileCache cache = new ZipFileCache(4, 60 * 1000L);
+        ZipFileCache.Handle handle = cache.acquire(archive, indexFile);
+        String etag1;
+        String etag2;
+        try {
+            etag1 = ZipEntryServer.getETag(archive, handle.getEntry("index.html"));
+            etag2 = ZipEntryServer.getETag(archive, handle.getEntry("subdir/index.html"));
+        } finally {
+            handle.close();
+        }
+        assertNotNull(etag1);
+        assertTrue(etag1.startsWith("\"") && etag1.endsWith("\""));
+        assertFalse(etag1.equals(etag2));
+
+        String gzipEtag = ZipEntryServer.getGzipETag(etag1);
+        assertFalse(etag1.equals(gzipEtag));
+        assertTrue(gzipEtag.startsWith("\"") && gzipEtag.endsWith("\""));
+
+        // the companion sends different bytes.
+        String precompressedEtag = ZipEntryServer.getPrecompressedETag(etag1, 100);
+        assertFalse(precompressedEtag.equals(gzipEtag));
+        assertFalse(precompressedEtag.equals(ZipEntryServer.getPrecompressedETag(etag1, 101)));
+        assertTrue(precompressedEtag.startsWith("\"") && precompressedEtag.endsWith("\""));
+
+        assertTrue(ZipEntryServer.matchesETag(etag1, etag1));
+        assertTrue(ZipEntryServer.matchesETag(gzipEtag, etag1));
+        assertTrue(ZipEntryServer.matchesETag(precompressedEtag, etag1));
+        assertFalse(ZipEntryServer.matchesETag(ZipEntryServer.getPrecompressedETag(etag2, 100), etag1));
+        assertTrue(ZipEntryServer.matchesETag("W/" + etag1, etag1));
+        assertTrue(ZipEntryServer.matchesETag(etag2 + ", " + etag1, etag1));
+        assertTrue(ZipEntryServer.matchesETag("*", etag1));
+        assertFalse(ZipEntryServer.matchesETag(etag2, etag1));
+        assertFalse(ZipEntryServer.matchesETag(etag1, null));
+
+        // changes when the archive is replaced.
+        assertTrue(archive.setLastModified(archive.lastModified() - 10 * 1000L));
+        handle = new ZipFileCache(4, 60 * 1000L).acquire(archive);
+        try {
+            assertFalse(etag1.equals(ZipEntryServer.getETag(archive, handle.getEntry("index.html"))));
+        } finally {
+            handle.close();
+        }
+    }
+
+    public void testIsNotModified() throws Exception {
+        String etag = "\"abc\"";
+        long lastModified = httpDate().parse("Sun, 06 Nov 1994 08:49:37 GMT").getTime() + 500L;
+        Map<String, String> headers = new HashMap<String, String>();
+        assertFalse(ZipEntryServer.isNotModified(request("GET", headers), etag, lastModified));
+
+        headers.put("If-None-Match", etag);
+        assertTrue(ZipEntryServer.isNotModified(request("GET", headers), etag, lastModified));
+        headers.put("If-None-Match", "\"xyz\"");
+        assertFalse(ZipEntryServer.isNotModified(request("GET", headers), etag, lastModified));
+
+        // If-None-Match takes precedence over If-Modified-Since.
+        headers.put("If-Modified-Since", "Sun, 06 Nov 1994 08:49:37 GMT");
+        assertFalse(ZipEntryServer.isNotModified(request("GET", headers), etag, lastModified));
+        headers.remove("If-None-Match");
+
+        // compared in seconds, as the header has no milliseconds.
+        assertTrue(ZipEntryServer.isNotModified(request("GET", headers), etag, lastModified));
+        headers.put("If-Modified-Since", "Mon, 07 Nov 1994 08:49:37 GMT");
+        assertTrue(ZipEntryServer.isNotModified(request("GET", headers), etag, lastModified));
+        headers.put("If-Modified-Since", "Sun, 06 Nov 1994 08:49:36 GMT");
+        assertFalse(ZipEntryServer.isNotModified(request("GET", headers), etag, lastModified));
+    }
+}
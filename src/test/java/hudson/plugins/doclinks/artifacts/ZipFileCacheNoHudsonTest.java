@@ -0,0 +1,256 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipOutputStream;
+import junit.framework.TestCase;
+
+/**
+ *
+ */
+public class ZipFileCacheNoHudsonTest extends TestCase {
+    private File createZip(String name) throws IOException {
+        File file = File.createTempFile(name, ".zip");
+        file.deleteOnExit();
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            zos.putNextEntry(new ZipEntry("index.html"));
+            zos.write("Default top page.".getBytes("UTF-8"));
+            zos.closeEntry();
+            zos.putNextEntry(new ZipEntry("subdir/page.html"));
+            zos.write("Page in a sub directory.".getBytes("UTF-8"));
+            zos.closeEntry();
+        } finally {
+            zos.close();
+        }
+        return file;
+    }
+
+    public void testReuse() throws Exception {
+        ZipFileCache cache = new ZipFileCache(4, 60 * 1000L);
+        File file = createZip("reuse");
+
+        ZipFileCache.Handle handle1 = cache.acquire(file);
+        ZipFileCache.Handle handle2 = cache.acquire(file);
+        try {
+            assertSame(handle1.getZipFile(), handle2.getZipFile());
+            assertNotNull(handle1.getZipFile().getEntry("index.html"));
+            assertEquals(1, cache.size());
+        } finally {
+            handle1.close();
+            handle2.close();
+        }
+    }
+
+    public void testNotClosedWhileInUse() throws Exception {
+        ZipFileCache cache = new ZipFileCache(1, 60 * 1000L);
+        File file1 = createZip("inuse1");
+        File file2 = createZip("inuse2");
+
+        ZipFileCache.Handle handle1 = cache.acquire(file1);
+        ZipFileCache.Handle handle2 = cache.acquire(file2);
+        try {
+            // file1 is retired from the cache, but still readable.
+            assertEquals(1, cache.size());
+            assertNotNull(handle1.getZipFile().getEntry("index.html"));
+        } finally {
+            handle1.close();
+            handle2.close();
+        }
+        assertNull(handle1.getZipFile());
+        assertNotNull(handle2.getZipFile());
+    }
+
+    public void testIdleTimeout() throws Exception {
+        ZipFileCache cache = new ZipFileCache(4, 0L);
+        File file = createZip("idle");
+
+        ZipFileCache.Handle handle = cache.acquire(file);
+        handle.close();
+        cache.expire();
+        assertEquals(0, cache.size());
+        assertNull(handle.getZipFile());
+    }
+
+    public void testModifiedArchive() throws Exception {
+        ZipFileCache cache = new ZipFileCache(4, 60 * 1000L);
+        File file = createZip("modified");
+
+        ZipFileCache.Handle handle1 = cache.acquire(file);
+        handle1.close();
+        assertTrue(file.setLastModified(file.lastModified() - 10 * 1000L));
+        ZipFileCache.Handle handle2 = cache.acquire(file);
+        handle2.close();
+        assertNotSame(handle1.getZipFile(), handle2.getZipFile());
+    }
+
+    public void testInvalidate() throws Exception {
+        ZipFileCache cache = new ZipFileCache(4, 60 * 1000L);
+        File file1 = createZip("invalidate1");
+        File file2 = createZip("invalidate2");
+
+        ZipFileCache.Handle handle1 = cache.acquire(file1);
+        handle1.close();
+        ZipFileCache.Handle handle2 = cache.acquire(file2);
+        try {
+            cache.invalidate(file1);
+            cache.invalidate(file2);
+            assertEquals(0, cache.size());
+            assertNull(handle1.getZipFile());
+            // closed when released.
+            assertNotNull(handle2.getZipFile().getEntry("index.html"));
+        } finally {
+            handle2.close();
+        }
+        assertNull(handle2.getZipFile());
+    }
+
+    public void testNotZip() throws Exception {
+        ZipFileCache cache = new ZipFileCache(4, 60 * 1000L);
+        File file = File.createTempFile("notzip", ".zip");
+        file.deleteOnExit();
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write("This is not a zip file.".getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+
+        try {
+            cache.acquire(file);
+            fail();
+        } catch (ZipException e) {
+            // expected
+        }
+        assertEquals(0, cache.size());
+    }
+
+    public void testEngineOf() throws Exception {
+        assertEquals(ZipFileCache.Engine.JDK, ZipFileCache.Engine.of(null));
+        assertEquals(ZipFileCache.Engine.JDK, ZipFileCache.Engine.of(""));
+        assertEquals(ZipFileCache.Engine.MAPPED, ZipFileCache.Engine.of(" mapped "));
+        assertEquals(ZipFileCache.Engine.JDK, ZipFileCache.Engine.of("nosuchengine"));
+    }
+
+    public void testMappedEngine() throws Exception {
+        ZipFileCache cache = new ZipFileCache(4, 60 * 1000L, ZipFileCache.Engine.MAPPED);
+        File file = createZip("mapped");
+
+        ZipFileCache.Handle handle = cache.acquire(file);
+        try {
+            assertNotNull(handle.getEntryIndexFile());
+            assertSame(handle.getEntryIndexFile(), handle.getDirectory());
+            assertTrue(handle.getDirectory().isDirectory("subdir"));
+            assertTrue(handle.getDirectory().isFile("subdir/page.html"));
+            assertNull(handle.getEntry("nosuchfile.html"));
+
+            ZipEntry entry = handle.getEntry("subdir/page.html");
+            assertNotNull(entry);
+            assertTrue(handle.getDataOffset(entry) > 0);
+            InputStream is = handle.getInputStream(entry);
+            try {
+                byte[] buf = new byte[(int) entry.getSize()];
+                int pos = 0;
+                int len;
+                while (pos < buf.length && (len = is.read(buf, pos, buf.length - pos)) > 0) {
+                    pos += len;
+                }
+                assertEquals("Page in a sub directory.", new String(buf, "UTF-8"));
+            } finally {
+                is.close();
+            }
+        } finally {
+            handle.close();
+        }
+    }
+
+    public void testEncryptedEntry() throws Exception {
+        File file = createZip("encrypted");
+        // set the encrypted bit of the general purpose flag in local and central headers.
+        byte[] data = Files.readAllBytes(file.toPath());
+        ByteBuffer buf = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i + 4 <= data.length; ++i) {
+            if (buf.getInt(i) == 0x04034b50) {
+                data[i + 6] |= 1;
+            } else if (buf.getInt(i) == 0x02014b50) {
+                data[i + 8] |= 1;
+            }
+        }
+        Files.write(file.toPath(), data);
+        File indexFile = File.createTempFile("encrypted", ".idx");
+        indexFile.deleteOnExit();
+        ZipEntryIndexFile.write(file, indexFile);
+
+        ZipFileCache cache = new ZipFileCache(4, 60 * 1000L, ZipFileCache.Engine.MAPPED);
+        ZipFileCache.Handle handle = cache.acquire(file, indexFile);
+        try {
+            ZipEntry entry = handle.getEntry("index.html");
+            assertNotNull(entry);
+            try {
+                handle.getInputStream(entry).close();
+                fail();
+            } catch (ZipException e) {
+                // expected
+            }
+            try {
+                handle.getDataOffset(entry);
+                fail();
+            } catch (ZipException e) {
+                // expected
+            }
+        } finally {
+            handle.close();
+        }
+    }
+
+    public void testMappedEngineNotZip() throws Exception {
+        ZipFileCache cache = new ZipFileCache(4, 60 * 1000L, ZipFileCache.Engine.MAPPED);
+        File file = File.createTempFile("notzip", ".zip");
+        file.deleteOnExit();
+        FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write("This is not a zip file.".getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+
+        try {
+            cache.acquire(file);
+            fail();
+        } catch (ZipException e) {
+            // expected
+        }
+        assertEquals(0, cache.size());
+    }
+}
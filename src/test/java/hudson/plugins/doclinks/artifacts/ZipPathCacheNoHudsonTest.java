@@ -0,0 +1,103 @@
+/*
+ * The MIT License
+ *
+ * Copyright (c) 2013 IKEDA Yasuyuki
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in
+ * all copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+ * THE SOFTWARE.
+ */
+
+package hudson.plugins.doclinks.artifacts;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import junit.framework.TestCase;
+
+/**
+ *
+ */
+public class ZipPathCacheNoHudsonTest extends TestCase {
+    public void testKey() throws Exception {
+        assertFalse(ZipPathCache.keyOf("subdir", false, null).equals(ZipPathCache.keyOf("subdir", true, null)));
+        assertFalse(ZipPathCache.keyOf("subdir", false, null)
+                .equals(ZipPathCache.keyOf("subdir", false, "index.htm")));
+        assertEquals(ZipPathCache.keyOf("subdir", false, null), ZipPathCache.keyOf("subdir", false, ""));
+    }
+
+    public void testNegativeCache() throws Exception {
+        ZipPathCache cache = new ZipPathCache(16);
+        String key = ZipPathCache.keyOf("nosuchfile.html", false, null);
+        assertNull(cache.get(key));
+        cache.put(key, ZipPathCache.Resolution.NOT_FOUND);
+        assertSame(ZipPathCache.Resolution.NOT_FOUND, cache.get(key));
+    }
+
+    public void testBounded() throws Exception {
+        ZipPathCache cache = new ZipPathCache(2);
+        ZipEntry entry = new ZipEntry("index.html");
+        cache.put("a", ZipPathCache.Resolution.of(entry, 30));
+        cache.put("b", ZipPathCache.Resolution.NOT_FOUND);
+        // "a" is used recently.
+        assertSame(entry, cache.get("a").getEntry());
+        assertEquals(30, cache.get("a").getDataOffset());
+        cache.put("c", ZipPathCache.Resolution.REDIRECT);
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    public void testInvalidatedWithArchive() throws Exception {
+        File file = File.createTempFile("paths", ".zip");
+        file.deleteOnExit();
+        ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(file));
+        try {
+            zos.putNextEntry(new ZipEntry("index.html"));
+            zos.write("Default top page.".getBytes("UTF-8"));
+            zos.closeEntry();
+        } finally {
+            zos.close();
+        }
+
+        ZipFileCache zipFileCache = new ZipFileCache(4, 60 * 1000L);
+        ZipFileCache.Handle handle = zipFileCache.acquire(file);
+        try {
+            handle.getPathCache().put("nosuchfile.html", ZipPathCache.Resolution.NOT_FOUND);
+        } finally {
+            handle.close();
+        }
+
+        handle = zipFileCache.acquire(file);
+        try {
+            assertNotNull(handle.getPathCache().get("nosuchfile.html"));
+        } finally {
+            handle.close();
+        }
+
+        assertTrue(file.setLastModified(file.lastModified() - 10 * 1000L));
+        handle = zipFileCache.acquire(file);
+        try {
+            assertNull(handle.getPathCache().get("nosuchfile.html"));
+        } finally {
+            handle.close();
+        }
+    }
+}